@@ -12,7 +12,8 @@ CREATE TABLE IF NOT EXISTS shops (
     name_s VARCHAR(100) NOT NULL,         -- Nome del negozio 
     street VARCHAR(150) NOT NULL,         -- Attributo per la via
     phone_number VARCHAR(20) NOT NULL,     -- Attributo per il numero telefonico
-    balance DECIMAL(10,2) NOT NULL DEFAULT 0.00
+    balance DECIMAL(10,2) NOT NULL DEFAULT 0.00,
+    low_stock_threshold INT NOT NULL DEFAULT 5  -- sotto o uguale: variante in esaurimento
 ) ENGINE=InnoDB;
 
 LOCK TABLES shops WRITE; 
@@ -185,6 +186,7 @@ CREATE TABLE IF NOT EXISTS orders_client (
     date_order_update TIMESTAMP NOT NULL,
     address VARCHAR(255) NOT NULL,
     state_order ENUM('in elaborazione', 'spedito', 'consegnato', 'annullato') DEFAULT 'in elaborazione', 
+    KEY idx_orders_user_date (id_user, date_order, id_order),
     FOREIGN KEY (id_user) REFERENCES users(id_user)
 ) ENGINE=InnoDB;
 
@@ -244,6 +246,163 @@ CREATE TABLE saved_cards (
   FOREIGN KEY (id_user) REFERENCES users(id_user) ON DELETE CASCADE
 ) ENGINE=InnoDB;
 
+-- Prenotazioni temporanee di stock prese all'aggiunta al carrello; scadono da sole (expires_at)
+DROP TABLE IF EXISTS inventory_holds;
+CREATE TABLE inventory_holds (
+  hold_owner  VARCHAR(64) NOT NULL,
+  product_id  INT NOT NULL,
+  id_shop     INT NOT NULL,
+  size        VARCHAR(10) NOT NULL,
+  quantity    INT NOT NULL,
+  expires_at  DATETIME NOT NULL,
+  PRIMARY KEY (hold_owner, product_id, id_shop, size),
+  KEY idx_hold_sku (product_id, id_shop, size, expires_at),
+  KEY idx_hold_exp (expires_at),
+  FOREIGN KEY (id_shop, product_id, size) REFERENCES product_availability(id_shop, product_id, size) ON DELETE CASCADE
+) ENGINE=InnoDB;
+
+-- Area di staging per gli ordini molto grandi (B2B): le righe arrivano a lotti e vengono finalizzate da sp_place_order_staged
+DROP TABLE IF EXISTS order_staging;
+CREATE TABLE order_staging (
+  batch_id    CHAR(36) NOT NULL,
+  line_no     INT NOT NULL,
+  product_id  INT NOT NULL,
+  id_shop     INT NOT NULL,
+  size        VARCHAR(10) NOT NULL,
+  quantity    INT NOT NULL,
+  unit_price  DECIMAL(10, 2) NOT NULL,
+  PRIMARY KEY (batch_id, line_no),
+  KEY idx_staging_sku (batch_id, id_shop, product_id, size)
+) ENGINE=InnoDB;
+
+-- Feed delle modifiche agli ordini per shop: una riga per (shop, ordine) con la versione dell'ultima modifica.
+-- La versione cresce in modo monotono; la dashboard venditore legge solo le righe con versione > ultima vista.
+DROP TABLE IF EXISTS order_changes;
+CREATE TABLE order_changes (
+  version    BIGINT NOT NULL AUTO_INCREMENT,
+  id_shop    INT NOT NULL,
+  id_order   INT NOT NULL,
+  changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (version),
+  UNIQUE KEY uq_change_order (id_shop, id_order),
+  KEY idx_change_shop (id_shop, version),
+  KEY idx_change_recent (id_shop, changed_at)
+) ENGINE=InnoDB;
+
+-- Statistiche di vendita per shop, aggiornate in modo incrementale dai trigger sugli ordini.
+-- Ogni riga porta la versione (contatore per shop in shop_sales_totals) dell'ultima modifica:
+-- il client legge una fotografia completa e poi solo le righe con versione maggiore.
+-- Gli ordini annullati non contano.
+DROP TABLE IF EXISTS shop_sales_totals;
+CREATE TABLE shop_sales_totals (
+  id_shop  INT NOT NULL PRIMARY KEY,
+  revenue  DECIMAL(14, 2) NOT NULL DEFAULT 0,
+  units    INT NOT NULL DEFAULT 0,
+  orders   INT NOT NULL DEFAULT 0,
+  version  BIGINT NOT NULL DEFAULT 0
+) ENGINE=InnoDB;
+
+DROP TABLE IF EXISTS shop_sales_daily;
+CREATE TABLE shop_sales_daily (
+  id_shop  INT NOT NULL,
+  day      DATE NOT NULL,
+  revenue  DECIMAL(14, 2) NOT NULL DEFAULT 0,
+  units    INT NOT NULL DEFAULT 0,
+  orders   INT NOT NULL DEFAULT 0,
+  version  BIGINT NOT NULL,
+  PRIMARY KEY (id_shop, day),
+  KEY idx_daily_version (id_shop, version)
+) ENGINE=InnoDB;
+
+DROP TABLE IF EXISTS shop_sales_weekly;
+CREATE TABLE shop_sales_weekly (
+  id_shop    INT NOT NULL,
+  week_start DATE NOT NULL,
+  revenue    DECIMAL(14, 2) NOT NULL DEFAULT 0,
+  units      INT NOT NULL DEFAULT 0,
+  orders     INT NOT NULL DEFAULT 0,
+  version    BIGINT NOT NULL,
+  PRIMARY KEY (id_shop, week_start),
+  KEY idx_weekly_version (id_shop, version)
+) ENGINE=InnoDB;
+
+DROP TABLE IF EXISTS shop_sales_product;
+CREATE TABLE shop_sales_product (
+  id_shop    INT NOT NULL,
+  product_id INT NOT NULL,
+  revenue    DECIMAL(14, 2) NOT NULL DEFAULT 0,
+  units      INT NOT NULL DEFAULT 0,
+  version    BIGINT NOT NULL,
+  PRIMARY KEY (id_shop, product_id),
+  KEY idx_product_units (id_shop, units),
+  KEY idx_product_version (id_shop, version)
+) ENGINE=InnoDB;
+
+DROP TABLE IF EXISTS shop_sales_size;
+CREATE TABLE shop_sales_size (
+  id_shop  INT NOT NULL,
+  size     VARCHAR(10) NOT NULL,
+  units    INT NOT NULL DEFAULT 0,
+  version  BIGINT NOT NULL,
+  PRIMARY KEY (id_shop, size),
+  KEY idx_size_version (id_shop, version)
+) ENGINE=InnoDB;
+
+-- Registro movimenti del saldo (solo inserimenti): shops.balance è il saldo corrente che ne deriva
+DROP TABLE IF EXISTS shop_ledger;
+CREATE TABLE shop_ledger (
+  id_entry      BIGINT AUTO_INCREMENT PRIMARY KEY,
+  id_shop       INT NOT NULL,
+  kind          ENUM('vendita', 'prelievo') NOT NULL,
+  amount        DECIMAL(14, 2) NOT NULL,          -- positivo per le vendite, negativo per i prelievi
+  ref_id        BIGINT NOT NULL,                  -- id_order o id_withdrawal
+  balance_after DECIMAL(14, 2) NOT NULL,
+  created_at    TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  KEY idx_ledger_shop (id_shop, id_entry),
+  FOREIGN KEY (id_shop) REFERENCES shops(id_shop) ON DELETE CASCADE
+) ENGINE=InnoDB;
+
+-- Richieste di prelievo: accettate subito, saldate in batch da sp_shop_settle_withdrawals
+DROP TABLE IF EXISTS shop_withdrawals;
+CREATE TABLE shop_withdrawals (
+  id_withdrawal BIGINT AUTO_INCREMENT PRIMARY KEY,
+  id_shop       INT NOT NULL,
+  amount        DECIMAL(14, 2) NOT NULL,
+  status        ENUM('in_attesa', 'completato', 'rifiutato') NOT NULL DEFAULT 'in_attesa',
+  requested_at  TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  settled_at    TIMESTAMP NULL,
+  reason        VARCHAR(255) NULL,
+  KEY idx_withdrawals_status (status, id_withdrawal),
+  KEY idx_withdrawals_shop (id_shop, id_withdrawal),
+  FOREIGN KEY (id_shop) REFERENCES shops(id_shop) ON DELETE CASCADE
+) ENGINE=InnoDB;
+
+-- Varianti sotto la soglia di scorta del negozio, mantenute dai trigger su product_availability.
+-- REPLACE dà una nuova versione a ogni variazione, così il client legge solo quello che è cambiato;
+-- level 'ok' segna un avviso rientrato.
+DROP TABLE IF EXISTS stock_alerts;
+CREATE TABLE stock_alerts (
+  version    BIGINT NOT NULL AUTO_INCREMENT,
+  id_shop    INT NOT NULL,
+  product_id INT NOT NULL,
+  size       VARCHAR(10) NOT NULL,
+  quantity   INT NOT NULL,
+  level      ENUM('ok', 'scarso', 'esaurito') NOT NULL,
+  changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (version),
+  UNIQUE KEY uq_stock_alert (id_shop, product_id, size),
+  KEY idx_stock_alert_level (id_shop, level),
+  KEY idx_stock_alert_shop (id_shop, version),
+  KEY idx_stock_alert_recent (id_shop, changed_at)
+) ENGINE=InnoDB;
+
+-- Le disponibilità iniziali sono inserite prima dei trigger
+INSERT INTO stock_alerts (id_shop, product_id, size, quantity, level)
+SELECT pa.id_shop, pa.product_id, pa.size, pa.quantity, IF(pa.quantity <= 0, 'esaurito', 'scarso')
+FROM product_availability pa
+JOIN shops s ON s.id_shop = pa.id_shop
+WHERE pa.quantity <= s.low_stock_threshold;
+
 -- Triggers per aggiornamenti automatici 
 DELIMITER //
 
@@ -292,6 +451,114 @@ BEGIN
   UPDATE SHOPS sh
   SET sh.balance  = sh.balance + ( NEW.quantity * NEW.price )
   WHERE sh.id_shop = NEW.id_shop;
+
+  INSERT INTO shop_ledger (id_shop, kind, amount, ref_id, balance_after)
+  SELECT NEW.id_shop, 'vendita', NEW.quantity * NEW.price, NEW.id_order, sh.balance
+  FROM shops sh WHERE sh.id_shop = NEW.id_shop;
+END //
+
+-- Nuovo ordine: la prima riga per shop registra la modifica, le successive sono ignorate
+CREATE TRIGGER order_change_after_detail_insert
+AFTER INSERT ON details_order
+FOR EACH ROW
+BEGIN
+  INSERT IGNORE INTO order_changes(id_shop, id_order) VALUES (NEW.id_shop, NEW.id_order);
+END //
+
+-- Cambio di stato: REPLACE assegna una nuova versione alla riga di ogni shop coinvolto
+CREATE TRIGGER order_change_after_state_update
+AFTER UPDATE ON orders_client
+FOR EACH ROW
+BEGIN
+  IF NOT (OLD.state_order <=> NEW.state_order) THEN
+    REPLACE INTO order_changes(id_shop, id_order)
+    SELECT DISTINCT d.id_shop, NEW.id_order
+    FROM details_order d
+    WHERE d.id_order = NEW.id_order;
+  END IF;
+END //
+
+-- Soglie di scorta: solo le variazioni di quantità (gli aggiornamenti dei voti non contano)
+CREATE TRIGGER stock_alert_after_insert
+AFTER INSERT ON product_availability
+FOR EACH ROW
+BEGIN
+  CALL sp_stock_alert_apply(NEW.id_shop, NEW.product_id, NEW.size, NULL, NEW.quantity);
+END //
+
+CREATE TRIGGER stock_alert_after_update
+AFTER UPDATE ON product_availability
+FOR EACH ROW
+BEGIN
+  IF OLD.quantity <> NEW.quantity THEN
+    CALL sp_stock_alert_apply(NEW.id_shop, NEW.product_id, NEW.size, OLD.quantity, NEW.quantity);
+  END IF;
+END //
+
+CREATE TRIGGER stock_alert_after_delete
+AFTER DELETE ON product_availability
+FOR EACH ROW
+BEGIN
+  CALL sp_stock_alert_apply(OLD.id_shop, OLD.product_id, OLD.size, OLD.quantity, NULL);
+END //
+
+-- Statistiche: ogni riga d'ordine aggiunge fatturato e unità; la prima riga dello shop conta l'ordine
+CREATE TRIGGER sales_after_detail_insert
+AFTER INSERT ON details_order
+FOR EACH ROW
+BEGIN
+  DECLARE v_day DATE;
+  DECLARE v_state VARCHAR(20);
+  DECLARE v_first INT;
+
+  SELECT DATE(o.date_order), o.state_order INTO v_day, v_state
+  FROM orders_client o
+  WHERE o.id_order = NEW.id_order;
+
+  IF v_state <> 'annullato' THEN
+    SET v_first = NOT EXISTS (
+      SELECT 1 FROM details_order d
+      WHERE d.id_order = NEW.id_order AND d.id_shop = NEW.id_shop
+        AND NOT (d.id_product = NEW.id_product AND d.size = NEW.size)
+    );
+    CALL sp_sales_apply(NEW.id_shop, v_day, NEW.id_product, NEW.size, NEW.quantity, NEW.quantity * NEW.price, v_first);
+  END IF;
+END //
+
+-- Statistiche: un ordine annullato esce dai totali, uno ripristinato rientra
+CREATE TRIGGER sales_after_state_update
+AFTER UPDATE ON orders_client
+FOR EACH ROW
+BEGIN
+  DECLARE v_sign INT DEFAULT 0;
+  DECLARE done INT DEFAULT 0;
+  DECLARE v_shop INT;
+  DECLARE v_product INT;
+  DECLARE v_size VARCHAR(10);
+  DECLARE v_qty INT;
+  DECLARE v_amount DECIMAL(14, 2);
+  DECLARE v_last_shop INT DEFAULT NULL;
+  DECLARE cur CURSOR FOR
+    SELECT d.id_shop, d.id_product, d.size, d.quantity, d.quantity * d.price
+    FROM details_order d
+    WHERE d.id_order = NEW.id_order
+    ORDER BY d.id_shop;
+  DECLARE CONTINUE HANDLER FOR NOT FOUND SET done = 1;
+
+  IF NEW.state_order = 'annullato' AND OLD.state_order <> 'annullato' THEN SET v_sign = -1; END IF;
+  IF OLD.state_order = 'annullato' AND NEW.state_order <> 'annullato' THEN SET v_sign = 1; END IF;
+
+  IF v_sign <> 0 THEN
+    OPEN cur;
+    read_loop: LOOP
+      FETCH cur INTO v_shop, v_product, v_size, v_qty, v_amount;
+      IF done = 1 THEN LEAVE read_loop; END IF;
+      CALL sp_sales_apply(v_shop, DATE(NEW.date_order), v_product, v_size, v_sign * v_qty, v_sign * v_amount,
+                          IF(v_last_shop <=> v_shop, 0, v_sign));
+      SET v_last_shop = v_shop;
+    END LOOP;
+    CLOSE cur;
+  END IF;
 END //
 
 DELIMITER ;
@@ -409,6 +676,93 @@ BEGIN
 END//
 DELIMITER ;
 
+-- Disponibilità di più varianti in un colpo solo (carrello)
+-- p_items: [{"productId":..,"shopId":..,"size":..}, ...]
+DELIMITER //
+CREATE PROCEDURE sp_get_stock_for_many(IN p_items JSON)
+BEGIN
+  SELECT pa.product_id, pa.id_shop, pa.size, pa.quantity
+  FROM JSON_TABLE(
+         p_items, '$[*]'
+         COLUMNS (
+           product_id BIGINT      PATH '$.productId',
+           shop_id    INT         PATH '$.shopId',
+           size       VARCHAR(20) PATH '$.size'
+         )
+       ) jt
+  JOIN product_availability pa
+    ON pa.product_id = jt.product_id
+   AND pa.id_shop    = jt.shop_id
+   AND pa.size       = jt.size;
+END//
+DELIMITER ;
+
+-- Prenotazione (hold) di una variante: imposta la quantità tenuta da p_owner per p_ttl_sec secondi.
+-- Disponibile = stock - hold non scaduti degli altri. Va chiamata in transazione (FOR UPDATE).
+DELIMITER //
+CREATE PROCEDURE sp_hold_set(
+  IN p_owner VARCHAR(64), IN p_product_id BIGINT, IN p_shop_id INT, IN p_size VARCHAR(20),
+  IN p_qty INT, IN p_ttl_sec INT, OUT p_ok TINYINT, OUT p_available INT
+)
+BEGIN
+  DECLARE v_stock INT DEFAULT NULL;
+  DECLARE v_held  INT DEFAULT 0;
+
+  /* lock sulla riga di disponibilità: serializza gli hold sullo stesso SKU */
+  SELECT quantity INTO v_stock
+  FROM product_availability
+  WHERE product_id = p_product_id AND id_shop = p_shop_id AND size = p_size
+  FOR UPDATE;
+
+  SELECT COALESCE(SUM(quantity), 0) INTO v_held
+  FROM inventory_holds
+  WHERE product_id = p_product_id AND id_shop = p_shop_id AND size = p_size
+    AND hold_owner <> p_owner AND expires_at > NOW();
+
+  SET p_available = GREATEST(COALESCE(v_stock, 0) - v_held, 0);
+
+  IF p_qty <= 0 THEN
+    DELETE FROM inventory_holds
+    WHERE hold_owner = p_owner AND product_id = p_product_id AND id_shop = p_shop_id AND size = p_size;
+    SET p_ok = 1;
+  ELSEIF p_qty <= p_available THEN
+    INSERT INTO inventory_holds(hold_owner, product_id, id_shop, size, quantity, expires_at)
+    VALUES (p_owner, p_product_id, p_shop_id, p_size, p_qty, NOW() + INTERVAL p_ttl_sec SECOND)
+    ON DUPLICATE KEY UPDATE quantity = VALUES(quantity), expires_at = VALUES(expires_at);
+    SET p_ok = 1;
+  ELSE
+    SET p_ok = 0;
+  END IF;
+END//
+DELIMITER ;
+
+DELIMITER //
+CREATE PROCEDURE sp_hold_release(
+  IN p_owner VARCHAR(64), IN p_product_id BIGINT, IN p_shop_id INT, IN p_size VARCHAR(20)
+)
+BEGIN
+  DELETE FROM inventory_holds
+  WHERE hold_owner = p_owner AND product_id = p_product_id AND id_shop = p_shop_id AND size = p_size;
+END//
+DELIMITER ;
+
+DELIMITER //
+CREATE PROCEDURE sp_hold_release_all(IN p_owner VARCHAR(64))
+BEGIN
+  DELETE FROM inventory_holds WHERE hold_owner = p_owner;
+END//
+DELIMITER ;
+
+-- Rinnova gli hold ancora validi (carrello aperto)
+DELIMITER //
+CREATE PROCEDURE sp_hold_renew(IN p_owner VARCHAR(64), IN p_ttl_sec INT)
+BEGIN
+  UPDATE inventory_holds
+  SET expires_at = NOW() + INTERVAL p_ttl_sec SECOND
+  WHERE hold_owner = p_owner AND expires_at > NOW();
+END//
+DELIMITER ;
+
 -- Esistenza in wishlist 
 DELIMITER //
 CREATE PROCEDURE sp_exists_wish(
@@ -445,7 +799,8 @@ BEGIN
     PRIMARY KEY (product_id, shop_id, size)
   ) ENGINE=MEMORY;
 
-  TRUNCATE tmp_need;
+  /* DELETE e non TRUNCATE: TRUNCATE fa commit implicito e romperebbe i savepoint del group-commit */
+  DELETE FROM tmp_need;
 
   /* Espande JSON in righe e aggrega */
   INSERT INTO tmp_need(product_id, shop_id, size, qty_needed)
@@ -470,7 +825,12 @@ BEGIN
    AND pa.id_shop    = n.shop_id
    AND pa.size       = n.size
   SET pa.quantity = pa.quantity - n.qty_needed
-  WHERE pa.quantity >= n.qty_needed;
+  /* stock meno gli hold non scaduti di altri: quelli del chiamante sono già stati rilasciati
+     nella stessa transazione (InventoryHoldDAO.releaseAll), come il controllo di sp_hold_set */
+  WHERE pa.quantity - (SELECT COALESCE(SUM(h.quantity), 0)
+                       FROM inventory_holds h
+                       WHERE h.product_id = pa.product_id AND h.id_shop = pa.id_shop
+                         AND h.size = pa.size AND h.expires_at > NOW()) >= n.qty_needed;
 
   /* L'UPDATE deve toccare esattamente @need_rows righe */
   IF ROW_COUNT() <> @need_rows THEN
@@ -483,7 +843,7 @@ BEGIN
     order_id INT
   ) ENGINE=MEMORY;
 
-  TRUNCATE tmp_orders_map;
+  DELETE FROM tmp_orders_map;
 
   INSERT INTO tmp_orders_map(shop_id, order_id)
   SELECT DISTINCT shop_id, NULL
@@ -538,6 +898,118 @@ END //
 
 DELIMITER ;
 
+-- Finalizza un ordine caricato in order_staging: stesso esito di sp_place_order, ma le righe
+-- non passano da un unico JSON. Decremento dello stock con un solo UPDATE set-based.
+DELIMITER //
+
+DROP PROCEDURE IF EXISTS sp_place_order_staged //
+CREATE PROCEDURE sp_place_order_staged(
+  IN p_user_id  INT,
+  IN p_address  VARCHAR(255),
+  IN p_batch_id CHAR(36)
+)
+BEGIN
+  DECLARE done INT DEFAULT 0;
+
+  CREATE TEMPORARY TABLE IF NOT EXISTS tmp_need(
+    product_id BIGINT NOT NULL,
+    shop_id    INT    NOT NULL,
+    size       VARCHAR(20) NOT NULL,
+    qty_needed INT    NOT NULL,
+    unit_price DECIMAL(10,2) NOT NULL,
+    PRIMARY KEY (product_id, shop_id, size)
+  ) ENGINE=MEMORY;
+
+  DELETE FROM tmp_need;
+
+  /* Righe dello stesso SKU con prezzi diversi: non si fondono (si addebiterebbe il prezzo minore) */
+  IF EXISTS (SELECT 1
+             FROM order_staging s
+             WHERE s.batch_id = p_batch_id
+             GROUP BY s.product_id, s.id_shop, s.size
+             HAVING MIN(s.unit_price) <> MAX(s.unit_price)) THEN
+    SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = 'Prezzi diversi per lo stesso articolo nello stesso ordine';
+  END IF;
+
+  /* Aggrega le righe dello staging per SKU (prezzo unico, verificato sopra) */
+  INSERT INTO tmp_need(product_id, shop_id, size, qty_needed, unit_price)
+  SELECT s.product_id, s.id_shop, s.size, SUM(s.quantity), MIN(s.unit_price)
+  FROM order_staging s
+  WHERE s.batch_id = p_batch_id
+  GROUP BY s.product_id, s.id_shop, s.size;
+
+  SET @need_rows := (SELECT COUNT(*) FROM tmp_need);
+  IF @need_rows = 0 THEN
+    SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = 'Nessuna riga nello staging per questo ordine';
+  END IF;
+
+  /* Verifica e decremento in un'unica istruzione */
+  UPDATE product_availability pa
+  JOIN tmp_need n
+    ON pa.product_id = n.product_id
+   AND pa.id_shop    = n.shop_id
+   AND pa.size       = n.size
+  SET pa.quantity = pa.quantity - n.qty_needed
+  /* stock meno gli hold non scaduti di altri: quelli del chiamante sono già stati rilasciati
+     nella stessa transazione (InventoryHoldDAO.releaseAll), come il controllo di sp_hold_set */
+  WHERE pa.quantity - (SELECT COALESCE(SUM(h.quantity), 0)
+                       FROM inventory_holds h
+                       WHERE h.product_id = pa.product_id AND h.id_shop = pa.id_shop
+                         AND h.size = pa.size AND h.expires_at > NOW()) >= n.qty_needed;
+
+  IF ROW_COUNT() <> @need_rows THEN
+    SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = 'Stock insufficiente per uno o più articoli';
+  END IF;
+
+  CREATE TEMPORARY TABLE IF NOT EXISTS tmp_orders_map(
+    shop_id  INT PRIMARY KEY,
+    order_id INT
+  ) ENGINE=MEMORY;
+
+  DELETE FROM tmp_orders_map;
+
+  INSERT INTO tmp_orders_map(shop_id, order_id)
+  SELECT DISTINCT shop_id, NULL
+  FROM tmp_need;
+
+  /* Un ordine per shop (gli shop sono pochi anche quando le righe sono migliaia) */
+  BEGIN
+    DECLARE v_shop_id INT;
+    DECLARE cur CURSOR FOR SELECT shop_id FROM tmp_orders_map;
+    DECLARE CONTINUE HANDLER FOR NOT FOUND SET done = 1;
+
+    OPEN cur;
+    read_loop: LOOP
+      FETCH cur INTO v_shop_id;
+      IF done = 1 THEN LEAVE read_loop; END IF;
+
+      INSERT INTO orders_client(id_user, date_order, date_order_update, state_order, address)
+      VALUES (p_user_id, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, 'in elaborazione', NULLIF(TRIM(p_address), ''));
+
+      UPDATE tmp_orders_map
+      SET order_id = LAST_INSERT_ID()
+      WHERE shop_id = v_shop_id;
+    END LOOP;
+    CLOSE cur;
+  END;
+
+  INSERT INTO details_order(id_order, id_product, id_shop, quantity, price, size)
+  SELECT m.order_id, n.product_id, n.shop_id, n.qty_needed, n.unit_price, n.size
+  FROM tmp_need n
+  JOIN tmp_orders_map m ON m.shop_id = n.shop_id;
+
+  DELETE FROM order_staging WHERE batch_id = p_batch_id;
+
+  SELECT m.shop_id AS id_shop, m.order_id AS id_order
+  FROM tmp_orders_map m
+  ORDER BY m.shop_id;
+
+  DROP TEMPORARY TABLE IF EXISTS tmp_need;
+  DROP TEMPORARY TABLE IF EXISTS tmp_orders_map;
+END //
+
+DELIMITER ;
+
 DELIMITER //
 CREATE PROCEDURE sp_list_orders_header(IN p_user_id INT)
 BEGIN
@@ -562,6 +1034,49 @@ BEGIN
 END//
 DELIMITER ;
 
+-- Cronologia a pagine (keyset su data/id): intestazioni con totale già calcolato.
+-- p_after_date NULL = prima pagina. Usa idx_orders_user_date, costo indipendente dalla lunghezza della cronologia.
+DELIMITER //
+CREATE PROCEDURE sp_list_orders_page(
+  IN p_user_id    INT,
+  IN p_after_date TIMESTAMP,
+  IN p_after_id   INT,
+  IN p_limit      INT
+)
+BEGIN
+  SELECT o.id_order, o.date_order, o.state_order,
+         COALESCE((SELECT SUM(d.quantity * d.price)
+                   FROM details_order d
+                   WHERE d.id_order = o.id_order), 0) AS total_amount
+  FROM orders_client o
+  WHERE o.id_user = p_user_id
+    AND (p_after_date IS NULL
+         OR o.date_order < p_after_date
+         OR (o.date_order = p_after_date AND o.id_order < p_after_id))
+  ORDER BY o.date_order DESC, o.id_order DESC
+  LIMIT p_limit;
+END//
+DELIMITER ;
+
+-- Righe di un singolo ordine dell'utente
+DELIMITER //
+CREATE PROCEDURE sp_list_order_lines(
+  IN p_user_id  INT,
+  IN p_order_id INT
+)
+BEGIN
+  SELECT d.id_order, d.id_product, d.id_shop, d.size, d.quantity, d.price,
+         p.name_p AS product_name, s.name_s AS shop_name
+  FROM details_order d
+  JOIN orders_client o ON o.id_order = d.id_order
+  JOIN products p ON p.product_id = d.id_product
+  JOIN shops    s ON s.id_shop    = d.id_shop
+  WHERE d.id_order = p_order_id
+    AND o.id_user  = p_user_id
+  ORDER BY p.name_p ASC, d.id_product ASC;
+END//
+DELIMITER ;
+
 -- ReviewDAO
 
 -- Lista recensioni per prodotto
@@ -711,29 +1226,126 @@ BEGIN
 END//
 DELIMITER ;
 
--- Richiesta prelievo: transazione con verifica saldo
+-- Saldo, prelievi in attesa e ultimo movimento (versione) per userId
+DELIMITER //
+CREATE PROCEDURE sp_shop_balance_summary(IN p_user_id INT)
+BEGIN
+  SELECT s.id_shop,
+         s.balance,
+         COALESCE((SELECT SUM(w.amount) FROM shop_withdrawals w
+                   WHERE w.id_shop = s.id_shop AND w.status = 'in_attesa'), 0) AS pending,
+         COALESCE((SELECT MAX(l.id_entry) FROM shop_ledger l WHERE l.id_shop = s.id_shop), 0) AS version
+  FROM shops s
+  JOIN users u ON s.id_shop = u.id_shop
+  WHERE u.id_user = p_user_id;
+END//
+DELIMITER ;
+
+-- Richiesta prelievo: viene solo accodata. Il disponibile è il saldo meno i prelievi già in attesa;
+-- la riga del negozio è bloccata per non accettare due richieste sullo stesso disponibile.
 DELIMITER //
 CREATE PROCEDURE sp_shop_request_withdraw(
   IN p_user_id INT,
   IN p_amount  DECIMAL(18,2)
 )
 BEGIN
+  DECLARE v_shop INT;
+  DECLARE v_balance DECIMAL(14, 2);
+  DECLARE v_pending DECIMAL(14, 2);
+
   IF p_amount IS NULL OR p_amount <= 0 THEN
     SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = 'Importo non valido';
   END IF;
 
   START TRANSACTION;
-    UPDATE shops s
+    SELECT s.id_shop, s.balance INTO v_shop, v_balance
+    FROM shops s
     JOIN users u ON u.id_shop = s.id_shop
-    SET s.balance = s.balance - p_amount
     WHERE u.id_user = p_user_id
-      AND s.balance >= p_amount;
+    FOR UPDATE;
 
-    IF ROW_COUNT() = 0 THEN
+    SELECT COALESCE(SUM(amount), 0) INTO v_pending
+    FROM shop_withdrawals
+    WHERE id_shop = v_shop AND status = 'in_attesa';
+
+    IF v_shop IS NULL OR v_balance - v_pending < p_amount THEN
       ROLLBACK;
       SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = 'Saldo insufficiente o shop non trovato';
     END IF;
+
+    INSERT INTO shop_withdrawals (id_shop, amount) VALUES (v_shop, p_amount);
+    SELECT LAST_INSERT_ID() AS id_withdrawal;
+  COMMIT;
+END//
+DELIMITER ;
+
+-- Saldo a lotti dei prelievi in attesa: scala il saldo e registra il movimento, oppure rifiuta
+-- la richiesta se nel frattempo il saldo non basta. SKIP LOCKED: più client possono eseguirla
+-- insieme senza saldare due volte la stessa richiesta. Ritorna le richieste elaborate.
+DELIMITER //
+CREATE PROCEDURE sp_shop_settle_withdrawals(IN p_limit INT)
+BEGIN
+  DECLARE done INT DEFAULT 0;
+  DECLARE v_id BIGINT;
+  DECLARE v_shop INT;
+  DECLARE v_amount DECIMAL(14, 2);
+  DECLARE cur CURSOR FOR
+    SELECT id_withdrawal, id_shop, amount
+    FROM shop_withdrawals
+    WHERE status = 'in_attesa'
+    ORDER BY id_withdrawal
+    LIMIT p_limit
+    FOR UPDATE SKIP LOCKED;
+  DECLARE CONTINUE HANDLER FOR NOT FOUND SET done = 1;
+  DECLARE EXIT HANDLER FOR SQLEXCEPTION
+  BEGIN
+    ROLLBACK;
+    RESIGNAL;
+  END;
+
+  DROP TEMPORARY TABLE IF EXISTS tmp_settled;
+  CREATE TEMPORARY TABLE tmp_settled (id_withdrawal BIGINT PRIMARY KEY, id_shop INT, status VARCHAR(16));
+
+  START TRANSACTION;
+    OPEN cur;
+    read_loop: LOOP
+      FETCH cur INTO v_id, v_shop, v_amount;
+      IF done = 1 THEN LEAVE read_loop; END IF;
+
+      UPDATE shops SET balance = balance - v_amount
+      WHERE id_shop = v_shop AND balance >= v_amount;
+
+      IF ROW_COUNT() = 1 THEN
+        INSERT INTO shop_ledger (id_shop, kind, amount, ref_id, balance_after)
+        SELECT v_shop, 'prelievo', -v_amount, v_id, balance FROM shops WHERE id_shop = v_shop;
+        UPDATE shop_withdrawals SET status = 'completato', settled_at = CURRENT_TIMESTAMP
+        WHERE id_withdrawal = v_id;
+        INSERT INTO tmp_settled VALUES (v_id, v_shop, 'completato');
+      ELSE
+        UPDATE shop_withdrawals SET status = 'rifiutato', settled_at = CURRENT_TIMESTAMP,
+               reason = 'Saldo insufficiente'
+        WHERE id_withdrawal = v_id;
+        INSERT INTO tmp_settled VALUES (v_id, v_shop, 'rifiutato');
+      END IF;
+    END LOOP;
+    CLOSE cur;
   COMMIT;
+
+  SELECT id_withdrawal, id_shop, status FROM tmp_settled ORDER BY id_withdrawal;
+  DROP TEMPORARY TABLE tmp_settled;
+END//
+DELIMITER ;
+
+-- Ultimi prelievi del negozio (più recenti prima)
+DELIMITER //
+CREATE PROCEDURE sp_shop_list_withdrawals(IN p_user_id INT, IN p_limit INT)
+BEGIN
+  SELECT w.id_withdrawal, w.amount, w.status, w.requested_at, w.settled_at, w.reason
+  FROM shop_withdrawals w
+  JOIN users u ON u.id_shop = w.id_shop
+  WHERE u.id_user = p_user_id
+  ORDER BY w.id_withdrawal DESC
+  LIMIT p_limit;
 END//
 DELIMITER ;
 
@@ -854,7 +1466,7 @@ BEGIN
   WHERE username = p_username
     AND product_id = p_product_id
     AND id_shop = p_shop_id
-    AND p_size = p_size;
+    AND wishlist.p_size = p_size;
 END//
 
 -- Svuota wishlist
@@ -863,11 +1475,11 @@ BEGIN
   DELETE FROM wishlist WHERE username = p_username;
 END//
 
--- Recupera wishlist
+-- Recupera wishlist (senza immagini: si caricano a parte con sp_product_image)
 CREATE PROCEDURE sp_wishlist_get(IN p_username VARCHAR(100))
 BEGIN
   SELECT p.product_id, p.name_p, p.sport, p.brand, p.category,
-         w.id_shop, w.p_size, s.name_s, pa.price, p.image_data
+         w.id_shop, w.p_size, s.name_s, pa.price
   FROM wishlist w
   JOIN products p ON p.product_id = w.product_id
   JOIN shops s    ON s.id_shop    = w.id_shop
@@ -878,6 +1490,12 @@ BEGIN
   WHERE w.username = p_username;
 END//
 
+-- Immagine di un prodotto
+CREATE PROCEDURE sp_product_image(IN p_product_id BIGINT)
+BEGIN
+  SELECT image_data FROM products WHERE product_id = p_product_id;
+END//
+
 DELIMITER ;
 
 -- SellerDAO
@@ -1011,16 +1629,318 @@ BEGIN
   ORDER BY p.name_p ASC, d.id_product ASC;
 END//
 
--- Update stato ordine
-CREATE PROCEDURE sp_seller_update_order_state(
-  IN p_order_id INT,
-  IN p_new_state VARCHAR(50)
+-- Cambio di stato di più ordini dello shop in un'unica chiamata.
+-- Aggiorna solo gli ordini dello shop il cui stato attuale è in p_from_states (transizioni ammesse,
+-- calcolate dal client) e restituisce lo stato precedente di ogni ordine richiesto (NULL = non trovato).
+CREATE PROCEDURE sp_seller_update_order_states(
+  IN p_shop_id     INT,
+  IN p_order_ids   JSON,
+  IN p_from_states JSON,
+  IN p_new_state   VARCHAR(50)
 )
 BEGIN
-  UPDATE orders_client
-  SET state_order = p_new_state,
-      date_order_update = CURRENT_TIMESTAMP
-  WHERE id_order = p_order_id;
+  CREATE TEMPORARY TABLE IF NOT EXISTS tmp_state_req(
+    id_order   INT PRIMARY KEY,
+    prev_state VARCHAR(20) NULL
+  ) ENGINE=MEMORY;
+
+  DELETE FROM tmp_state_req;
+
+  /* Stato attuale, solo per gli ordini che contengono righe dello shop; lettura con lock:
+     fino al commit nessun'altra transazione cambia lo stato letto qui */
+  INSERT IGNORE INTO tmp_state_req(id_order, prev_state)
+  SELECT o.id_order, o.state_order
+  FROM JSON_TABLE(p_order_ids, '$[*]' COLUMNS (id_order INT PATH '$')) jt
+  JOIN orders_client o ON o.id_order = jt.id_order
+  WHERE EXISTS (SELECT 1 FROM details_order d WHERE d.id_order = o.id_order AND d.id_shop = p_shop_id)
+  FOR UPDATE OF o;
+
+  UPDATE orders_client o
+  JOIN tmp_state_req r ON r.id_order = o.id_order
+  SET o.state_order = p_new_state,
+      o.date_order_update = CURRENT_TIMESTAMP
+  WHERE JSON_CONTAINS(p_from_states, JSON_QUOTE(o.state_order));
+
+  SELECT r.id_order, r.prev_state
+  FROM tmp_state_req r
+  ORDER BY r.id_order;
+
+  DROP TEMPORARY TABLE IF EXISTS tmp_state_req;
+END//
+
+-- Export righe d'ordine dello shop per la contabilità (estremi di data inclusi, NULL = aperto).
+-- Letto in streaming dal client: nessun ORDER BY su colonne non indicizzate oltre all'id ordine.
+CREATE PROCEDURE sp_seller_export_orders(
+  IN p_shop_id INT,
+  IN p_from    DATE,
+  IN p_to      DATE
+)
+BEGIN
+  SELECT o.id_order,
+         o.date_order,
+         o.state_order,
+         u.username AS customer,
+         o.address,
+         d.id_product,
+         p.name_p AS product_name,
+         d.size,
+         d.quantity,
+         d.price
+  FROM details_order d
+  JOIN orders_client o ON o.id_order = d.id_order
+  JOIN users u ON u.id_user = o.id_user
+  JOIN products p ON p.product_id = d.id_product
+  WHERE d.id_shop = p_shop_id
+    AND (p_from IS NULL OR o.date_order >= p_from)
+    AND (p_to   IS NULL OR o.date_order <  p_to + INTERVAL 1 DAY)
+  ORDER BY d.id_order;
+END//
+
+-- Export catalogo dello shop
+CREATE PROCEDURE sp_seller_export_catalog(IN p_shop_id INT)
+BEGIN
+  SELECT pa.product_id, p.name_p, p.sport, p.brand, p.category, pa.size, pa.price, pa.quantity
+  FROM product_availability pa
+  JOIN products p ON p.product_id = pa.product_id
+  WHERE pa.id_shop = p_shop_id
+  ORDER BY pa.product_id, pa.size;
+END//
+
+-- Ordini dello shop modificati dopo p_since, già nel formato della lista ordini.
+-- Si rilegge anche una breve finestra recente (p_replay_s): una transazione può committare
+-- una versione più bassa di una già vista; l'applicazione lato client è idempotente.
+-- Righe nuove e finestra hanno ciascuna il proprio limite, così un picco non blocca la versione.
+CREATE PROCEDURE sp_seller_order_changes(
+  IN p_shop_id  INT,
+  IN p_since    BIGINT,
+  IN p_replay_s INT,
+  IN p_limit    INT
+)
+BEGIN
+  SELECT c.version,
+         o.id_order,
+         o.date_order,
+         o.state_order,
+         u.username AS customer,
+         o.address,
+         (SELECT COALESCE(SUM(d.quantity * d.price), 0)
+          FROM details_order d
+          WHERE d.id_order = o.id_order AND d.id_shop = p_shop_id) AS total
+  FROM (
+         (SELECT version, id_order FROM order_changes
+          WHERE id_shop = p_shop_id AND version > p_since
+          ORDER BY version
+          LIMIT p_limit)
+         UNION ALL
+         (SELECT version, id_order FROM order_changes
+          WHERE id_shop = p_shop_id AND version <= p_since
+            AND changed_at >= NOW() - INTERVAL p_replay_s SECOND
+          ORDER BY version DESC
+          LIMIT p_limit)
+       ) c
+  JOIN orders_client o ON o.id_order = c.id_order
+  JOIN users u ON u.id_user = o.id_user
+  ORDER BY c.version;
+END//
+
+-- Applica una variazione (anche negativa) alle statistiche dello shop; usata dai trigger
+CREATE PROCEDURE sp_sales_apply(
+  IN p_shop_id    INT,
+  IN p_day        DATE,
+  IN p_product_id INT,
+  IN p_size       VARCHAR(10),
+  IN p_units      INT,
+  IN p_amount     DECIMAL(14, 2),
+  IN p_orders     INT
+)
+BEGIN
+  DECLARE v_version BIGINT;
+  DECLARE v_week DATE DEFAULT p_day - INTERVAL WEEKDAY(p_day) DAY;
+
+  INSERT INTO shop_sales_totals(id_shop, revenue, units, orders, version)
+  VALUES (p_shop_id, p_amount, p_units, p_orders, 1)
+  ON DUPLICATE KEY UPDATE revenue = revenue + p_amount,
+                          units   = units + p_units,
+                          orders  = orders + p_orders,
+                          version = version + 1;
+
+  SELECT version INTO v_version FROM shop_sales_totals WHERE id_shop = p_shop_id;
+
+  INSERT INTO shop_sales_daily(id_shop, day, revenue, units, orders, version)
+  VALUES (p_shop_id, p_day, p_amount, p_units, p_orders, v_version)
+  ON DUPLICATE KEY UPDATE revenue = revenue + p_amount, units = units + p_units,
+                          orders = orders + p_orders, version = v_version;
+
+  INSERT INTO shop_sales_weekly(id_shop, week_start, revenue, units, orders, version)
+  VALUES (p_shop_id, v_week, p_amount, p_units, p_orders, v_version)
+  ON DUPLICATE KEY UPDATE revenue = revenue + p_amount, units = units + p_units,
+                          orders = orders + p_orders, version = v_version;
+
+  INSERT INTO shop_sales_product(id_shop, product_id, revenue, units, version)
+  VALUES (p_shop_id, p_product_id, p_amount, p_units, v_version)
+  ON DUPLICATE KEY UPDATE revenue = revenue + p_amount, units = units + p_units, version = v_version;
+
+  INSERT INTO shop_sales_size(id_shop, size, units, version)
+  VALUES (p_shop_id, p_size, p_units, v_version)
+  ON DUPLICATE KEY UPDATE units = units + p_units, version = v_version;
+END//
+
+-- Statistiche di vendita dello shop: con p_since = 0 fotografia completa (finestre e top limitati),
+-- altrimenti solo le righe cambiate dopo p_since. Cinque result set: totali, giorni, settimane, prodotti, taglie.
+-- Tutte le letture passano da indici per shop: costo indipendente dalla dimensione di details_order.
+CREATE PROCEDURE sp_seller_sales(
+  IN p_shop_id INT,
+  IN p_since   BIGINT,
+  IN p_days    INT,
+  IN p_weeks   INT,
+  IN p_top     INT
+)
+BEGIN
+  SELECT COALESCE(t.revenue, 0) AS revenue,
+         COALESCE(t.units, 0)   AS units,
+         COALESCE(t.orders, 0)  AS orders,
+         COALESCE(t.version, 0) AS version
+  FROM (SELECT p_shop_id AS id_shop) s
+  LEFT JOIN shop_sales_totals t ON t.id_shop = s.id_shop;
+
+  SELECT day AS period, revenue, units, orders
+  FROM shop_sales_daily
+  WHERE id_shop = p_shop_id AND version > p_since
+    AND day >= CURRENT_DATE - INTERVAL p_days DAY
+  ORDER BY day;
+
+  SELECT week_start AS period, revenue, units, orders
+  FROM shop_sales_weekly
+  WHERE id_shop = p_shop_id AND version > p_since
+    AND week_start >= CURRENT_DATE - INTERVAL p_weeks WEEK
+  ORDER BY week_start;
+
+  IF p_since = 0 THEN
+    SELECT sp.product_id, p.name_p, sp.revenue, sp.units
+    FROM shop_sales_product sp
+    JOIN products p ON p.product_id = sp.product_id
+    WHERE sp.id_shop = p_shop_id
+    ORDER BY sp.units DESC
+    LIMIT p_top;
+  ELSE
+    SELECT sp.product_id, p.name_p, sp.revenue, sp.units
+    FROM shop_sales_product sp
+    JOIN products p ON p.product_id = sp.product_id
+    WHERE sp.id_shop = p_shop_id AND sp.version > p_since;
+  END IF;
+
+  SELECT size, units
+  FROM shop_sales_size
+  WHERE id_shop = p_shop_id AND version > p_since
+  ORDER BY units DESC;
+END//
+
+-- Versione corrente del feed ordini dello shop
+CREATE PROCEDURE sp_seller_order_version(IN p_shop_id INT)
+BEGIN
+  SELECT COALESCE(MAX(version), 0) AS version
+  FROM order_changes
+  WHERE id_shop = p_shop_id;
+END//
+
+-- Aggiorna l'avviso di scorta di una variante; usata dai trigger su product_availability.
+-- p_old_qty NULL = variante nuova, p_new_qty NULL = variante rimossa
+CREATE PROCEDURE sp_stock_alert_apply(
+  IN p_shop_id    INT,
+  IN p_product_id INT,
+  IN p_size       VARCHAR(10),
+  IN p_old_qty    INT,
+  IN p_new_qty    INT
+)
+BEGIN
+  DECLARE v_threshold INT;
+  SELECT low_stock_threshold INTO v_threshold FROM shops WHERE id_shop = p_shop_id;
+
+  IF p_new_qty IS NOT NULL AND p_new_qty <= v_threshold THEN
+    REPLACE INTO stock_alerts (id_shop, product_id, size, quantity, level)
+    VALUES (p_shop_id, p_product_id, p_size, p_new_qty, IF(p_new_qty <= 0, 'esaurito', 'scarso'));
+  ELSEIF p_old_qty IS NOT NULL AND p_old_qty <= v_threshold THEN
+    REPLACE INTO stock_alerts (id_shop, product_id, size, quantity, level)
+    VALUES (p_shop_id, p_product_id, p_size, COALESCE(p_new_qty, 0), 'ok');
+  END IF;
+END//
+
+-- Varianti dello shop attualmente sotto soglia (esaurite prima)
+CREATE PROCEDURE sp_seller_stock_alerts(IN p_shop_id INT)
+BEGIN
+  SELECT a.version, a.product_id, p.name_p, a.size, a.quantity, a.level
+  FROM stock_alerts a
+  JOIN products p ON p.product_id = a.product_id
+  WHERE a.id_shop = p_shop_id AND a.level <> 'ok'
+  ORDER BY a.level DESC, p.name_p, a.size;
+END//
+
+CREATE PROCEDURE sp_seller_stock_alert_version(IN p_shop_id INT)
+BEGIN
+  SELECT COALESCE(MAX(version), 0) AS version
+  FROM stock_alerts
+  WHERE id_shop = p_shop_id;
+END//
+
+-- Avvisi cambiati dopo p_since, con la stessa finestra di replay del feed ordini.
+-- Le righe nuove e quelle della finestra hanno ciascuna il proprio limite: durante un picco
+-- la finestra piena non deve impedire alla versione di avanzare.
+CREATE PROCEDURE sp_seller_stock_alert_changes(
+  IN p_shop_id  INT,
+  IN p_since    BIGINT,
+  IN p_replay_s INT,
+  IN p_limit    INT
+)
+BEGIN
+  (SELECT a.version, a.product_id, p.name_p, a.size, a.quantity, a.level
+   FROM stock_alerts a
+   JOIN products p ON p.product_id = a.product_id
+   WHERE a.id_shop = p_shop_id AND a.version > p_since
+   ORDER BY a.version
+   LIMIT p_limit)
+  UNION ALL
+  (SELECT a.version, a.product_id, p.name_p, a.size, a.quantity, a.level
+   FROM stock_alerts a
+   JOIN products p ON p.product_id = a.product_id
+   WHERE a.id_shop = p_shop_id AND a.version <= p_since
+     AND a.changed_at >= NOW() - INTERVAL p_replay_s SECOND
+   ORDER BY a.version DESC
+   LIMIT p_limit);
+END//
+
+CREATE PROCEDURE sp_seller_get_stock_threshold(IN p_shop_id INT)
+BEGIN
+  SELECT low_stock_threshold FROM shops WHERE id_shop = p_shop_id;
+END//
+
+-- Nuova soglia: ricalcola una volta gli avvisi del solo shop
+CREATE PROCEDURE sp_seller_set_stock_threshold(IN p_shop_id INT, IN p_threshold INT)
+BEGIN
+  IF p_threshold IS NULL OR p_threshold < 0 THEN
+    SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = 'Soglia non valida';
+  END IF;
+
+  START TRANSACTION;
+    UPDATE shops SET low_stock_threshold = p_threshold WHERE id_shop = p_shop_id;
+
+    -- avvisi rientrati con la nuova soglia
+    REPLACE INTO stock_alerts (id_shop, product_id, size, quantity, level)
+    SELECT a.id_shop, a.product_id, a.size, COALESCE(pa.quantity, 0), 'ok'
+    FROM stock_alerts a
+    LEFT JOIN product_availability pa
+           ON pa.id_shop = a.id_shop AND pa.product_id = a.product_id AND pa.size = a.size
+    WHERE a.id_shop = p_shop_id AND a.level <> 'ok'
+      AND (pa.quantity IS NULL OR pa.quantity > p_threshold);
+
+    -- varianti ora sotto soglia e non ancora segnalate
+    REPLACE INTO stock_alerts (id_shop, product_id, size, quantity, level)
+    SELECT pa.id_shop, pa.product_id, pa.size, pa.quantity, IF(pa.quantity <= 0, 'esaurito', 'scarso')
+    FROM product_availability pa
+    LEFT JOIN stock_alerts a
+           ON a.id_shop = pa.id_shop AND a.product_id = pa.product_id AND a.size = pa.size
+    WHERE pa.id_shop = p_shop_id AND pa.quantity <= p_threshold
+      AND (a.level IS NULL OR a.level = 'ok');
+  COMMIT;
 END//
 
 DELIMITER ;
@@ -6,11 +6,14 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 import org.example.database.DatabaseConnection;
+import org.example.services.WishlistWriteBehind;
 import java.util.Objects;
 
 public class Main extends Application {
     @Override
     public void start(Stage stage) throws Exception {
+        // recupera le modifiche alla wishlist rimaste nel journal
+        WishlistWriteBehind.start();
         Parent root = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("/fxml/Login.fxml")));
         stage.setScene(new Scene(root));
         stage.setTitle("Login");
@@ -20,6 +23,8 @@ public class Main extends Application {
     @Override
     public void stop() throws Exception {
         super.stop();
+        // Scrivo le modifiche alla wishlist ancora in attesa
+        WishlistWriteBehind.shutdown();
         // Chiudo la connessione al termine dell'app
         DatabaseConnection.closeConnection();
     }
@@ -19,12 +19,17 @@ import javafx.stage.Stage;
 import javafx.stage.Window;
 import org.example.dao.ProductDaos;
 import org.example.dao.api.ProductDao;
+import org.example.inventory.InsufficientStockException;
+import org.example.inventory.InventoryHoldService;
+import org.example.models.Cart;
 import org.example.models.CartItem;
 import org.example.models.Product;
+import org.example.models.SkuKey;
 import org.example.util.Session;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.sql.SQLException;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -49,44 +54,69 @@ public class CartController {
 
     public void setOnCartUpdated(Runnable callback) { this.onCartUpdated = callback; }
 
-    public void initialize() { loadCartItems(); }
+    public void initialize() {
+        // carrello aperto: la sessione conta come attiva per il rinnovo degli hold
+        InventoryHoldService.touch(InventoryHoldService.currentOwner());
+        loadCartItems();
+    }
 
-    // ==== Helper per raggruppare per prodotto+shop+taglia ====
-    private record Key(long productId, int shopId, String size) { }
+    // Nodi di una riga già a video: i click aggiornano solo questi, senza ricostruire la lista
+    private record RowView(GridPane node, Label qtyLbl, Label subLbl, Button minus, Button plus) { }
 
-    // riga del carrello
-    private static class Aggregated {
-        final Product sample;  // rappresentante per prodotto
-        int qty;
-        Aggregated(Product sample, int qty) { this.sample = sample; this.qty = qty; }
-        double unitPrice() { return sample.getPrice(); }
-        double subtotal() { return unitPrice() * qty; }
-    }
+    private final Map<SkuKey, RowView> rows = new HashMap<>();
+    // Disponibilità letta una volta per apertura del carrello (null = non verificabile)
+    private Map<SkuKey, Integer> stockCache;
 
     // Carica i prodotti nel carrello
     public void loadCartItems() {
-        List<Product> cartItems = Session.getCartItems();
+        Cart cart = Session.getCart();
 
         cartItemsContainer.getChildren().clear();
-        boolean hasItems = cartItems != null && !cartItems.isEmpty();
+        rows.clear();
+        boolean hasItems = !cart.isEmpty();
         toggleCartPlaceholders(hasItems);
 
-        double total = 0.0;
-        if (!hasItems) {
-            updateTotalLabel(total);
-            return;
+        refreshStockCache(cart);
+
+        // le righe sono già aggregate per (prodotto, negozio, taglia) e il totale è mantenuto dal carrello
+        for (Cart.Line line : cart.getLines()) {
+            cartItemsContainer.getChildren().add(buildCartRow(line));
         }
 
-        // Riusa l’aggregazione già estratta per onCheckout()
-        Map<Key, Aggregated> aggregated = aggregateCartItems(cartItems);
+        updateTotalLabel(cart.getTotal());
+    }
 
-        for (Aggregated agg : aggregated.values()) {
-            GridPane row = buildCartRow(agg);
-            cartItemsContainer.getChildren().add(row);
-            total += agg.subtotal();
+    // Un solo round trip per tutte le righe del carrello
+    private void refreshStockCache(Cart cart) {
+        List<SkuKey> keys = cart.getLines().stream().map(Cart.Line::getKey).toList();
+        try {
+            stockCache = productDao.getStockFor(keys);
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Impossibile leggere la disponibilità del carrello", ex);
+            stockCache = null;
         }
+    }
+
+    // Aggiorna la sola riga toccata (o la rimuove) e il totale
+    private void onLineChanged(SkuKey key) {
+        Cart cart = Session.getCart();
+        Cart.Line line = cart.getLine(key);
+        RowView view = rows.get(key);
 
-        updateTotalLabel(total);
+        if (line == null) {
+            if (view != null) {
+                cartItemsContainer.getChildren().remove(view.node());
+                rows.remove(key);
+            }
+        } else if (view != null) {
+            view.qtyLbl().setText(String.valueOf(line.getQuantity()));
+            view.subLbl().setText(String.format("€ %.2f", line.getSubtotal()));
+            applyStockLimit(view, line);
+        }
+
+        toggleCartPlaceholders(!cart.isEmpty());
+        updateTotalLabel(cart.getTotal());
+        if (onCartUpdated != null) onCartUpdated.run();
     }
 
     private void toggleCartPlaceholders(boolean hasItems) {
@@ -100,14 +130,14 @@ public class CartController {
         }
     }
 
-    private void updateTotalLabel(double total) {
+    private void updateTotalLabel(BigDecimal total) {
         if (totalLabel != null) {
             totalLabel.setText("€ " + String.format("%.2f", total));
         }
     }
 
-    private GridPane buildCartRow(Aggregated agg) {
-        Product p = agg.sample;
+    private GridPane buildCartRow(Cart.Line line) {
+        Product p = line.getProduct();
 
         GridPane row = new GridPane();
         row.setMinHeight(56);
@@ -122,10 +152,10 @@ public class CartController {
 
         ImageView imageView = createProductImage(p);
         Label name = createNameLabel(p);
-        Label unitPrice = createUnitPriceLabel(agg);
-        HBox qtyBox = createQtyBox(p, agg);
-        Label sub = createSubtotalLabel(agg);
-        Button removeAll = createRemoveAllButton(p);
+        Label unitPrice = createUnitPriceLabel(line);
+        Label sub = createSubtotalLabel(line);
+        HBox qtyBox = createQtyBox(row, sub, line);
+        Button removeAll = createRemoveAllButton(line.getKey());
 
         row.add(imageView, 0, 0);
         row.add(name,      1, 0);
@@ -176,73 +206,92 @@ public class CartController {
         return name;
     }
 
-    private Label createUnitPriceLabel(Aggregated agg) {
-        Label unitPrice = new Label(String.format("€ %.2f", agg.unitPrice()));
+    private Label createUnitPriceLabel(Cart.Line line) {
+        Label unitPrice = new Label(String.format("€ %.2f", line.getUnitPrice()));
         unitPrice.setStyle("-fx-text-fill: #d32f2f;");
         return unitPrice;
     }
 
-    private HBox createQtyBox(Product p, Aggregated agg) {
+    private HBox createQtyBox(GridPane row, Label sub, Cart.Line line) {
+        SkuKey key = line.getKey();
         HBox qtyBox = new HBox(8);
         qtyBox.setAlignment(Pos.CENTER);
 
         Button minus = new Button("-");
-        Label qtyLbl = new Label(String.valueOf(agg.qty));
+        Label qtyLbl = new Label(String.valueOf(line.getQuantity()));
         Button plus = new Button("+");
 
-        final int stock;
-        try {
-            stock = productDao.getStockFor(p.getProductId(), p.getIdShop(), p.getSize());
-        } catch (Exception ex) {
-            // In caso di errore niente incremento
-            logger.log(Level.WARNING, ex, () -> "Impossibile leggere lo stock per " + p.getName());
-            qtyLbl.setText(String.valueOf(agg.qty));
-            plus.setDisable(true);
-            stockLabelTooltip(plus, MSG_STOCK_UNKNOWN);
-            stockLabelTooltip(qtyLbl, MSG_STOCK_UNKNOWN);
-            stockLabelTooltip(minus, MSG_STOCK_UNKNOWN);
-            minus.setOnAction(e -> {
-                Session.removeFromCart(p);
-                loadCartItems();
-                if (onCartUpdated != null) onCartUpdated.run();
-            });
-            qtyBox.getChildren().addAll(minus, qtyLbl, plus);
-            return qtyBox;
-        }
-
-        // Se già al massimo disabilità il +
-        if (agg.qty >= stock) {
-            plus.setDisable(true);
-            stockLabelTooltip(plus, "Quantità massima raggiunta: " + stock);
-        }
+        RowView view = new RowView(row, qtyLbl, sub, minus, plus);
+        rows.put(key, view);
+        applyStockLimit(view, line);
 
         minus.setOnAction(e -> {
-            Session.removeFromCart(p);
-            loadCartItems();
-            if (onCartUpdated != null) onCartUpdated.run();
+            Session.getCart().decrement(key);
+            adjustHold(key, Session.getCart().getQuantity(key));
+            onLineChanged(key);
         });
 
         plus.setOnAction(e -> {
-            Session.addToCart(Product.copyOf(p));
-            loadCartItems();
-            if (onCartUpdated != null) onCartUpdated.run();
+            Integer stock = (stockCache != null) ? stockCache.get(key) : null;
+            int next = Session.getCart().getQuantity(key) + 1;
+            if (stock == null || next > stock) return;
+            if (!adjustHold(key, next)) {
+                onLineChanged(key);
+                return;
+            }
+            Session.getCart().increment(key);
+            onLineChanged(key);
         });
 
         qtyBox.getChildren().addAll(minus, qtyLbl, plus);
         return qtyBox;
     }
 
+    // Allinea l'hold di stock alla nuova quantità; false se la disponibilità non basta più
+    private boolean adjustHold(SkuKey key, int qty) {
+        try {
+            InventoryHoldService.hold(InventoryHoldService.currentOwner(), key, qty);
+            return true;
+        } catch (InsufficientStockException ex) {
+            // qualcun altro ha preso lo stock: aggiorna la cache così il + si disabilita
+            if (stockCache != null) stockCache.put(key, ex.getAvailable());
+            return false;
+        } catch (SQLException ex) {
+            logger.log(Level.WARNING, "Impossibile aggiornare l'hold di stock", ex);
+            return true;
+        }
+    }
+
+    // Abilita il + in base alla disponibilità in cache
+    private void applyStockLimit(RowView view, Cart.Line line) {
+        Integer stock = (stockCache != null) ? stockCache.get(line.getKey()) : null;
+        if (stock == null) {
+            // In caso di errore niente incremento
+            view.plus().setDisable(true);
+            stockLabelTooltip(view.plus(), MSG_STOCK_UNKNOWN);
+            stockLabelTooltip(view.qtyLbl(), MSG_STOCK_UNKNOWN);
+            stockLabelTooltip(view.minus(), MSG_STOCK_UNKNOWN);
+        } else if (line.getQuantity() >= stock) {
+            // Se già al massimo disabilità il +
+            view.plus().setDisable(true);
+            stockLabelTooltip(view.plus(), "Quantità massima raggiunta: " + stock);
+        } else {
+            view.plus().setDisable(false);
+            view.plus().setTooltip(null);
+        }
+    }
+
     private static void stockLabelTooltip(Control c, String msg) {
         c.setTooltip(new Tooltip(msg));
     }
 
-    private Label createSubtotalLabel(Aggregated agg) {
-        Label sub = new Label(String.format("€ %.2f", agg.subtotal()));
+    private Label createSubtotalLabel(Cart.Line line) {
+        Label sub = new Label(String.format("€ %.2f", line.getSubtotal()));
         sub.setStyle("-fx-font-weight: bold;");
         return sub;
     }
 
-    private Button createRemoveAllButton(Product p) {
+    private Button createRemoveAllButton(SkuKey key) {
         Button removeAll = new Button();
         removeAll.setPrefSize(24, 24);
         removeAll.setGraphic(new ImageView(
@@ -250,9 +299,9 @@ public class CartController {
                         16, 16, true, true)));
 
         removeAll.setOnAction(e -> {
-            Session.removeLineFromCart(p.getProductId(), p.getIdShop(), p.getSize());
-            loadCartItems();
-            if (onCartUpdated != null) onCartUpdated.run();
+            Session.getCart().removeLine(key);
+            InventoryHoldService.release(InventoryHoldService.currentOwner(), key);
+            onLineChanged(key);
         });
 
         return removeAll;
@@ -260,55 +309,32 @@ public class CartController {
 
     @FXML
     private void onCheckout() {
-        List<Product> products = Session.getCartItems();
-        if (products == null || products.isEmpty()) {
+        Cart cart = Session.getCart();
+        if (cart.isEmpty()) {
             new Alert(Alert.AlertType.INFORMATION, "Il carrello è vuoto.").showAndWait();
             return;
         }
 
-        Map<Key, Aggregated> aggregated = aggregateCartItems(products);
-        CheckoutData data = buildCheckoutData(aggregated);
-        openOrderSummary(data);
+        openOrderSummary(buildCheckoutData(cart));
     }
 
-    // Raggruppa gli articoli per (productId, shopId, taglia)
-    private Map<Key, Aggregated> aggregateCartItems(List<Product> products) {
-        Map<Key, Aggregated> map = new LinkedHashMap<>();
-        for (Product p : products) {
-            Key k = new Key(p.getProductId(), p.getIdShop(), p.getSize());
-            map.compute(k, (key, agg) -> {
-                if (agg == null) return new Aggregated(p, 1);
-                agg.qty += 1;
-                return agg;
-            });
-        }
-        return map;
-    }
-
-    // Converte gli aggregati in CartItem e calcola il totale
-    private CheckoutData buildCheckoutData(Map<Key, Aggregated> map) {
-        List<CartItem> items = new ArrayList<>();
-        BigDecimal total = BigDecimal.ZERO;
-
-        for (Aggregated agg : map.values()) {
-            Product p = agg.sample;
-            int qty = agg.qty;
-            double priceDouble = p.getPrice();
+    // Converte le righe del carrello in CartItem; il totale è quello mantenuto dal carrello
+    private CheckoutData buildCheckoutData(Cart cart) {
+        List<CartItem> items = new ArrayList<>(cart.getLineCount());
 
+        for (Cart.Line line : cart.getLines()) {
+            Product p = line.getProduct();
             items.add(new CartItem(
                     p.getProductId(),
                     p.getIdShop(),
-                    qty,
-                    priceDouble,
+                    line.getQuantity(),
+                    p.getPrice(),
                     p.getName(),
                     p.getImageData(),
                     p.getSize()
             ));
-
-            BigDecimal unit = BigDecimal.valueOf(priceDouble);
-            total = total.add(unit.multiply(BigDecimal.valueOf(qty)));
         }
-        return new CheckoutData(items, total);
+        return new CheckoutData(items, cart.getTotal());
     }
 
     // Trova la finestra owner corretta per la dialog
@@ -19,11 +19,14 @@ import org.example.dao.ProductDaos;
 import org.example.dao.api.ProductDao;
 import org.example.demo.DemoData;
 import org.example.models.Product;
+import org.example.services.WishlistMembership;
+import org.example.services.WishlistWriteBehind;
 import org.example.util.Session;
 
 import java.io.IOException;
 import java.net.URL;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.ResourceBundle;
@@ -133,6 +136,7 @@ public class HomeController implements Initializable {
             if (Session.isDemo()) {
                 DemoData.clearUserDemoReviews(Session.getUser());
             }
+            WishlistWriteBehind.flushAll();
             Session.clear();
 
             Parent root = FXMLLoader.load(
@@ -177,7 +181,6 @@ public class HomeController implements Initializable {
             };
             recenter.run();
             popupContent.layoutBoundsProperty().addListener((obs, o, n) -> recenter.run());
-            controller.loadCartItems();
 
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Errore nel caricamento del menu carrello", e);
@@ -186,9 +189,9 @@ public class HomeController implements Initializable {
     }
 
     public void updateCart() {
-        List<Product> cartItems = Session.getCartItems();
-        if (cartItems != null && !cartItems.isEmpty()) {
-            cartCountLabel.setText(String.valueOf(cartItems.size()));
+        int units = Session.getCart().getUnitCount();
+        if (units > 0) {
+            cartCountLabel.setText(String.valueOf(units));
             cartCountLabel.setVisible(true);
             cartCountLabel.setManaged(true);
         } else {
@@ -333,6 +336,7 @@ public class HomeController implements Initializable {
 
     private void displayProducts(List<Product> products) throws IOException  {
         productPane.getChildren().clear();
+        List<ProductCardController> cards = new ArrayList<>(products.size());
         for (Product p : products) {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/ProductCard.fxml"));
             Node card = loader.load();
@@ -340,6 +344,12 @@ public class HomeController implements Initializable {
             ctrl.setProduct(p);
             ctrl.setOnAddToCartCallback(this::updateCart);
             productPane.getChildren().add(card);
+            cards.add(ctrl);
+        }
+        // preferiti non ancora in memoria: le card si aggiornano appena arrivano
+        if (WishlistMembership.cached(Session.getUser()) == null) {
+            WishlistMembership.preload(Session.getUser(), () ->
+                    Platform.runLater(() -> cards.forEach(ProductCardController::refreshWishMark)));
         }
     }
 
@@ -43,10 +43,22 @@ public class ListReviewController {
 
     public void init(Product product) {
         this.product = product;
+        setTitle();
+        loadReviews();
+    }
+
+    // Variante con le recensioni già caricate dal dettaglio prodotto: nessun accesso al DB
+    public void init(Product product, List<Review> preloaded) {
+        this.product = product;
+        setTitle();
+        reviewsBox.getChildren().clear();
+        render(preloaded);
+    }
+
+    private void setTitle() {
         String shop = (product.getNameShop() != null && !product.getNameShop().isBlank())
                 ? " • " + product.getNameShop() : "";
         productTitle.setText(product.getName() + shop);
-        loadReviews();
     }
 
     private void loadReviews() {
@@ -54,24 +66,7 @@ public class ListReviewController {
         progress.setVisible(true);
 
         try {
-            List<Review> list = ReviewDAO.listByProductShop(product.getProductId(), product.getIdShop());
-
-            double avg = list.stream().mapToInt(Review::getRating).average().orElse(0.0);
-            int count = list.size();
-            avgLabel.setText(String.format("Voto medio: %.1f/5", avg));
-            countLabel.setText("(" + count + " recensioni)");
-
-            DateTimeFormatter df = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-
-            for (Review r : list) {
-                reviewsBox.getChildren().add(buildRow(r, df));
-            }
-
-            if (list.isEmpty()) {
-                Label empty = new Label("Ancora nessuna recensione. Sii il primo a scriverne una!");
-                empty.setStyle("-fx-text-fill:#666;");
-                reviewsBox.getChildren().add(empty);
-            }
+            render(ReviewDAO.listByProductShop(product.getProductId(), product.getIdShop()));
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Errore caricando recensioni", e);
             reviewsBox.getChildren().add(new Label("Impossibile caricare le recensioni."));
@@ -80,6 +75,25 @@ public class ListReviewController {
         }
     }
 
+    private void render(List<Review> list) {
+        double avg = list.stream().mapToInt(Review::getRating).average().orElse(0.0);
+        int count = list.size();
+        avgLabel.setText(String.format("Voto medio: %.1f/5", avg));
+        countLabel.setText("(" + count + " recensioni)");
+
+        DateTimeFormatter df = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+        for (Review r : list) {
+            reviewsBox.getChildren().add(buildRow(r, df));
+        }
+
+        if (list.isEmpty()) {
+            Label empty = new Label("Ancora nessuna recensione. Sii il primo a scriverne una!");
+            empty.setStyle("-fx-text-fill:#666;");
+            reviewsBox.getChildren().add(empty);
+        }
+    }
+
     private HBox buildRow(Review r, DateTimeFormatter df) {
         HBox row = new HBox(12);
         row.setAlignment(Pos.TOP_LEFT);
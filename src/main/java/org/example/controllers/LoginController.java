@@ -12,6 +12,7 @@ import javafx.scene.control.TextField;
 import javafx.stage.Stage;
 import org.example.dao.UserDAO;
 import org.example.demo.DemoData;
+import org.example.services.WishlistMembership;
 import org.example.util.Session;
 
 import java.io.IOException;
@@ -57,6 +58,8 @@ public class LoginController {
                 if ("venditore".equalsIgnoreCase(role)) {
                     goSellerHome();
                 } else {
+                    // preferiti in memoria: il cuore su card e dettaglio non tocca più il DB
+                    WishlistMembership.preload(user, null);
                     goHome();
                 }
             }
@@ -115,6 +118,7 @@ public class LoginController {
                     guest, new org.example.demo.DemoData.User(demoId, guest, null, "utente", null, null)
             );
 
+            WishlistMembership.preload(guest, null);
             goHome();
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Errore nell'attivazione della modalità demo", e);
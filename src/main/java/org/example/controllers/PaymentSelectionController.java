@@ -3,23 +3,23 @@ package org.example.controllers;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.stage.Stage;
 import org.example.dao.OrderDAO;
 import org.example.gateway.FakePaymentGateway;
 import org.example.gateway.PaymentGateway;
-import org.example.gateway.PaymentResult;
 import org.example.models.Card;
 import org.example.models.CartItem;
 import org.example.services.CardsService;
+import org.example.services.CheckoutService;
 import org.example.ui.CardUi;
 import org.example.util.Session;
 
 import java.math.BigDecimal;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -55,6 +55,7 @@ public class PaymentSelectionController {
     private static final Logger logger = Logger.getLogger(PaymentSelectionController.class.getName());
 
     private final PaymentGateway gateway = new FakePaymentGateway(800, 0.10); // 800ms delay, 10% fail
+    private final CheckoutService checkout = new CheckoutService(gateway);
 
     private Stage stage;
     private Stage parentStage;
@@ -149,27 +150,13 @@ public class PaymentSelectionController {
         paymentData.put("cvv",         cvv);
         logger.log(Level.FINE, "CVV presente: {0}", !cvv.isBlank() ? "***" : "no");
 
-        Task<OrderDAO.CreationResult> task = getCreationResultTask(userId, paymentData, selected, address);
-        new Thread(task).start();
-    }
-
-    private Task<OrderDAO.CreationResult> getCreationResultTask(Integer userId, Map<String, String> paymentData, Card selected, String address) {
-        Task<OrderDAO.CreationResult> task = new Task<>() {
-            @Override
-            protected OrderDAO.CreationResult call() throws Exception {
-                PaymentResult payRes = gateway.charge(userId, total, paymentData);
-                if (!payRes.success()) {
-                    throw new IllegalStateException("Pagamento rifiutato: " + payRes.message());
-                }
-                OrderDAO.CreationResult res = OrderDAO.placeOrderWithStockDecrement(userId, items, address);
-                logger.log(Level.INFO, "Payment txId: {0}", payRes.transactionId());
-                return res;
-            }
-        };
-
-        task.setOnSucceeded(evt -> handlePaymentSuccess(selected.getId(), task.getValue()));
-        task.setOnFailed(evt -> handlePaymentFailure(task.getException()));
-        return task;
+        // pagamento e prenotazione stock in parallelo; l'ordine viene scritto solo se riescono entrambi
+        checkout.checkout(userId, items, total, paymentData, address)
+                .whenComplete((res, err) -> Platform.runLater(() -> {
+                    if (err == null) handlePaymentSuccess(selected.getId(), res);
+                    else handlePaymentFailure(err instanceof CompletionException ce && ce.getCause() != null
+                            ? ce.getCause() : err);
+                }));
     }
 
     private void handlePaymentSuccess(int cardId, OrderDAO.CreationResult res) {
@@ -14,7 +14,9 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 import org.example.models.Product;
+import org.example.services.WishlistMembership;
 import org.example.util.ImageUtils;
+import org.example.util.Session;
 
 import java.io.IOException;
 import java.util.logging.Level;
@@ -28,6 +30,7 @@ public class ProductCardController {
     @FXML private Label nameLbl ;
     @FXML private Label priceLbl;
     @FXML private Label nameShopLbl;
+    @FXML private Label wishMark;
     private Product product;
     private Runnable onAddToCartCallback;
 
@@ -44,6 +47,14 @@ public class ProductCardController {
         nameLbl.setText(p.getName());
         nameShopLbl.setText(p.getNameShop());
         priceLbl.setText(String.format("€ %.2f", p.getPrice()));
+        refreshWishMark();
+    }
+
+    // Cuore se il prodotto è nei preferiti (in qualsiasi taglia); solo lookup in memoria
+    public void refreshWishMark() {
+        if (product == null) return;
+        WishlistMembership wished = WishlistMembership.cached(Session.getUser());
+        wishMark.setVisible(wished != null && wished.contains(product.getProductId(), product.getIdShop(), null));
     }
 
     @FXML
@@ -94,6 +105,8 @@ public class ProductCardController {
             dialog.setScene(scene);
 
             dialog.showAndWait();
+            detailCtrl.cancelLoading();
+            refreshWishMark();
 
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Impossibile caricare ProductDetail.fxml", e);
@@ -1,5 +1,6 @@
 package org.example.controllers;
 
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.geometry.Insets;
@@ -15,11 +16,18 @@ import javafx.scene.layout.*;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import org.example.dao.ProductDaos;
+import org.example.dao.ReviewDAO;
 import org.example.dao.ShopDAO;
-import org.example.dao.UserDAO;
 import org.example.dao.api.ProductDao;
+import org.example.inventory.InsufficientStockException;
+import org.example.inventory.InventoryHoldService;
 import org.example.models.Product;
+import org.example.models.Review;
 import org.example.models.Shop;
+import org.example.models.SkuKey;
+import org.example.services.WishlistMembership;
+import org.example.services.WishlistWriteBehind;
+import org.example.util.FanOut;
 import org.example.util.Session;
 
 import java.awt.*;
@@ -28,8 +36,10 @@ import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -58,6 +68,18 @@ public class ProductDetailController {
     private Product product;
     private Runnable onAddToCartCallback;
 
+    // fan-out del caricamento iniziale e del cambio taglia
+    private FanOut loadScope;
+    private FanOut sizeScope;
+    // pre-caricamenti facoltativi (negozio, recensioni, preferiti): scope separato, un loro errore
+    // non deve annullare taglie, prezzo e disponibilità
+    private FanOut prefetchScope;
+    private boolean stockLoaded;
+    private Shop shopInfo;
+    private List<Review> reviews;
+
+    private static final Duration LOAD_TIMEOUT = Duration.ofSeconds(5);
+
     private static final String EUR_PRICE_FMT = "€ %.2f";
     private static final String TXT_ADDED_TO_WISHLIST = "Aggiunto ai preferiti";
 
@@ -68,7 +90,7 @@ public class ProductDetailController {
         this.onAddToCartCallback = callback;
     }
 
-    public void setProduct(Product p) throws SQLException {
+    public void setProduct(Product p) {
         this.product = p;
         byte[] data = p.getImageData();
         if (data != null && data.length > 0) {
@@ -87,48 +109,103 @@ public class ProductDetailController {
         qtySpinner.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(1, 1, 1));
         qtySpinner.setEditable(true);
 
-        try {
-            List<String> sizes = productDao.getAvailableSizes(p.getProductId(), p.getIdShop());
-            sizeCombo.getItems().setAll(sizes);
-
-            if (!sizes.isEmpty()) {
-                sizeCombo.getSelectionModel().selectFirst();
-                String sel = sizeCombo.getValue();
-                product.setSize(sel);
-                refreshForSelectedSize(sel);
-
-                // Listener: ogni cambio taglia → un solo punto di verità
-                sizeCombo.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newSel) -> {
-                    if (newSel == null) return;
-                    product.setSize(newSel);
-                    try {
-                        refreshForSelectedSize(newSel);
-                    } catch (SQLException e) {
-                        logger.log(Level.WARNING, e,
-                                () -> "Errore aggiornando prezzo/stato preferiti per taglia " + newSel);
-                    }
-                });
+        // finché non arriva la disponibilità il carrello resta bloccato
+        stockLabel.setText("…");
+        addToCartBtn.setDisable(true);
+        stockLoaded = false;
+
+        // valori di sessione letti sul thread FX, prima del fan-out
+        final String user = Session.getUser();
+        final long pid = p.getProductId();
+        final int shopId = p.getIdShop();
+
+        // Lookup indipendenti in parallelo: la finestra è pronta in max(latenze), non nella somma
+        cancelLoading();
+        loadScope = new FanOut(LOAD_TIMEOUT, Platform::runLater, this::onLoadFailed);
+        loadScope.fork(() -> productDao.getAvailableSizes(pid, shopId), this::applySizes);
+
+        prefetchScope = new FanOut(LOAD_TIMEOUT, Platform::runLater,
+                t -> logger.log(Level.FINE, "Pre-caricamento del dettaglio interrotto", t));
+        // stato wishlist “senza taglia”: dai preferiti in memoria, caricati solo se mancano
+        WishlistMembership wished = WishlistMembership.cached(user);
+        if (wished != null) updateWishButton(wished.contains(pid, shopId, null));
+        else prefetchScope.fork(optional(() -> WishlistMembership.of(user).contains(pid, shopId, null)),
+                w -> { if (w != null) updateWishButton(w); });
+        // info negozio e recensioni pre-caricate: il click non deve più aspettare il DB
+        // (se mancano, il click le carica come prima)
+        prefetchScope.fork(optional(() -> ShopDAO.getById(shopId)), s -> shopInfo = s);
+        prefetchScope.fork(optional(() -> ReviewDAO.listByProductShop(pid, shopId)), list -> {
+            if (list != null) applyReviewSummary(list);
+        });
+    }
 
-            } else {
-                sizeCombo.setDisable(true);
-                updateStockAndQtyRange();
+    // Un pre-caricamento fallito dà null invece di interrompere gli altri
+    private static <T> Callable<T> optional(Callable<T> task) {
+        return () -> {
+            try {
+                return task.call();
+            } catch (InterruptedException ie) {
+                throw ie;
+            } catch (Exception ex) {
+                logger.log(Level.FINE, "Pre-caricamento non riuscito", ex);
+                return null;
             }
-        } catch (SQLException ex) {
-            logger.log(Level.WARNING, "Errore caricando taglie/prezzo", ex);
+        };
+    }
+
+    // Annulla i lookup ancora in corso (chiusura della finestra)
+    public void cancelLoading() {
+        if (loadScope != null) loadScope.close();
+        if (sizeScope != null) sizeScope.close();
+        if (prefetchScope != null) prefetchScope.close();
+    }
+
+    private void applySizes(List<String> sizes) {
+        sizeCombo.getItems().setAll(sizes);
+
+        if (sizes.isEmpty()) {
+            sizeCombo.setDisable(true);
+            long pid = product.getProductId();
+            int shopId = product.getIdShop();
+            loadScope.fork(() -> productDao.getStockFor(pid, shopId, null), this::applyStock);
+            return;
         }
 
-        // stato wishlist “senza taglia” (se lo mantieni come logica)
-        boolean alreadyWished = productDao.existsWish(Session.getUser(),
-                product.getProductId(),
-                product.getIdShop());
-        updateWishButton(alreadyWished);
+        sizeCombo.getSelectionModel().selectFirst();
+        String sel = sizeCombo.getValue();
+        product.setSize(sel);
+        long pid = product.getProductId();
+        int shopId = product.getIdShop();
+        // prezzo e disponibilità della prima taglia nello stesso scope del caricamento iniziale
+        loadScope.fork(() -> productDao.getPriceFor(pid, shopId, sel), price -> applyPrice(sel, price));
+        loadScope.fork(() -> productDao.getStockFor(pid, shopId, sel), stock -> applyStockFor(sel, stock));
+
+        // Listener: ogni cambio taglia → un solo punto di verità
+        sizeCombo.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newSel) -> {
+            if (newSel == null) return;
+            product.setSize(newSel);
+            refreshForSelectedSize(newSel);
+        });
+    }
+
+    private void applyReviewSummary(List<Review> list) {
+        this.reviews = list;
+        double avg = list.stream().mapToInt(Review::getRating).average().orElse(0.0);
+        addReview.setTooltip(new Tooltip(list.isEmpty()
+                ? "Ancora nessuna recensione"
+                : String.format("Voto medio: %.1f/5 (%d recensioni)", avg, list.size())));
+    }
+
+    private void onLoadFailed(Throwable t) {
+        logger.log(Level.WARNING, "Errore caricando taglie/prezzo/disponibilità", t);
+        if (!stockLoaded) applyStockFallback();
     }
 
     private void onShopClick() {
         if (product == null) return;
 
         try {
-            Shop shop = ShopDAO.getById(product.getIdShop());
+            Shop shop = (shopInfo != null) ? shopInfo : ShopDAO.getById(product.getIdShop());
             if (shop == null) {
                 new Alert(Alert.AlertType.INFORMATION, "Informazioni negozio non disponibili.").showAndWait();
                 return;
@@ -219,38 +296,43 @@ public class ProductDetailController {
         }
     }
 
-    private void updateStockAndQtyRange() {
-        try {
-            Integer stock;
-            String sel = (sizeCombo != null) ? sizeCombo.getValue() : null;
-
-            stock = productDao.getStockFor(product.getProductId(), product.getIdShop(), sel);
-
-            int max = stock;
+    private void applyStockFor(String size, Integer stock) {
+        if (!Objects.equals(size, sizeCombo.getValue())) return; // risposta di una taglia non più selezionata
+        applyStock(stock);
+    }
 
-            if (max <= 0) {
-                stockLabel.setText("Esaurito");
-                qtySpinner.setDisable(true);
-                addToCartBtn.setDisable(true);
-            } else {
-                stockLabel.setText(String.valueOf(max));
-                qtySpinner.setDisable(false);
-                addToCartBtn.setDisable(false);
-
-                int current = (qtySpinner.getValue() != null) ? qtySpinner.getValue() : 1;
-                qtySpinner.setValueFactory(
-                        new SpinnerValueFactory.IntegerSpinnerValueFactory(1, max, Math.min(current, max))
-                );
-            }
-        } catch (SQLException e) {
-            logger.log(Level.WARNING, "Errore recuperando disponibilità", e);
-            stockLabel.setText("Disponibilità: —");
+    private void applyStock(Integer stock) {
+        stockLoaded = true;
+        int max = (stock != null) ? stock : 0;
+        if (max <= 0) {
+            stockLabel.setText("Esaurito");
+            qtySpinner.setDisable(true);
+            addToCartBtn.setDisable(true);
+        } else {
+            stockLabel.setText(String.valueOf(max));
             qtySpinner.setDisable(false);
             addToCartBtn.setDisable(false);
-            qtySpinner.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(1, 10, 1));
+
+            int current = (qtySpinner.getValue() != null) ? qtySpinner.getValue() : 1;
+            qtySpinner.setValueFactory(
+                    new SpinnerValueFactory.IntegerSpinnerValueFactory(1, max, Math.min(current, max))
+            );
         }
     }
 
+    private void applyStockFallback() {
+        stockLabel.setText("Disponibilità: —");
+        qtySpinner.setDisable(false);
+        addToCartBtn.setDisable(false);
+        qtySpinner.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(1, 10, 1));
+    }
+
+    private void applyPrice(String size, double price) {
+        if (!Objects.equals(size, sizeCombo.getValue())) return;
+        product.setPrice(price);
+        priceLbl.setText(String.format(EUR_PRICE_FMT, price));
+    }
+
 
     @FXML
     private void onAddToCart() {
@@ -265,6 +347,7 @@ public class ProductDetailController {
             showQtyExceededWarning(max);
             return;
         }
+        if (!holdStock(qty)) return;
 
         addToCartTimes(qty);
         notifyCartUpdated();
@@ -298,17 +381,33 @@ public class ProductDetailController {
         new Alert(Alert.AlertType.WARNING, "Quantità selezionata non disponibile. Max: " + max).showAndWait();
     }
 
-    private void addToCartTimes(int qty) {
-        for (int i = 0; i < qty; i++) {
-            Session.addToCart(Product.copyOf(product));
+    // Prenota subito lo stock per la riga del carrello (quantità già presente + qty)
+    private boolean holdStock(int qty) {
+        SkuKey key = SkuKey.of(product);
+        int total = Session.getCart().getQuantity(key) + qty;
+        try {
+            InventoryHoldService.hold(InventoryHoldService.currentOwner(), key, total);
+            return true;
+        } catch (InsufficientStockException ex) {
+            showQtyExceededWarning(Math.max(ex.getAvailable() - Session.getCart().getQuantity(key), 0));
+            return false;
+        } catch (SQLException ex) {
+            // senza hold si prosegue: la disponibilità viene comunque verificata all'ordine
+            logger.log(Level.WARNING, "Impossibile prenotare lo stock per il carrello", ex);
+            return true;
         }
     }
 
+    private void addToCartTimes(int qty) {
+        Session.addToCart(product, qty);
+    }
+
     private void notifyCartUpdated() {
         if (onAddToCartCallback != null) onAddToCartCallback.run();
     }
 
     private void closeWindow(Control control) {
+        cancelLoading();
         try {
             Stage stage = (Stage) control.getScene().getWindow();
             stage.close();
@@ -323,7 +422,11 @@ public class ProductDetailController {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/ListReview.fxml"));
             Parent root = loader.load();
             ListReviewController ctrl = loader.getController();
-            ctrl.init(product);
+            if (reviews != null) {
+                ctrl.init(product, reviews);
+            } else {
+                ctrl.init(product);
+            }
 
             Stage stage = new Stage();
             stage.setTitle("Recensioni prodotto");
@@ -331,6 +434,8 @@ public class ProductDetailController {
             stage.initModality(Modality.WINDOW_MODAL);
             stage.setScene(new Scene(root));
             stage.showAndWait();
+            // nella lista si può aggiungere una recensione: alla prossima apertura si ricarica
+            reviews = null;
 
         } catch (Exception ex) {
             showError("Impossibile aprire le recensioni:\n" + ex.getMessage(), ex);
@@ -339,32 +444,40 @@ public class ProductDetailController {
 
     @FXML
     private void addToWishList() {
-        try {
-            if (!ensureSizeSelectedOrWarn()) return;
+        if (!ensureSizeSelectedOrWarn()) return;
 
-            UserDAO.addInWishList(Session.getUser(), product.getProductId(),
-                    product.getIdShop(), product.getSize());
-
-            addToWishListBtn.setDisable(true);
-            addToWishListBtn.setText(TXT_ADDED_TO_WISHLIST);
+        // scrittura in differita: il pulsante si aggiorna subito
+        WishlistWriteBehind.add(Session.getUser(), product.getProductId(),
+                product.getIdShop(), product.getSize());
 
-        } catch (SQLException e) {
-            showError("Impossibile aggiungere ai preferiti:\n" + e.getMessage(), e);
-        }
+        addToWishListBtn.setDisable(true);
+        addToWishListBtn.setText(TXT_ADDED_TO_WISHLIST);
     }
 
-    private void refreshForSelectedSize(String sel) throws SQLException {
-        // aggiorna prezzo
-        double priceSel = productDao.getPriceFor(product.getProductId(), product.getIdShop(), sel);
-        product.setPrice(priceSel);
-        priceLbl.setText(String.format(EUR_PRICE_FMT, priceSel));
-
-        boolean wished = productDao.existsWish(Session.getUser(),
-                product.getProductId(), product.getIdShop(), sel);
-        updateWishButton(wished);
-
+    private void refreshForSelectedSize(String sel) {
+        // nuovo scope per la taglia: quello precedente (se ancora in corso) viene annullato
+        if (sizeScope != null) sizeScope.close();
+        stockLoaded = false;
+        addToCartBtn.setDisable(true);
+
+        String user = Session.getUser();
+        long pid = product.getProductId();
+        int shopId = product.getIdShop();
+        sizeScope = new FanOut(LOAD_TIMEOUT, Platform::runLater, t -> {
+            logger.log(Level.WARNING, t, () -> "Errore aggiornando prezzo/stato preferiti per taglia " + sel);
+            if (!stockLoaded && Objects.equals(sel, sizeCombo.getValue())) applyStockFallback();
+        });
+        sizeScope.fork(() -> productDao.getPriceFor(pid, shopId, sel), price -> applyPrice(sel, price));
+        WishlistMembership wished = WishlistMembership.cached(user);
+        if (wished != null) {
+            updateWishButton(wished.contains(pid, shopId, sel));
+        } else {
+            sizeScope.fork(() -> WishlistMembership.of(user).contains(pid, shopId, sel), w -> {
+                if (Objects.equals(sel, sizeCombo.getValue())) updateWishButton(w);
+            });
+        }
         // aggiorna disponibilità e range quantità
-        updateStockAndQtyRange();
+        sizeScope.fork(() -> productDao.getStockFor(pid, shopId, sel), stock -> applyStockFor(sel, stock));
     }
 
     private boolean ensureSizeSelectedOrWarn() {
@@ -389,6 +502,7 @@ public class ProductDetailController {
 
     @FXML
     private void onClose() {
+        cancelLoading();
         // chiude lo stage
         Stage stage = (Stage) closeBtn.getScene().getWindow();
         stage.close();
@@ -11,23 +11,19 @@ import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.stage.Stage;
 import org.example.dao.OrderDAO;
-import org.example.dao.OrderDAO.OrderLine;
 import org.example.dao.OrderDAO.OrderSummary;
-import org.example.models.Order;
+import org.example.models.OrderDetailLine;
 import org.example.util.Session;
 
-import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import static java.sql.Timestamp.valueOf;
 import static javafx.collections.FXCollections.observableArrayList;
 
 public class PurchaseHistoryController {
@@ -35,6 +31,7 @@ public class PurchaseHistoryController {
     private static final String ALIGN_CENTER = "-fx-alignment: CENTER;";
 
     @FXML private Button closeButton;
+    @FXML private Button loadMoreButton;
 
     // Tabella ORDINI
     @FXML private TableView<OrderSummary> ordersTable;
@@ -44,17 +41,28 @@ public class PurchaseHistoryController {
     @FXML private TableColumn<OrderSummary, String> colOrderTotal;
 
     // Tabella DETTAGLI
-    @FXML private TableView<OrderLine> itemsTable;
-    @FXML private TableColumn<OrderLine, String> colItemName;
-    @FXML private TableColumn<OrderLine, String> colItemSize;
-    @FXML private TableColumn<OrderLine, String> colItemShop;
-    @FXML private TableColumn<OrderLine, Number> colItemQty;
-    @FXML private TableColumn<OrderLine, String> colItemPrice;
-    @FXML private TableColumn<OrderLine, String> colItemSubtotal;
+    @FXML private TableView<OrderDetailLine> itemsTable;
+    @FXML private TableColumn<OrderDetailLine, String> colItemName;
+    @FXML private TableColumn<OrderDetailLine, String> colItemSize;
+    @FXML private TableColumn<OrderDetailLine, String> colItemShop;
+    @FXML private TableColumn<OrderDetailLine, Number> colItemQty;
+    @FXML private TableColumn<OrderDetailLine, String> colItemPrice;
+    @FXML private TableColumn<OrderDetailLine, String> colItemSubtotal;
 
     private final ObservableList<OrderSummary> orders = observableArrayList();
-    private final ObservableList<OrderLine> items = observableArrayList();
-    private final Map<Integer, List<OrderLine>> itemsCache = new HashMap<>();
+    private final ObservableList<OrderDetailLine> items = observableArrayList();
+    private static final int PAGE_SIZE = 25;
+    private static final int LINES_CACHE_SIZE = 20;
+
+    // LRU degli ordini visti di recente
+    private final Map<Integer, List<OrderDetailLine>> itemsCache = new LinkedHashMap<>(LINES_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<OrderDetailLine>> eldest) {
+            return size() > LINES_CACHE_SIZE;
+        }
+    };
+    private OrderDAO.HistoryCursor nextCursor;
+    private boolean pageLoading; // pagina in arrivo (thread FX)
 
     private final DateTimeFormatter dateFmt = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
 
@@ -131,40 +139,24 @@ public class PurchaseHistoryController {
     }
 
     private void loadOrders(int userId) {
+        // una pagina alla volta: un secondo click leggerebbe di nuovo lo stesso cursore
+        if (pageLoading) return;
+        pageLoading = true;
+        if (loadMoreButton != null) loadMoreButton.setDisable(true);
         setLoading(true);
         Thread t = new Thread(() -> {
             try {
-                List<Order> full = OrderDAO.listOrdersModel(userId);
-
-                Map<Integer, List<OrderLine>> tmpCache = HashMap.newHashMap(full.size());
-                for (Order o : full) {
-                    List<OrderLine> converted = getOrderLines(o);
-                    tmpCache.put(o.getId(), List.copyOf(converted));
-                }
-
-                List<OrderSummary> summariesView = full.stream().map(o -> {
-                    BigDecimal total = o.getLines().stream()
-                            .map(org.example.models.OrderLine::getSubtotal)
-                            .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-                    return new OrderSummary(
-                            o.getId(),
-                            valueOf(o.getCreatedAt()),
-                            o.getStatus().toDb(),
-                            total
-                    );
-                }).toList();
-
-                Map<Integer, List<OrderLine>> cacheView = Map.copyOf(tmpCache);
+                OrderDAO.HistoryPage page = OrderDAO.listOrderHistory(userId, nextCursor, PAGE_SIZE);
 
                 Platform.runLater(() -> {
+                    pageLoading = false;
                     try {
-                        itemsCache.clear();
-                        itemsCache.putAll(cacheView);
-                        orders.setAll(summariesView);
-                        items.clear();
+                        boolean first = orders.isEmpty();
+                        orders.addAll(page.orders());
+                        nextCursor = page.next();
+                        if (loadMoreButton != null) loadMoreButton.setDisable(nextCursor == null);
                         setLoading(false);
-                        if (!orders.isEmpty()) {
+                        if (first && !orders.isEmpty()) {
                             ordersTable.getSelectionModel().selectFirst();
                         }
                         ordersTable.layout();
@@ -178,6 +170,8 @@ public class PurchaseHistoryController {
             } catch (SQLException e) {
                 logger.log(Level.SEVERE, "Errore caricamento ordini", e);
                 Platform.runLater(() -> {
+                    pageLoading = false;
+                    if (loadMoreButton != null) loadMoreButton.setDisable(nextCursor == null);
                     setLoading(false);
                     showError(e.getMessage());
                 });
@@ -188,27 +182,44 @@ public class PurchaseHistoryController {
         t.start();
     }
 
-    private static List<OrderLine> getOrderLines(Order o) {
-        List<OrderLine> converted = new ArrayList<>();
-        for (org.example.models.OrderLine l : o.getLines()) {
-            converted.add(new OrderLine(
-                    l.getOrderId(),
-                    l.getProductId(),
-                    l.getShopId(),
-                    l.getProductName(),
-                    l.getShopName(),
-                    l.getSize(),
-                    l.getQuantity(),
-                    l.getUnitPrice() == null ? BigDecimal.ZERO : l.getUnitPrice()
-            ));
-        }
-        return converted;
+    @FXML
+    private void onLoadMore() {
+        Integer uid = Session.getUserId();
+        if (uid != null && nextCursor != null) loadOrders(uid);
     }
 
+    // Righe caricate solo per l'ordine selezionato; gli ultimi visti restano in cache
     private void loadItems(int orderId) {
-        List<OrderLine> cached = itemsCache.getOrDefault(orderId, java.util.List.of());
-        items.setAll(cached);
-        itemsTable.layout();
+        List<OrderDetailLine> cached = itemsCache.get(orderId);
+        if (cached != null) {
+            items.setAll(cached);
+            itemsTable.layout();
+            return;
+        }
+
+        Integer uid = Session.getUserId();
+        if (uid == null) return;
+        items.clear();
+        Thread t = new Thread(() -> {
+            try {
+                List<OrderDetailLine> lines = List.copyOf(OrderDAO.listOrderLines(uid, orderId));
+                Platform.runLater(() -> {
+                    itemsCache.put(orderId, lines);
+                    // l'utente potrebbe aver già selezionato un altro ordine
+                    OrderSummary sel = ordersTable.getSelectionModel().getSelectedItem();
+                    if (sel != null && sel.idOrder() == orderId) {
+                        items.setAll(lines);
+                        itemsTable.layout();
+                    }
+                });
+            } catch (SQLException e) {
+                logger.log(Level.SEVERE, "Errore caricamento dettaglio ordine", e);
+                Platform.runLater(() -> showError(e.getMessage()));
+            }
+        }, "load-order-lines-thread");
+
+        t.setDaemon(true);
+        t.start();
     }
 
 
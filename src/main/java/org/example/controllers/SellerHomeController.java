@@ -1,6 +1,5 @@
     package org.example.controllers;
     
-    import javafx.animation.PauseTransition;
     import javafx.application.Platform;
     import javafx.beans.InvalidationListener;
     import javafx.beans.property.SimpleIntegerProperty;
@@ -8,9 +7,14 @@
     import javafx.event.ActionEvent;
     import javafx.fxml.FXML;
     import javafx.fxml.FXMLLoader;
+    import javafx.geometry.Pos;
     import javafx.scene.Node;
     import javafx.scene.Parent;
     import javafx.scene.Scene;
+    import javafx.scene.chart.BarChart;
+    import javafx.scene.chart.LineChart;
+    import javafx.scene.chart.PieChart;
+    import javafx.scene.chart.XYChart;
     import javafx.scene.control.*;
     import javafx.scene.control.Button;
     import javafx.scene.control.Dialog;
@@ -20,26 +24,44 @@
     import javafx.scene.input.KeyCode;
     import javafx.scene.input.KeyEvent;
     import javafx.scene.layout.*;
+    import javafx.stage.FileChooser;
     import javafx.stage.Modality;
     import javafx.stage.Stage;
-    import javafx.util.Duration;
     import javafx.util.StringConverter;
     import org.example.dao.SellerDAO;
     import org.example.dao.ShopDAO;
+    import org.example.export.Compression;
+    import org.example.export.SellerExporter;
+    import org.example.importer.CatalogImporter;
+    import org.example.models.OrderStatus;
+    import org.example.services.CatalogBulkEdit;
+    import org.example.services.OrderChangeFeed;
+    import org.example.services.ProductOptionIndex;
+    import org.example.services.SellerBalance;
+    import org.example.services.SellerCatalogModel;
+    import org.example.services.StockThresholdMonitor;
+    import org.example.services.ShopSalesAnalytics;
     import org.example.util.Session;
 
     import java.awt.*;
+    import java.io.File;
     import java.io.IOException;
     import java.math.BigDecimal;
     import java.net.URI;
     import java.net.URLEncoder;
     import java.nio.charset.StandardCharsets;
+    import java.nio.file.Path;
     import java.sql.SQLException;
+import java.sql.Timestamp;
     import java.text.NumberFormat;
     import java.time.ZoneId;
     import java.time.format.DateTimeFormatter;
+    import java.util.ArrayList;
+    import java.util.HashMap;
+    import java.util.LinkedHashMap;
     import java.util.List;
     import java.util.Locale;
+    import java.util.Map;
     import java.util.Objects;
     import java.util.concurrent.Callable;
     import java.util.concurrent.ExecutorService;
@@ -132,7 +154,35 @@
     
         @FXML private ComboBox<String> orderStateCombo;
     
+        // Export
+        @FXML private DatePicker exportFromDate;
+        @FXML private DatePicker exportToDate;
+        @FXML private Button exportOrdersButton;
+        @FXML private Button exportCatalogButton;
+        @FXML private Button importCatalogButton;
+        @FXML private Label stockAlertsLabel;
+        @FXML private Label exportStatusLabel;
+    
+        // Statistiche
+        @FXML private Label statRevenue;
+        @FXML private Label statOrders;
+        @FXML private Label statUnits;
+        @FXML private Label statAvgOrder;
+        @FXML private LineChart<String, Number> dailySalesChart;
+        @FXML private BarChart<String, Number> weeklySalesChart;
+        @FXML private BarChart<String, Number> topProductsChart;
+        @FXML private PieChart sizesChart;
+        private ShopSalesAnalytics salesAnalytics;
+        private SellerCatalogModel catalogModel;
+        private static final DateTimeFormatter DAY_FMT = DateTimeFormatter.ofPattern("dd/MM");
+    
         private Integer currentShopId;
+        private String currentOrderFilter;
+        private OrderChangeFeed orderFeed;
+        private SellerBalance balanceFeed;
+        private TableView<ShopDAO.Withdrawal> withdrawalsTable; // elenco prelievi aperto, se c'è
+        private static final int WITHDRAWALS_SHOWN = 50;
+        private StockThresholdMonitor stockMonitor;
     
         private final DateTimeFormatter dateFmt =
                 DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm").withZone(ZoneId.systemDefault());
@@ -173,6 +223,21 @@
                 return new SimpleStringProperty(s);
             });
             colQuantity.setCellValueFactory(cd -> new SimpleIntegerProperty(cd.getValue().quantity()));
+            productsTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+            productsTable.setRowFactory(tv -> new TableRow<>() {
+                @Override
+                protected void updateItem(SellerDAO.CatalogRow item, boolean empty) {
+                    super.updateItem(item, empty);
+                    var level = (empty || item == null || stockMonitor == null)
+                            ? SellerDAO.StockLevel.OK
+                            : stockMonitor.level(item.productId(), item.size());
+                    setStyle(switch (level) {
+                        case ESAURITO -> "-fx-background-color: #ffebee;";
+                        case SCARSO -> "-fx-background-color: #fff8e1;";
+                        case OK -> "";
+                    });
+                }
+            });
     
             colProdId.setStyle(ALIGN_CENTER);
             colProdName.setStyle(ALIGN_CENTER);
@@ -195,7 +260,7 @@
     
         @FXML
         private void onSearchProduct() {
-            reloadCatalog();
+            applyCatalogFilters();
         }
     
         @FXML
@@ -216,7 +281,7 @@
                 updatingFilters = false;
             }
     
-            reloadCatalog();
+            applyCatalogFilters();
         }
     
         @FXML
@@ -247,7 +312,10 @@
                         SellerDAO.updateCatalogRow(currentShopId, sel.productId(), sel.size(), data.price, data.quantity);
                         return null;
                     },
-                    this::reloadCatalog,
+                    () -> {
+                        catalogModel.applyUpdate(sel.productId(), sel.size(), data.price, data.quantity);
+                        if (catalogModel.isLoaded()) applyCatalogFilters(); else reloadCatalog();
+                    },
                     e -> showAlert(Alert.AlertType.ERROR, "Errore durante l'aggiornamento: " + e.getMessage())
             ));
         }
@@ -269,7 +337,10 @@
                                 SellerDAO.deleteCatalogRow(currentShopId, sel.productId(), sel.size());
                                 return null;
                             },
-                            this::reloadCatalog,
+                            () -> {
+                                catalogModel.applyDelete(sel.productId(), sel.size());
+                                applyCatalogFilters();
+                            },
                             e -> showAlert(Alert.AlertType.ERROR, "Errore durante la rimozione: " + e.getMessage())
                     );
                 }
@@ -289,11 +360,12 @@
             reloadOrders(null);
         }
     
+        // Cambio di stato di tutti gli ordini selezionati in un'unica transazione
         @FXML
         private void onUpdateOrderStatus() {
-            var sel = sellerOrdersTable.getSelectionModel().getSelectedItem();
-            if (sel == null) {
-                showAlert(Alert.AlertType.INFORMATION, "Seleziona un ordine.");
+            List<SellerDAO.ShopOrderSummary> selected = List.copyOf(sellerOrdersTable.getSelectionModel().getSelectedItems());
+            if (selected.isEmpty()) {
+                showAlert(Alert.AlertType.INFORMATION, "Seleziona almeno un ordine.");
                 return;
             }
             String st = orderStateCombo.getValue();
@@ -301,19 +373,42 @@
                 showAlert(Alert.AlertType.INFORMATION, "Seleziona uno stato.");
                 return;
             }
+            OrderStatus target = OrderStatus.fromDb(st);
             runAsync(
-                    () -> {
-                        SellerDAO.updateOrderState(sel.orderId(), st);
-                        return null;
-                    },
-                    () -> {
-                        reloadOrders(orderStateFilter.getValue());
-                        Platform.runLater(() -> sellerOrdersTable.getSelectionModel().selectFirst());
-                    },
+                    () -> SellerDAO.updateOrderStates(currentShopId,
+                            selected.stream().map(SellerDAO.ShopOrderSummary::orderId).toList(), target),
+                    outcomes -> applyStateOutcomes(selected, outcomes, target),
                     e -> showAlert(Alert.AlertType.ERROR, "Errore durante l'aggiornamento dello stato: " + e.getMessage())
             );
         }
 
+        // Niente ricarica completa: si aggiornano solo le righe cambiate, il feed poi conferma
+        private void applyStateOutcomes(List<SellerDAO.ShopOrderSummary> selected,
+                                        List<SellerDAO.StateUpdateOutcome> outcomes, OrderStatus target) {
+            Map<Integer, SellerDAO.ShopOrderSummary> byId = new HashMap<>();
+            for (var o : selected) byId.put(o.orderId(), o);
+
+            List<SellerDAO.ShopOrderSummary> changed = new ArrayList<>();
+            List<String> refused = new ArrayList<>();
+            for (var out : outcomes) {
+                var row = byId.get(out.orderId());
+                if (out.updated() && row != null) {
+                    changed.add(new SellerDAO.ShopOrderSummary(row.orderId(), row.orderDate(), target.toDb(),
+                            row.total(), row.customer(), row.address()));
+                } else if (out.result() == SellerDAO.StateUpdateResult.NOT_ALLOWED) {
+                    refused.add("#" + out.orderId() + " (" + out.previous().toDb() + ")");
+                } else if (out.result() == SellerDAO.StateUpdateResult.NOT_FOUND) {
+                    refused.add("#" + out.orderId() + " (non trovato)");
+                }
+            }
+            applyOrderDelta(changed);
+
+            if (!refused.isEmpty()) {
+                showAlert(Alert.AlertType.WARNING, "Aggiornati " + changed.size() + " ordini su " + outcomes.size()
+                        + ".\nTransizione a \"" + target.toDb() + "\" non ammessa per: " + String.join(", ", refused));
+            }
+        }
+
         private void configureOrderSummaryColumns() {
             colOrderIdS.setCellValueFactory(cd -> new SimpleIntegerProperty(cd.getValue().orderId()));
             colOrderDateS.setCellValueFactory(cd -> new SimpleStringProperty(
@@ -394,6 +489,9 @@
     
         @FXML
         private void onLogout() {
+            if (orderFeed != null) orderFeed.close();
+            if (balanceFeed != null) balanceFeed.close();
+            if (stockMonitor != null) stockMonitor.close();
             Session.clear();
             try {
                 Parent root = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("/fxml/Login.fxml")));
@@ -449,19 +547,23 @@
         }
     
         private void wireFilterListeners() {
-            attachReloadOnChange(brandFilter);
-            attachReloadOnChange(categoryFilter);
+            attachFilterOnChange(brandFilter);
+            attachFilterOnChange(categoryFilter);
+            if (productSearchField != null) {
+                productSearchField.textProperty().addListener((obs, ov, nv) -> applyCatalogFilters());
+            }
         }
     
-        private void attachReloadOnChange(ComboBox<String> cb) {
+        private void attachFilterOnChange(ComboBox<String> cb) {
             if (cb == null) return;
             cb.valueProperty().addListener((obs, ov, nv) -> {
-                if (!updatingFilters) reloadCatalog();
+                if (!updatingFilters) applyCatalogFilters();
             });
         }
     
         private void wireOrderSelection() {
             if (sellerOrdersTable == null) return;
+            sellerOrdersTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
             sellerOrdersTable.getSelectionModel().selectedItemProperty().addListener((obs, old, sel) -> {
                 if (sel != null) loadOrderLines(sel.orderId());
                 else orderItemsTable.getItems().clear();
@@ -469,68 +571,60 @@
         }
     
         private void bootstrapData() {
+            catalogModel = new SellerCatalogModel(currentShopId);
             reloadCatalog();
+            startStockMonitor();
             reloadOrders(null);
+            salesAnalytics = new ShopSalesAnalytics(currentShopId);
+            refreshSales();
         }
     
+        // Ricarica il catalogo dal DB (avvio, inserimenti, import); i filtri lavorano poi in memoria
         private void reloadCatalog() {
+            if (catalogModel == null) return;
+            catalogModel.invalidate();
             runAsync(
-                    () -> SellerDAO.listCatalog(currentShopId, null),
-                    rows -> {
-                        String nameQ = nullIfBlank(productSearchField != null ? productSearchField.getText() : null);
-                        List<SellerDAO.CatalogRow> byName = (nameQ == null)
-                                ? rows
-                                : rows.stream()
-                                .filter(r -> {
-                                    String n = r.name();
-                                    return n != null && n.toLowerCase(Locale.ITALIAN)
-                                            .contains(nameQ.toLowerCase(Locale.ITALIAN));
-                                })
-                                .toList();
-    
-                        updatingFilters = true;
-                        try {
-                            updateCatalogFiltersOptions(byName);
-                        } finally {
-                            updatingFilters = false;
-                        }
-    
-                        String selBrand = (brandFilter == null) ? null : brandFilter.getValue();
-                        String selCat = (categoryFilter == null) ? null : categoryFilter.getValue();
-    
-                        var filtered = byName.stream()
-                                .filter(r -> selBrand == null || selBrand.equals(r.brand()))
-                                .filter(r -> selCat == null || selCat.equals(r.category()))
-                                .toList();
-    
-                        productsTable.setItems(observableArrayList(filtered));
-                        forceLayout(productsTable);
+                    () -> {
+                        catalogModel.load();
+                        return null;
                     },
+                    this::applyCatalogFilters,
                     e -> showAlert(Alert.AlertType.ERROR, "Errore nel caricamento catalogo: " + e.getMessage())
             );
         }
     
-        private void updateCatalogFiltersOptions(List<SellerDAO.CatalogRow> rows) {
-            updateFilter(brandFilter, rows, SellerDAO.CatalogRow::brand);
-            updateFilter(categoryFilter, rows, SellerDAO.CatalogRow::category);
+        private void applyCatalogFilters() {
+            if (catalogModel == null || !catalogModel.isLoaded()) return;
+            String nameQ = productSearchField != null ? productSearchField.getText() : null;
+            String selBrand = (brandFilter == null) ? null : brandFilter.getValue();
+            String selCat = (categoryFilter == null) ? null : categoryFilter.getValue();
+
+            var view = catalogModel.filter(nameQ, selBrand, selCat);
+
+            updatingFilters = true;
+            try {
+                updateFilter(brandFilter, view.brands());
+                updateFilter(categoryFilter, view.categories());
+            } finally {
+                updatingFilters = false;
+            }
+            // se la selezione non è più tra le opzioni il filtro è stato azzerato: si rifiltra
+            if (!Objects.equals(selBrand, brandFilter == null ? null : brandFilter.getValue())
+                    || !Objects.equals(selCat, categoryFilter == null ? null : categoryFilter.getValue())) {
+                view = catalogModel.filter(nameQ,
+                        brandFilter == null ? null : brandFilter.getValue(),
+                        categoryFilter == null ? null : categoryFilter.getValue());
+            }
+
+            productsTable.getItems().setAll(view.rows());
+            forceLayout(productsTable);
         }
     
-        private static void updateFilter(ComboBox<String> combo,
-                                         List<SellerDAO.CatalogRow> rows,
-                                         Function<SellerDAO.CatalogRow, String> keyExtractor) {
+        private static void updateFilter(ComboBox<String> combo, List<String> options) {
             if (combo == null) return;
     
             String current = combo.getValue();
     
-            var options = rows.stream()
-                    .map(keyExtractor)
-                    .filter(Objects::nonNull)
-                    .map(String::trim)
-                    .filter(s -> !s.isEmpty())
-                    .distinct()
-                    .sorted(String.CASE_INSENSITIVE_ORDER)
-                    .toList();
-    
             if (!combo.getItems().equals(options)) {
                 combo.getItems().setAll(options);
             }
@@ -542,10 +636,23 @@
             }
         }
     
+        private record OrdersSnapshot(long version, List<SellerDAO.ShopOrderSummary> rows) {}
+
         private void reloadOrders(String stateFilter) {
             runAsync(
-                    () -> SellerDAO.listShopOrders(currentShopId, stateFilter),
-                    rows -> {
+                    // versione letta prima della lista: eventuali modifiche nel mezzo arrivano comunque dal feed
+                    () -> new OrdersSnapshot(SellerDAO.currentOrderVersion(currentShopId),
+                            SellerDAO.listShopOrders(currentShopId, stateFilter)),
+                    snap -> {
+                        List<SellerDAO.ShopOrderSummary> rows = snap.rows();
+                        currentOrderFilter = stateFilter;
+                        if (orderFeed == null) {
+                            orderFeed = OrderChangeFeed.subscribe(currentShopId, snap.version(),
+                                    delta -> Platform.runLater(() -> {
+                                        applyOrderDelta(delta);
+                                        refreshSales();
+                                    }));
+                        }
                         sellerOrdersTable.setItems(observableArrayList(rows));
                         orderItemsTable.getItems().clear();
                         if (!rows.isEmpty()) {
@@ -558,6 +665,288 @@
             );
         }
     
+        // Applica alla tabella solo gli ordini cambiati (nuovi o con stato diverso)
+        private void applyOrderDelta(List<SellerDAO.ShopOrderSummary> changed) {
+            var items = sellerOrdersTable.getItems();
+            var selected = sellerOrdersTable.getSelectionModel().getSelectedItem();
+            for (var o : changed) {
+                boolean visible = currentOrderFilter == null || currentOrderFilter.equals(o.state());
+                int idx = indexOfOrder(items, o.orderId());
+                if (idx >= 0 && visible) items.set(idx, o);
+                else if (idx >= 0) items.remove(idx);
+                else if (visible) items.add(insertionPoint(items, o), o);
+            }
+            if (selected != null && sellerOrdersTable.getSelectionModel().getSelectedItem() == null) {
+                int idx = indexOfOrder(items, selected.orderId());
+                if (idx >= 0) sellerOrdersTable.getSelectionModel().select(idx);
+            }
+        }
+
+        private static int indexOfOrder(List<SellerDAO.ShopOrderSummary> items, int orderId) {
+            for (int i = 0; i < items.size(); i++) {
+                if (items.get(i).orderId() == orderId) return i;
+            }
+            return -1;
+        }
+
+        // Lista ordinata per data e id decrescenti
+        private static int insertionPoint(List<SellerDAO.ShopOrderSummary> items, SellerDAO.ShopOrderSummary o) {
+            for (int i = 0; i < items.size(); i++) {
+                var cur = items.get(i);
+                int c = (o.orderDate() == null || cur.orderDate() == null) ? 0 : o.orderDate().compareTo(cur.orderDate());
+                if (c > 0 || (c == 0 && o.orderId() > cur.orderId())) return i;
+            }
+            return items.size();
+        }
+
+        // Export CSV
+
+        @FXML
+        private void onExportOrders() {
+            var from = exportFromDate.getValue();
+            var to = exportToDate.getValue();
+            if (from != null && to != null && from.isAfter(to)) {
+                showAlert(Alert.AlertType.INFORMATION, "La data iniziale è successiva a quella finale.");
+                return;
+            }
+            String name = "ordini_" + currentShopId
+                    + (from != null ? "_dal_" + from : "") + (to != null ? "_al_" + to : "") + ".csv";
+            runExport(exportOrdersButton, name, (file, comp) ->
+                    SellerExporter.exportOrders(currentShopId, from, to, file, comp, this::showExportProgress));
+        }
+
+        @FXML
+        private void onExportCatalog() {
+            runExport(exportCatalogButton, "catalogo_" + currentShopId + ".csv", (file, comp) ->
+                    SellerExporter.exportCatalog(currentShopId, file, comp, this::showExportProgress));
+        }
+
+        // Import massivo del catalogo da CSV/JSON; se un import precedente dello stesso file si è
+        // interrotto si propone di riprendere dall'ultimo lotto salvato.
+        @FXML
+        private void onImportCatalog() {
+            FileChooser fc = new FileChooser();
+            fc.setTitle("Importa catalogo");
+            fc.getExtensionFilters().setAll(
+                    new FileChooser.ExtensionFilter("CSV o JSON", "*.csv", "*.csv.gz", "*.csv.bz2", "*.json", "*.json.gz", "*.json.bz2"));
+            File file = fc.showOpenDialog(importCatalogButton.getScene().getWindow());
+            if (file == null) return;
+            Path input = file.toPath();
+
+            boolean resume = false;
+            try {
+                long done = CatalogImporter.pendingCheckpoint(currentShopId, input);
+                if (done > 0) {
+                    Alert ask = new Alert(Alert.AlertType.CONFIRMATION,
+                            "Un import precedente di questo file si è interrotto dopo la riga " + done + ".\n"
+                                    + "Riprendere da lì? (No = ricomincia da capo)",
+                            ButtonType.YES, ButtonType.NO, ButtonType.CANCEL);
+                    ask.setHeaderText("Riprendere l'import?");
+                    var answer = ask.showAndWait().orElse(ButtonType.CANCEL);
+                    if (answer == ButtonType.CANCEL) return;
+                    resume = answer == ButtonType.YES;
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Checkpoint import illeggibile", e);
+            }
+
+            final boolean fromCheckpoint = resume;
+            String idleText = importCatalogButton.getText();
+            importCatalogButton.setDisable(true);
+            runAsync(
+                    () -> CatalogImporter.importCatalog(currentShopId, input, fromCheckpoint,
+                            n -> Platform.runLater(() -> importCatalogButton.setText("Importate " + n + "…"))),
+                    report -> {
+                        importCatalogButton.setDisable(false);
+                        importCatalogButton.setText(idleText);
+                        reloadCatalog();
+                        String msg = "Righe lette: " + report.processed()
+                                + "\nImportate: " + report.imported()
+                                + "\nScartate: " + report.rejected()
+                                + (report.resumedFrom() > 0 ? "\nRipreso dopo la riga " + report.resumedFrom() : "")
+                                + (report.errorReport() != null ? "\n\nDettaglio errori in " + report.errorReport().getFileName() : "");
+                        showAlert(report.rejected() > 0 ? Alert.AlertType.WARNING : Alert.AlertType.INFORMATION, msg);
+                    },
+                    e -> {
+                        importCatalogButton.setDisable(false);
+                        importCatalogButton.setText(idleText);
+                        reloadCatalog();
+                        showAlert(Alert.AlertType.ERROR, "Import interrotto: " + e.getMessage()
+                                + "\nLe righe già salvate restano; riaprendo lo stesso file si riprende da lì.");
+                    }
+            );
+        }
+
+        // Avvisi di scorta: elenco iniziale, poi solo le variazioni dal monitor
+        private void startStockMonitor() {
+            runAsync(
+                    () -> StockThresholdMonitor.start(currentShopId,
+                            delta -> Platform.runLater(this::renderStockAlerts)),
+                    monitor -> {
+                        stockMonitor = monitor;
+                        renderStockAlerts();
+                    },
+                    e -> logger.log(Level.WARNING, "Avvisi di scorta non disponibili", e)
+            );
+        }
+    
+        private void renderStockAlerts() {
+            if (stockMonitor == null || stockAlertsLabel == null) return;
+            long out = stockMonitor.count(SellerDAO.StockLevel.ESAURITO);
+            long low = stockMonitor.count(SellerDAO.StockLevel.SCARSO);
+            stockAlertsLabel.setText("Esauriti: " + out + " · In esaurimento: " + low
+                    + " (soglia " + stockMonitor.threshold() + ")");
+            stockAlertsLabel.setStyle("-fx-font-size:12; -fx-text-fill:" + (out > 0 ? ACCENT : "#777") + ";");
+
+            StringBuilder tip = new StringBuilder();
+            var alerts = stockMonitor.alerts();
+            for (int i = 0; i < alerts.size() && i < 15; i++) {
+                var a = alerts.get(i);
+                tip.append(a.name()).append(" - ").append(a.size()).append(": ").append(a.quantity()).append('\n');
+            }
+            if (alerts.size() > 15) tip.append("… altre ").append(alerts.size() - 15);
+            stockAlertsLabel.setTooltip(alerts.isEmpty() ? null : new Tooltip(tip.toString().strip()));
+            productsTable.refresh();
+        }
+    
+        @FXML
+        private void onStockThreshold() {
+            if (stockMonitor == null) {
+                showAlert(Alert.AlertType.INFORMATION, "Avvisi di scorta non ancora disponibili.");
+                return;
+            }
+            TextInputDialog dialog = new TextInputDialog(String.valueOf(stockMonitor.threshold()));
+            dialog.setTitle("Soglia scorte");
+            dialog.setHeaderText("Segnala le varianti con quantità uguale o inferiore a:");
+            dialog.showAndWait().ifPresent(text -> {
+                int value;
+                try {
+                    value = Integer.parseInt(text.trim());
+                    if (value < 0) throw new NumberFormatException();
+                } catch (NumberFormatException ex) {
+                    showAlert(Alert.AlertType.WARNING, "Soglia non valida.");
+                    return;
+                }
+                runAsync(
+                        () -> {
+                            stockMonitor.setThreshold(value);
+                            return null;
+                        },
+                        this::renderStockAlerts,
+                        e -> showAlert(Alert.AlertType.ERROR, "Errore nel salvataggio della soglia: " + e.getMessage())
+                );
+            });
+        }
+    
+        // Modifica massiva sulle righe selezionate; senza selezione, su tutte quelle filtrate previa conferma
+        @FXML
+        private void onBulkEdit() {
+            List<SellerDAO.CatalogRow> targets = List.copyOf(productsTable.getSelectionModel().getSelectedItems());
+            if (targets.isEmpty()) {
+                targets = List.copyOf(productsTable.getItems());
+                if (targets.isEmpty()) {
+                    showAlert(Alert.AlertType.INFORMATION, "Nessuna riga del catalogo da modificare.");
+                    return;
+                }
+                Alert ask = new Alert(Alert.AlertType.CONFIRMATION,
+                        "Nessuna riga selezionata. Modificare tutte le " + targets.size() + " righe filtrate?",
+                        ButtonType.YES, ButtonType.NO);
+                ask.setHeaderText("Modifica multipla");
+                if (ask.showAndWait().orElse(ButtonType.NO) != ButtonType.YES) return;
+            }
+            new BulkEditDialog(targets).newDialog().showAndWait().ifPresent(preview -> runAsync(
+                    () -> CatalogBulkEdit.apply(currentShopId, preview),
+                    result -> {
+                        reloadCatalog();
+                        String msg = "Righe aggiornate: " + result.updated();
+                        if (!result.skipped().isEmpty()) {
+                            msg += "\n" + result.skipped().size() + " righe non aggiornate perché modificate nel frattempo.";
+                        }
+                        showAlert(result.skipped().isEmpty() ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING, msg);
+                    },
+                    e -> showAlert(Alert.AlertType.ERROR, "Errore nella modifica multipla: " + e.getMessage())
+            ));
+        }
+    
+        @FunctionalInterface
+        private interface ExportJob {
+            long run(Path file, Compression compression) throws Exception;
+        }
+
+        // La compressione si sceglie con il filtro del salvataggio (.csv, .csv.gz, ...)
+        private void runExport(Button trigger, String suggestedName, ExportJob job) {
+            FileChooser fc = new FileChooser();
+            fc.setTitle("Esporta CSV");
+            fc.setInitialFileName(suggestedName);
+            Map<FileChooser.ExtensionFilter, Compression> byFilter = new LinkedHashMap<>();
+            for (Compression c : Compression.availableValues()) {
+                String ext = "*.csv" + c.extension();
+                byFilter.put(new FileChooser.ExtensionFilter("CSV" + (c == Compression.NONE ? "" : " " + c) + " (" + ext + ")", ext), c);
+            }
+            fc.getExtensionFilters().setAll(byFilter.keySet());
+            File file = fc.showSaveDialog(trigger.getScene().getWindow());
+            if (file == null) return;
+
+            Compression comp = byFilter.getOrDefault(fc.getSelectedExtensionFilter(), Compression.NONE);
+            var target = SellerExporter.withExtension(file.toPath(), comp);
+
+            trigger.setDisable(true);
+            exportStatusLabel.setText("Export in corso…");
+            runAsync(
+                    () -> job.run(target, comp),
+                    rows -> {
+                        trigger.setDisable(false);
+                        exportStatusLabel.setText("Esportate " + rows + " righe in " + target.getFileName());
+                    },
+                    e -> {
+                        trigger.setDisable(false);
+                        exportStatusLabel.setText("");
+                        showAlert(Alert.AlertType.ERROR, "Errore durante l'export: " + e.getMessage());
+                    }
+            );
+        }
+
+        private void showExportProgress(long rows) {
+            Platform.runLater(() -> exportStatusLabel.setText("Esportate " + rows + " righe…"));
+        }
+
+        // Statistiche: la prima volta fotografia, poi solo le variazioni dai rollup
+        private void refreshSales() {
+            if (salesAnalytics == null) return;
+            runAsync(
+                    salesAnalytics::refresh,
+                    changed -> {
+                        if (Boolean.TRUE.equals(changed)) renderSales();
+                    },
+                    e -> logger.log(Level.WARNING, "Statistiche di vendita non disponibili", e)
+            );
+        }
+
+        private void renderSales() {
+            var totals = salesAnalytics.totals();
+            statRevenue.setText(formatCurrency(totals.revenue()));
+            statOrders.setText(String.valueOf(totals.orders()));
+            statUnits.setText(String.valueOf(totals.units()));
+            statAvgOrder.setText(formatCurrency(totals.averageOrderValue()));
+
+            XYChart.Series<String, Number> daily = new XYChart.Series<>();
+            for (var b : salesAnalytics.daily()) daily.getData().add(new XYChart.Data<>(DAY_FMT.format(b.period()), b.revenue()));
+            dailySalesChart.getData().setAll(List.of(daily));
+
+            XYChart.Series<String, Number> weekly = new XYChart.Series<>();
+            for (var b : salesAnalytics.weekly()) weekly.getData().add(new XYChart.Data<>(DAY_FMT.format(b.period()), b.revenue()));
+            weeklySalesChart.getData().setAll(List.of(weekly));
+
+            XYChart.Series<String, Number> top = new XYChart.Series<>();
+            for (var p : salesAnalytics.topProducts()) top.getData().add(new XYChart.Data<>(p.name(), p.units()));
+            topProductsChart.getData().setAll(List.of(top));
+
+            sizesChart.getData().setAll(salesAnalytics.sizes().stream()
+                    .filter(z -> z.units() > 0)
+                    .map(z -> new PieChart.Data(z.size() + " (" + z.units() + ")", z.units()))
+                    .toList());
+        }
+
         private void loadOrderLines(int orderId) {
             runAsync(
                     () -> SellerDAO.listShopOrderLines(currentShopId, orderId),
@@ -624,12 +1013,6 @@
             a.showAndWait();
         }
     
-        private static String nullIfBlank(String s) {
-            if (s == null) return null;
-            String t = s.trim();
-            return t.isEmpty() ? null : t;
-        }
-    
         private static BigDecimal nonNull(BigDecimal b) {
             return b == null ? BigDecimal.ZERO : b;
         }
@@ -871,6 +1254,9 @@
             }
 
             protected void setupAddModeHandlers(ComboBox<SellerDAO.ProductOption> cb) {
+                // costruisce o aggiorna l'indice mentre il dialog si apre
+                runAsync(ProductOptionIndex::load, idx -> { },
+                        ex -> logger.log(Level.WARNING, "Indice prodotti non disponibile", ex));
                 bindEditorToValue(cb);
                 installShowAllOnOpen(cb);
                 blockEnterCommit(cb);
@@ -886,14 +1272,11 @@
                 ui.price.setText(initial.price().toPlainString());
                 ui.qty.setText(String.valueOf(initial.quantity()));
                 runAsync(
-                        SellerDAO::listAllProductOptions,
-                        opts -> opts.stream()
-                                .filter(o -> o.productId() == initial.productId())
-                                .findFirst()
-                                .ifPresentOrElse(
-                                        o -> ui.name.setText(o.name()),
-                                        () -> ui.name.setText("Prodotto #" + initial.productId())
-                                ),
+                        ProductOptionIndex::load,
+                        index -> {
+                            var o = index.byId(initial.productId());
+                            ui.name.setText(o != null ? o.name() : "Prodotto #" + initial.productId());
+                        },
                         ex -> {
                             ui.name.setText("Prodotto #" + initial.productId());
                             showAlert(Alert.AlertType.ERROR, "Errore nel caricamento prodotto: " + ex.getMessage());
@@ -949,21 +1332,18 @@
                 });
             }
 
+            // Ricerca sull'indice locale a ogni modifica: nessun debounce, nessun round trip al DB
             private void attachTypeahead(ComboBox<SellerDAO.ProductOption> cb) {
-                final PauseTransition debounce = new PauseTransition(Duration.millis(250));
                 final String[] lastQ = { "" };
 
                 cb.getEditor().textProperty().addListener((o, old, neu) -> {
                     if (handleSelectionSuppressed(cb)) return;
 
                     String q = extractNameForSearch(neu);
-                    if (handleEmptyOrUnchangedQuery(cb, debounce, lastQ, q)) return;
+                    if (handleEmptyOrUnchangedQuery(cb, lastQ, q)) return;
 
                     boolean wasShowing = cb.isShowing();
-                    String[] tokens = q.split(" ");
-                    String first = tokens[0];
-
-                    scheduleTypeaheadSearch(cb, debounce, tokens, first, q, lastQ, wasShowing);
+                    withProductIndex(index -> showTypeaheadResults(cb, index.search(q, 100), q, lastQ, wasShowing));
                 });
             }
 
@@ -976,11 +1356,9 @@
             }
 
             private boolean handleEmptyOrUnchangedQuery(ComboBox<SellerDAO.ProductOption> cb,
-                                                        PauseTransition debounce,
                                                         String[] lastQ,
                                                         String q) {
                 if (q.isEmpty()) {
-                    debounce.stop();
                     lastQ[0] = "";
                     if (cb.isShowing()) loadAllProducts(cb);
                     return true;
@@ -988,30 +1366,19 @@
                 return q.equalsIgnoreCase(lastQ[0]);
             }
 
-            private void scheduleTypeaheadSearch(ComboBox<SellerDAO.ProductOption> cb,
-                                                 PauseTransition debounce,
-                                                 String[] tokens,
-                                                 String first,
-                                                 String q,
-                                                 String[] lastQ,
-                                                 boolean wasShowing) {
-                debounce.stop();
-                debounce.setOnFinished(evt -> runAsync(
-                        () -> SellerDAO.listProductOptionsByNameLike(first, 100),
-                        opts -> {
-                            var filtered = opts.stream().filter(o2 -> matchesAllTokens(o2, tokens)).toList();
-                            if (!filtered.isEmpty()) {
-                                cb.getItems().setAll(filtered);
-                                if (wasShowing) cb.show();
-                            } else {
-                                cb.getItems().clear();
-                                cb.hide();
-                            }
-                            lastQ[0] = q;
-                        },
-                        ex -> showAlert(Alert.AlertType.ERROR, "Errore ricerca prodotti: " + ex.getMessage())
-                ));
-                debounce.playFromStart();
+            private void showTypeaheadResults(ComboBox<SellerDAO.ProductOption> cb,
+                                              List<SellerDAO.ProductOption> found,
+                                              String q,
+                                              String[] lastQ,
+                                              boolean wasShowing) {
+                if (!found.isEmpty()) {
+                    cb.getItems().setAll(found);
+                    if (wasShowing) cb.show();
+                } else {
+                    cb.getItems().clear();
+                    cb.hide();
+                }
+                lastQ[0] = q;
             }
 
             private void bindEditorToValue(ComboBox<SellerDAO.ProductOption> cb) {
@@ -1050,6 +1417,128 @@
             }
         }
 
+        // Modifica massiva: la regola si applica alle righe passate, l'anteprima mostra cosa cambia
+        // e solo dopo l'anteprima si può confermare. Cambiare la regola invalida l'anteprima.
+        private final class BulkEditDialog {
+            private final List<SellerDAO.CatalogRow> targets;
+            private CatalogBulkEdit.Preview preview;
+
+            BulkEditDialog(List<SellerDAO.CatalogRow> targets) {
+                this.targets = targets;
+            }
+
+            Dialog<CatalogBulkEdit.Preview> newDialog() {
+                Dialog<CatalogBulkEdit.Preview> dialog = new Dialog<>();
+                dialog.setTitle("Modifica multipla");
+                dialog.setResizable(true);
+                if (logoutButton != null && logoutButton.getScene() != null) {
+                    dialog.initOwner(logoutButton.getScene().getWindow());
+                }
+                DialogPane pane = dialog.getDialogPane();
+                pane.getButtonTypes().setAll(ButtonType.OK, ButtonType.CANCEL);
+                pane.setStyle("-fx-background-color: " + SURFACE + "; -fx-padding: 18 18 16 18;");
+
+                Label title = new Label("Modifica multipla");
+                title.setStyle("-fx-font-size: 18; -fx-font-weight: bold; -fx-text-fill: " + ACCENT + ";");
+                Label subtitle = new Label("La regola si applica a " + targets.size() + " righe del catalogo.");
+                subtitle.setStyle("-fx-font-size: 12; -fx-text-fill: " + TEXT_MUTED + ";");
+                VBox header = new VBox(4, title, subtitle);
+                header.setStyle("-fx-padding: 0 0 12 0;");
+                pane.setHeader(header);
+
+                ComboBox<CatalogBulkEdit.PriceChange> mode = new ComboBox<>(observableArrayList(CatalogBulkEdit.PriceChange.values()));
+                mode.setValue(CatalogBulkEdit.PriceChange.PERCENT);
+                TextField amount = new TextField();
+                amount.setPromptText("es. -20 oppure 5,50");
+                ComboBox<CatalogBulkEdit.Rounding> rounding = new ComboBox<>(observableArrayList(CatalogBulkEdit.Rounding.values()));
+                rounding.setValue(CatalogBulkEdit.Rounding.CENT);
+                CheckBox setQty = new CheckBox("Imposta quantità");
+                TextField qty = new TextField();
+                qty.setPromptText("Quantità");
+                qty.disableProperty().bind(setQty.selectedProperty().not());
+                amount.disableProperty().bind(mode.valueProperty().isEqualTo(CatalogBulkEdit.PriceChange.NONE));
+
+                GridPane form = new GridPane();
+                form.setHgap(10);
+                form.setVgap(8);
+                form.addRow(0, new Label("Prezzo:"), mode, amount);
+                form.addRow(1, new Label("Arrotondamento:"), rounding);
+                form.addRow(2, setQty, qty);
+
+                TableView<CatalogBulkEdit.Change> table = new TableView<>();
+                table.setPlaceholder(new Label("Premi Anteprima per vedere le righe modificate"));
+                table.setPrefHeight(320);
+                table.getColumns().setAll(List.of(
+                        changeColumn("Prodotto", c -> c.row().name()),
+                        changeColumn("Taglia", c -> c.row().size()),
+                        changeColumn("Prezzo", c -> CURR_IT.format(nonNull(c.row().price()))),
+                        changeColumn("Nuovo prezzo", c -> CURR_IT.format(c.newPrice())),
+                        changeColumn("Quantità", c -> String.valueOf(c.row().quantity())),
+                        changeColumn("Nuova quantità", c -> String.valueOf(c.newQuantity()))
+                ));
+                table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+
+                Label summary = new Label();
+                summary.setStyle("-fx-text-fill: " + TEXT_MUTED + ";");
+                Button previewBtn = new Button("Anteprima");
+                Button okBtn = (Button) pane.lookupButton(ButtonType.OK);
+                okBtn.setText("Applica");
+                okBtn.setDisable(true);
+                ((Button) pane.lookupButton(ButtonType.CANCEL)).setText("Annulla");
+                applyOkBtnStyle(okBtn, false, false);
+                applyCancelBtnStyle((Button) pane.lookupButton(ButtonType.CANCEL), false, false);
+
+                Runnable invalidate = () -> {
+                    preview = null;
+                    okBtn.setDisable(true);
+                    table.getItems().clear();
+                    summary.setText("");
+                };
+                mode.valueProperty().addListener((o, a, b) -> invalidate.run());
+                amount.textProperty().addListener((o, a, b) -> invalidate.run());
+                rounding.valueProperty().addListener((o, a, b) -> invalidate.run());
+                setQty.selectedProperty().addListener((o, a, b) -> invalidate.run());
+                qty.textProperty().addListener((o, a, b) -> invalidate.run());
+
+                previewBtn.setOnAction(ev -> {
+                    try {
+                        var m = mode.getValue();
+                        BigDecimal amt = (m == CatalogBulkEdit.PriceChange.NONE) ? null
+                                : new BigDecimal(amount.getText().trim().replace(',', '.'));
+                        Integer q = setQty.isSelected() ? Integer.valueOf(qty.getText().trim()) : null;
+                        var rule = new CatalogBulkEdit.Rule(m, amt, rounding.getValue(), q);
+                        preview = CatalogBulkEdit.preview(targets, rule);
+                    } catch (RuntimeException ex) {
+                        invalidate.run();
+                        showAlert(Alert.AlertType.WARNING, "Regola non valida: " + ex.getMessage());
+                        return;
+                    }
+                    table.getItems().setAll(preview.changes());
+                    summary.setText(preview.changes().size() + " righe da modificare"
+                            + (preview.invalid().isEmpty() ? "" : ", " + preview.invalid().size()
+                            + " escluse (prezzo risultante non positivo)"));
+                    okBtn.setDisable(preview.changes().isEmpty());
+                });
+
+                HBox actions = new HBox(10, previewBtn, summary);
+                actions.setAlignment(Pos.CENTER_LEFT);
+                VBox content = new VBox(12, form, actions, table);
+                content.setPrefWidth(720);
+                pane.setContent(content);
+
+                dialog.setResultConverter(btn -> btn == ButtonType.OK ? preview : null);
+                return dialog;
+            }
+
+            private TableColumn<CatalogBulkEdit.Change, String> changeColumn(String title,
+                                                                            Function<CatalogBulkEdit.Change, String> value) {
+                TableColumn<CatalogBulkEdit.Change, String> col = new TableColumn<>(title);
+                col.setCellValueFactory(cd -> new SimpleStringProperty(value.apply(cd.getValue())));
+                col.setStyle(ALIGN_CENTER);
+                return col;
+            }
+        }
+
         private final class AddCatalogDialog extends CatalogDialogCreator {
             AddCatalogDialog() {
                 super("Aggiungi Prodotto", null);
@@ -1164,21 +1653,23 @@
                     .trim();
         }
     
-        private static boolean matchesAllTokens(SellerDAO.ProductOption opt, String[] tokens) {
-            String name = normalizeQuery(opt.name());
-            for (String t : tokens) {
-                if (!t.isBlank() && !name.contains(t)) return false;
-            }
-            return true;
+        private void loadAllProducts(ComboBox<SellerDAO.ProductOption> cb) {
+            withProductIndex(index -> {
+                cb.getItems().setAll(index.first(100));
+                if (cb.isShowing()) cb.show();
+            });
         }
     
-        private void loadAllProducts(ComboBox<SellerDAO.ProductOption> cb) {
+        // Indice già pronto: si usa subito sul thread FX; altrimenti lo si costruisce in background
+        private void withProductIndex(Consumer<ProductOptionIndex> action) {
+            ProductOptionIndex index = ProductOptionIndex.cached();
+            if (index != null) {
+                action.accept(index);
+                return;
+            }
             runAsync(
-                    () -> SellerDAO.listProductOptionsByNameLike("", 100),
-                    opts -> {
-                        cb.getItems().setAll(opts);
-                        if (cb.isShowing()) cb.show();
-                    },
+                    ProductOptionIndex::load,
+                    action,
                     ex -> showAlert(Alert.AlertType.ERROR, "Errore nel caricamento prodotti: " + ex.getMessage())
             );
         }
@@ -1201,20 +1692,89 @@
             runAsync(task, v -> onSuccess.run(), onError);
         }
     
-        private void refreshBalance()  {
+        // Saldo dalla cache del servizio; la sottoscrizione lo tiene aggiornato (vendite, prelievi saldati)
+        private void refreshBalance() {
             Integer userId = Session.getUserId();
+            if (userId == null) return;
+            showBalance(SellerBalance.cached(userId));
+            if (balanceFeed == null) {
+                balanceFeed = SellerBalance.subscribe(userId, update -> Platform.runLater(() -> {
+                    showBalance(update.summary());
+                    reportSettled(update.settled());
+                    loadWithdrawals();
+                }));
+            }
+        }
     
-            try{
-                BigDecimal bal = ShopDAO.getBalance(userId);
-                balanceLabel.setText(currencyIt.format(bal));
-                withdrawButton.setDisable((bal != null ? bal.compareTo(BigDecimal.ZERO) : 0) <= 0);
-            }catch (SQLException e) {
-                logger.info( "Aggiornamento saldo fallito");
+        private void showBalance(ShopDAO.BalanceSummary s) {
+            if (s == null) {
                 balanceLabel.setText("—");
                 withdrawButton.setDisable(true);
-                new Alert(Alert.AlertType.ERROR, "Impossibile aggiornare il saldo: " + e.getMessage()).showAndWait();
+                return;
+            }
+            String text = currencyIt.format(s.available());
+            if (s.pending().signum() > 0) text += " (in prelievo " + currencyIt.format(s.pending()) + ")";
+            balanceLabel.setText(text);
+            withdrawButton.setDisable(s.available().signum() <= 0);
+        }
+    
+        private void reportSettled(List<ShopDAO.SettledWithdrawal> settled) {
+            long rejected = settled.stream().filter(w -> w.status() == ShopDAO.WithdrawalStatus.RIFIUTATO).count();
+            if (rejected > 0) {
+                showAlert(Alert.AlertType.WARNING, rejected + " richieste di prelievo rifiutate: saldo insufficiente.");
             }
+        }
+    
+        // Richieste di prelievo con il loro stato; l'elenco aperto si aggiorna a ogni variazione del saldo
+        @FXML
+        private void onWithdrawals() {
+            if (withdrawalsTable != null) return; // già aperto
+            TableView<ShopDAO.Withdrawal> table = new TableView<>();
+            TableColumn<ShopDAO.Withdrawal, String> colRequested = new TableColumn<>("Richiesta");
+            colRequested.setCellValueFactory(c -> new SimpleStringProperty(formatTimestamp(c.getValue().requestedAt())));
+            TableColumn<ShopDAO.Withdrawal, String> colAmount = new TableColumn<>("Importo");
+            colAmount.setCellValueFactory(c -> new SimpleStringProperty(currencyIt.format(c.getValue().amount())));
+            TableColumn<ShopDAO.Withdrawal, String> colStatus = new TableColumn<>("Stato");
+            colStatus.setCellValueFactory(c -> new SimpleStringProperty(withdrawalStatusText(c.getValue())));
+            TableColumn<ShopDAO.Withdrawal, String> colSettled = new TableColumn<>("Esito il");
+            colSettled.setCellValueFactory(c -> new SimpleStringProperty(formatTimestamp(c.getValue().settledAt())));
+            table.getColumns().setAll(List.of(colRequested, colAmount, colStatus, colSettled));
+            table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+            table.setPlaceholder(new Label("Nessuna richiesta di prelievo"));
+            table.setPrefSize(560, 320);
+
+            Dialog<Void> dialog = new Dialog<>();
+            dialog.initOwner(balanceLabel.getScene().getWindow());
+            dialog.setTitle("Prelievi");
+            dialog.getDialogPane().setContent(table);
+            dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+            dialog.setOnHidden(e -> withdrawalsTable = null);
+            withdrawalsTable = table;
+            loadWithdrawals();
+            dialog.show();
+        }
+    
+        private void loadWithdrawals() {
+            Integer userId = Session.getUserId();
+            TableView<ShopDAO.Withdrawal> table = withdrawalsTable;
+            if (userId == null || table == null) return;
+            runAsync(
+                    () -> ShopDAO.listWithdrawals(userId, WITHDRAWALS_SHOWN),
+                    list -> table.getItems().setAll(list),
+                    e -> table.setPlaceholder(new Label("Errore nel caricamento dei prelievi: " + e.getMessage()))
+            );
+        }
+    
+        private String formatTimestamp(Timestamp ts) {
+            return (ts == null) ? "—" : dateFmt.format(ts.toInstant());
+        }
     
+        private static String withdrawalStatusText(ShopDAO.Withdrawal w) {
+            return switch (w.status()) {
+                case IN_ATTESA -> "In attesa";
+                case COMPLETATO -> "Completato";
+                case RIFIUTATO -> (w.reason() == null || w.reason().isBlank()) ? "Rifiutato" : "Rifiutato: " + w.reason();
+            };
         }
     
         @FXML
@@ -1226,8 +1786,8 @@
             }
     
             try {
-                BigDecimal saldo = ShopDAO.getBalance(userId);
-                if ((saldo != null ? saldo.compareTo(BigDecimal.ZERO) : 0) <= 0) {
+                ShopDAO.BalanceSummary saldo = SellerBalance.cached(userId);
+                if (saldo == null || saldo.available().signum() <= 0) {
                     new Alert(Alert.AlertType.INFORMATION, "Saldo non disponibile.").showAndWait();
                     return;
                 }
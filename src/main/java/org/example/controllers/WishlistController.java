@@ -1,5 +1,6 @@
 package org.example.controllers;
 
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.geometry.Pos;
 import javafx.scene.control.Alert;
@@ -13,12 +14,20 @@ import javafx.scene.layout.Priority;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import org.example.dao.UserDAO;
+import org.example.inventory.InsufficientStockException;
+import org.example.inventory.InventoryHoldService;
 import org.example.models.Product;
+import org.example.models.SkuKey;
+import org.example.services.WishlistWriteBehind;
+import org.example.util.ImageCache;
 import org.example.util.Session;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,6 +43,13 @@ public class WishlistController {
     private static final Logger logger = Logger.getLogger(WishlistController.class.getName());
 
     private static final double MAX_SCROLL_HEIGHT = 360;
+    // righe oltre il bordo visibile per cui si anticipa il caricamento dell'immagine
+    private static final double PRELOAD_MARGIN = 120;
+
+    private record PendingThumb(HBox row, ImageView view, long productId) {}
+
+    // miniature non ancora richieste: si caricano quando la riga entra nella parte visibile
+    private final List<PendingThumb> pendingThumbs = new ArrayList<>();
 
     @FXML
     public void initialize() {
@@ -49,30 +65,80 @@ public class WishlistController {
         wishlistScroll.setHbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
         wishlistScroll.setVbarPolicy(ScrollPane.ScrollBarPolicy.AS_NEEDED);
 
+        wishlistScroll.vvalueProperty().addListener((obs, o, n) -> loadVisibleThumbs());
+        wishlistScroll.viewportBoundsProperty().addListener((obs, o, n) -> loadVisibleThumbs());
+        itemsBox.heightProperty().addListener((obs, o, n) -> loadVisibleThumbs());
+
         loadItems();
     }
 
     public void loadItems() {
         itemsBox.getChildren().clear();
+        pendingThumbs.clear();
         String currentUser = Session.getUser();
         List<Product> list;
 
         try {
+            // modifiche ancora in differita: prima sul DB, poi si rilegge; se la scrittura non
+            // riesce restano in attesa e si applicano sopra la lettura
+            WishlistWriteBehind.PendingChanges pending =
+                    WishlistWriteBehind.flush(currentUser) ? null : WishlistWriteBehind.pending(currentUser);
             list = UserDAO.getFavorites(currentUser);
+            if (pending != null) list = withPending(list, pending);
         } catch (SQLException e) {
             list = List.of(); // vuota
         }
 
-        if (list.isEmpty()) {
-            emptyLabel.setVisible(true);
-            emptyLabel.setManaged(true);
-        } else {
-            emptyLabel.setVisible(false);
-            emptyLabel.setManaged(false);
+        showEmpty(list.isEmpty());
+        if (!list.isEmpty()) {
             for (Product p : list) {
                 itemsBox.getChildren().add(createRow(p));
             }
+            // dopo il layout delle righe; poi ci pensano i listener su scroll e altezza
+            Platform.runLater(this::loadVisibleThumbs);
+        }
+    }
+
+    // Toglie le voci rimosse (o svuotate) ancora in attesa. Le aggiunte in attesa non hanno i dati
+    // del prodotto: si avvisa che compariranno dopo il salvataggio
+    private List<Product> withPending(List<Product> fromDb, WishlistWriteBehind.PendingChanges pending) {
+        Set<SkuKey> added = new HashSet<>();
+        Set<SkuKey> removed = new HashSet<>();
+        for (UserDAO.WishlistChange c : pending.changes()) {
+            SkuKey k = new SkuKey(c.productId(), c.idShop(), c.size());
+            (c.add() ? added : removed).add(k);
+        }
+        List<Product> out = new ArrayList<>();
+        for (Product p : fromDb) {
+            SkuKey k = SkuKey.of(p);
+            if (removed.contains(k) || (pending.clearFirst() && !added.contains(k))) continue;
+            out.add(p);
+            added.remove(k);
         }
+        if (!added.isEmpty()) {
+            // loadItems può girare dentro initialize: l'avviso si apre dopo
+            Platform.runLater(() -> showAlert("Alcuni preferiti non sono ancora stati salvati: compariranno appena possibile."));
+        }
+        return out;
+    }
+
+    // Richiede le miniature delle righe visibili (più un margine); le altre aspettano lo scroll
+    private void loadVisibleThumbs() {
+        if (pendingThumbs.isEmpty()) return;
+        double content = itemsBox.getHeight();
+        if (content <= 0) return; // righe non ancora disposte
+        double viewport = wishlistScroll.getViewportBounds().getHeight();
+        if (viewport <= 0) viewport = MAX_SCROLL_HEIGHT;
+        double top = Math.max(0, content - viewport) * wishlistScroll.getVvalue();
+        double from = top - PRELOAD_MARGIN;
+        double to = top + viewport + PRELOAD_MARGIN;
+
+        pendingThumbs.removeIf(t -> {
+            var b = t.row().getBoundsInParent();
+            if (b.getMaxY() < from || b.getMinY() > to) return false;
+            ImageCache.load(t.view(), "product:" + t.productId(), () -> UserDAO.getProductImage(t.productId()));
+            return true;
+        });
     }
 
     private HBox createRow(Product p) {
@@ -90,13 +156,6 @@ public class WishlistController {
         thumb.setMaxSize(50, 50);
         StackPane.setAlignment(image, Pos.CENTER);
 
-        try {
-            image.setImage(p.getImage());
-        } catch (Exception e) {
-            logger.log(Level.WARNING, "Errore caricamento immagine prodotto: {0}", p.getName());
-            logger.log(Level.WARNING, "Exception: ", e);
-        }
-
         Label name = new Label(p.getName());
         name.setWrapText(true);
         name.setStyle("-fx-font-weight: bold");
@@ -119,38 +178,48 @@ public class WishlistController {
         btnRemove.setPrefSize(24, 24);
         btnRemove.setGraphic(new ImageView(new Image(Objects.requireNonNull(getClass().getResourceAsStream("/icons/basket.png")), 16,16,true,true)));
         btnRemove.setOnAction(e -> {
-            try {
-                UserDAO.removeInWishlist(Session.getUser(), p.getProductId(), p.getIdShop(), p.getSize());
-            } catch (SQLException ex) {
-                logger.log(Level.SEVERE, String.format("Errore rimuovendo dalla wishlist (user=%s, productId=%d, shopId=%d, size=%s)",
-                                Session.getUser(), p.getProductId(), p.getIdShop(), p.getSize()), ex);
-                showAlert("Errore nella rimozione del prodotto dalla wishlist");
-                return;
-            }
-            loadItems();
+            // scrittura in differita: la riga sparisce subito, senza rileggere la lista
+            WishlistWriteBehind.remove(Session.getUser(), p.getProductId(), p.getIdShop(), p.getSize());
+            itemsBox.getChildren().remove(row);
+            pendingThumbs.removeIf(t -> t.row() == row);
+            if (itemsBox.getChildren().isEmpty()) showEmpty(true);
         });
 
         Button btnAddCart = new Button();
         btnAddCart.setPrefSize(24, 24);
         btnAddCart.setGraphic(new ImageView(new Image(Objects.requireNonNull(getClass().getResourceAsStream("/icons/cart.png")), 16,16,true,true)));
         btnAddCart.setOnAction(e -> {
-            Session.addToCart(Product.copyOf(p));
+            SkuKey key = SkuKey.of(p);
+            try {
+                InventoryHoldService.hold(InventoryHoldService.currentOwner(), key,
+                        Session.getCart().getQuantity(key) + 1);
+            } catch (InsufficientStockException ex) {
+                showAlert("Prodotto non più disponibile nella quantità richiesta");
+                return;
+            } catch (SQLException ex) {
+                // senza hold si prosegue: la disponibilità viene comunque verificata all'ordine
+                logger.log(Level.WARNING, "Impossibile prenotare lo stock per il carrello", ex);
+            }
+            Session.addToCart(p, 1);
             if (onCartUpdated != null) onCartUpdated.run();
         });
 
         row.getChildren().addAll(thumb, name, size, price, btnRemove, btnAddCart);
+        pendingThumbs.add(new PendingThumb(row, image, p.getProductId()));
         return row;
     }
 
     @FXML
     private void onClearWishlist() {
-        try {
-            UserDAO.clearWishlist(Session.getUser());
-            loadItems();
-        } catch (SQLException e) {
-            logger.log(Level.SEVERE, "Errore nello svuotamento della wishlist", e);
-            showAlert("Errore nello svuotamento della wishlist");
-        }
+        WishlistWriteBehind.clear(Session.getUser());
+        itemsBox.getChildren().clear();
+        pendingThumbs.clear();
+        showEmpty(true);
+    }
+
+    private void showEmpty(boolean empty) {
+        emptyLabel.setVisible(empty);
+        emptyLabel.setManaged(empty);
     }
 
     private void showAlert(String msg) {
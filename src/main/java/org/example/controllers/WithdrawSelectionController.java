@@ -10,6 +10,7 @@ import javafx.stage.Stage;
 import org.example.dao.ShopDAO;
 import org.example.models.Card;
 import org.example.services.CardsService;
+import org.example.services.SellerBalance;
 import org.example.ui.CardUi;
 import org.example.util.Session;
 
@@ -78,8 +79,9 @@ public class WithdrawSelectionController {
         if (currentUserId == null) return;
 
         try {
-            // saldo disponibile
-            available = ShopDAO.getBalance(currentUserId);
+            // disponibile = saldo meno prelievi già in attesa, dalla cache del servizio
+            ShopDAO.BalanceSummary summary = SellerBalance.cached(currentUserId);
+            available = (summary != null) ? summary.available() : BigDecimal.ZERO;
             availableLabel.setText(currency.format(available));
 
             // carte salvate
@@ -145,14 +147,14 @@ public class WithdrawSelectionController {
         Task<Void> task = new Task<>() {
             @Override
             protected Void call() throws Exception {
-                ShopDAO.requestWithdraw(currentUserId, amount);
+                SellerBalance.requestWithdraw(currentUserId, amount);
                 return null;
             }
         };
 
         task.setOnSucceeded(evt -> Platform.runLater(() -> {
             setProcessing(false);
-            Alert ok = new Alert(Alert.AlertType.INFORMATION, "Prelievo effettuato: " + currency.format(amount));
+            Alert ok = new Alert(Alert.AlertType.INFORMATION, "Prelievo di " + currency.format(amount) + " richiesto: verrà accreditato a breve.");
             ok.setHeaderText(null);
             ok.showAndWait();
             if (onWithdrawDone != null) onWithdrawDone.run();
@@ -0,0 +1,109 @@
+package org.example.dao;
+
+import org.example.database.DatabaseConnection;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+// Scrittura del catalogo a lotti per l'import massivo.
+// Un lotto = un executeBatch + commit. L'upsert imposta prezzo e quantità (non li somma come
+// sp_seller_upsert_catalog): ripetere un lotto dopo un errore dà lo stesso risultato.
+public final class CatalogImportDAO {
+
+    private CatalogImportDAO() {
+        throw new AssertionError("Utility class, no instances allowed");
+    }
+
+    public record Row(long line, int productId, String size, BigDecimal price, int quantity) {}
+
+    public record RowError(long line, String message) {}
+
+    private static final String UPSERT =
+            "INSERT INTO product_availability (id_shop, product_id, size, price, quantity) VALUES (?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE price = VALUES(price), quantity = VALUES(quantity)";
+
+    public static BatchWriter openWriter(int shopId) throws SQLException {
+        return new BatchWriter(shopId, DatabaseConnection.getInstance());
+    }
+
+    public static final class BatchWriter implements AutoCloseable {
+        private final int shopId;
+        private final Connection conn;
+        private final boolean oldAuto;
+        private final PreparedStatement ps;
+
+        private BatchWriter(int shopId, Connection conn) throws SQLException {
+            this.shopId = shopId;
+            this.conn = conn;
+            try {
+                this.oldAuto = OrderDAO.beginTx(conn);
+                this.ps = conn.prepareStatement(UPSERT);
+            } catch (SQLException ex) {
+                conn.close();
+                throw ex;
+            }
+        }
+
+        // Scrive e committa un lotto. Se il batch fallisce si ripete riga per riga (con savepoint)
+        // per isolare le righe rifiutate dal DB; le altre vengono comunque salvate.
+        public List<RowError> writeChunk(List<Row> rows) throws SQLException {
+            if (rows.isEmpty()) return List.of();
+            try {
+                for (Row r : rows) {
+                    bind(r);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                conn.commit();
+                DataChangeHooks.stockChanged();
+                return List.of();
+            } catch (BatchUpdateException ex) {
+                ps.clearBatch();
+                OrderDAO.safeRollback(conn);
+                return writeOneByOne(rows);
+            } catch (SQLException ex) {
+                ps.clearBatch();
+                OrderDAO.safeRollback(conn);
+                throw ex;
+            }
+        }
+
+        private List<RowError> writeOneByOne(List<Row> rows) throws SQLException {
+            List<RowError> errors = new ArrayList<>();
+            for (Row r : rows) {
+                Savepoint sp = conn.setSavepoint();
+                try {
+                    bind(r);
+                    ps.executeUpdate();
+                    conn.releaseSavepoint(sp);
+                } catch (SQLException ex) {
+                    conn.rollback(sp);
+                    errors.add(new RowError(r.line(), ex.getMessage()));
+                }
+            }
+            conn.commit();
+            DataChangeHooks.stockChanged();
+            return errors;
+        }
+
+        private void bind(Row r) throws SQLException {
+            ps.setInt(1, shopId);
+            ps.setInt(2, r.productId());
+            ps.setString(3, r.size());
+            ps.setBigDecimal(4, r.price());
+            ps.setInt(5, r.quantity());
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                ps.close();
+            } finally {
+                OrderDAO.restoreAutoCommit(conn, oldAuto);
+                conn.close();
+            }
+        }
+    }
+}
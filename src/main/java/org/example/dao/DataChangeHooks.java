@@ -0,0 +1,48 @@
+package org.example.dao;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Notifiche emesse dai DAO dopo una scrittura riuscita di questo processo (ordini, disponibilità).
+// I servizi che fanno polling si registrano per anticipare il giro successivo: il DAO non dipende da loro.
+public final class DataChangeHooks {
+
+    private DataChangeHooks() {
+        throw new AssertionError("Utility class, no instances allowed");
+    }
+
+    private static final Logger logger = Logger.getLogger(DataChangeHooks.class.getName());
+
+    private static final List<Runnable> ORDERS = new CopyOnWriteArrayList<>();
+    private static final List<Runnable> STOCK = new CopyOnWriteArrayList<>();
+
+    // Ordini creati o con stato cambiato
+    public static void onOrdersChanged(Runnable listener) {
+        ORDERS.add(listener);
+    }
+
+    // Quantità o soglie di scorta cambiate
+    public static void onStockChanged(Runnable listener) {
+        STOCK.add(listener);
+    }
+
+    static void ordersChanged() {
+        fire(ORDERS);
+    }
+
+    static void stockChanged() {
+        fire(STOCK);
+    }
+
+    private static void fire(List<Runnable> listeners) {
+        for (Runnable r : listeners) {
+            try {
+                r.run();
+            } catch (RuntimeException ex) {
+                logger.log(Level.WARNING, "Notifica di modifica non riuscita", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.dao;
+
+import org.example.database.DatabaseConnection;
+import org.example.models.SkuKey;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+
+// Hold di stock su DB (tabella inventory_holds). In demo gli hold vivono solo in memoria
+// (vedi InventoryHoldService), quindi qui non c'è un ramo demo.
+public final class InventoryHoldDAO {
+
+    private InventoryHoldDAO() {
+        throw new AssertionError("Utility class, no instances allowed");
+    }
+
+    // ok=false se la quantità richiesta supera quanto disponibile (stock - hold altrui)
+    public record HoldOutcome(boolean ok, int available) { }
+
+    public static HoldOutcome setHold(String owner, SkuKey key, int qty, int ttlSeconds) throws SQLException {
+        try (Connection conn = DatabaseConnection.getInstance();
+             CallableStatement cs = conn.prepareCall("{ call sp_hold_set(?, ?, ?, ?, ?, ?, ?, ?) }")) {
+            boolean oldAuto = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                cs.setString(1, owner);
+                cs.setLong(2, key.productId());
+                cs.setInt(3, key.shopId());
+                cs.setString(4, key.size());
+                cs.setInt(5, qty);
+                cs.setInt(6, ttlSeconds);
+                cs.registerOutParameter(7, Types.TINYINT);
+                cs.registerOutParameter(8, Types.INTEGER);
+                cs.execute();
+                HoldOutcome out = new HoldOutcome(cs.getByte(7) == 1, cs.getInt(8));
+                conn.commit();
+                return out;
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(oldAuto);
+            }
+        }
+    }
+
+    public static void release(String owner, SkuKey key) throws SQLException {
+        try (Connection conn = DatabaseConnection.getInstance();
+             CallableStatement cs = conn.prepareCall("{ call sp_hold_release(?, ?, ?, ?) }")) {
+            cs.setString(1, owner);
+            cs.setLong(2, key.productId());
+            cs.setInt(3, key.shopId());
+            cs.setString(4, key.size());
+            cs.execute();
+        }
+    }
+
+    public static void releaseAll(String owner) throws SQLException {
+        try (Connection conn = DatabaseConnection.getInstance()) {
+            releaseAll(conn, owner);
+        }
+    }
+
+    // Variante sulla connessione del chiamante: l'ordine libera gli hold nella sua stessa transazione
+    static void releaseAll(Connection conn, String owner) throws SQLException {
+        try (CallableStatement cs = conn.prepareCall("{ call sp_hold_release_all(?) }")) {
+            cs.setString(1, owner);
+            cs.execute();
+        }
+    }
+
+    public static void renew(String owner, int ttlSeconds) throws SQLException {
+        try (Connection conn = DatabaseConnection.getInstance();
+             CallableStatement cs = conn.prepareCall("{ call sp_hold_renew(?, ?) }")) {
+            cs.setString(1, owner);
+            cs.setInt(2, ttlSeconds);
+            cs.execute();
+        }
+    }
+}
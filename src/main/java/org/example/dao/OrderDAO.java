@@ -2,6 +2,9 @@ package org.example.dao;
 
 import org.example.database.DatabaseConnection;
 import org.example.demo.DemoData;
+import org.example.demo.DemoOrders;
+import org.example.inventory.InsufficientStockException;
+import org.example.inventory.InventoryHoldService;
 import org.example.models.*;
 import org.example.util.Session;
 
@@ -9,11 +12,15 @@ import java.math.BigDecimal;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.LongConsumer;
 
 public final class OrderDAO {
 
     private static final String ORDER_ID = "id_order";
 
+    // oltre questa soglia di righe l'ordine passa dallo staging invece che dal JSON di sp_place_order
+    private static final int BULK_THRESHOLD = Integer.getInteger("orders.bulkThreshold", 500);
+
     private OrderDAO() {
         throw new AssertionError("Utility class, no instances allowed");
     }
@@ -29,65 +36,79 @@ public final class OrderDAO {
     }
 
     // UTIL DEMO
-    private static String stockKey(long productId, int shopId, String size) {
-        return DemoData.stockKey(productId, shopId, size);
-    }
-
     private static void ensureDemoSeed() {
         DemoData.ensureLoaded();
         // Inizializza stock demo se mancante (es. 5 per variante)
         for (Product p : DemoData.products().values()) {
-            DemoData.stock().putIfAbsent(stockKey(p.getProductId(), p.getIdShop(), p.getSize()), 5);
+            DemoData.inventory().seed(SkuKey.of(p), 5);
         }
     }
 
     // CREAZIONE ORDINE
     public static CreationResult placeOrderWithStockDecrement(int userId, List<CartItem> items, String address) throws SQLException {
         validateItems(items);
-        return Session.isDemo()
-                ? placeOrderDemo(userId, items)
-                : placeOrderDb(userId, items, address);
+        if (Session.isDemo()) return placeOrderDemo(userId, items);
+
+        CreationResult res = placeOrderDb(userId, items, address);
+        // le dashboard dei venditori aperte in questo processo vedono subito il nuovo ordine
+        DataChangeHooks.ordersChanged();
+        DataChangeHooks.stockChanged();
+        return res;
+    }
+
+    // ORDINI BULK (B2B): le righe arrivano da un Iterable e non vengono mai tenute tutte in memoria.
+    // progress riceve il numero di righe scritte dopo ogni lotto.
+    public static CreationResult placeBulkOrder(int userId, Iterable<CartItem> lines, String address,
+                                                LongConsumer progress) throws SQLException {
+        Objects.requireNonNull(lines, "lines");
+        LongConsumer onProgress = (progress != null) ? progress : n -> { };
+
+        if (Session.isDemo()) {
+            List<CartItem> items = new ArrayList<>();
+            lines.forEach(items::add);
+            validateItems(items);
+            CreationResult res = placeOrderDemo(userId, items);
+            onProgress.accept(items.size());
+            return res;
+        }
+        CreationResult res = placeOrderStaged(userId, lines, address, InventoryHoldService.currentOwner(), onProgress);
+        DataChangeHooks.ordersChanged();
+        DataChangeHooks.stockChanged();
+        return res;
     }
 
     // DEMO
     private static CreationResult placeOrderDemo(int userId, List<CartItem> items) throws SQLException {
         ensureDemoSeed();
 
-        // 1) aggrega fabbisogno e 2) valida stock
-        Map<String, Integer> need = aggregateNeed(items);
-        validateDemoStock(need);
-
-        // 3) crea ordini per shop
-        Map<Integer, List<CartItem>> byShop = groupByShop(items);
-        CreationResult res = createDemoOrders(userId, byShop);
+        // 1) aggrega fabbisogno e 2) prenota tutto lo stock in modo atomico (verifica + decremento)
+        Map<SkuKey, Integer> need = aggregateNeed(items);
+        reserveDemoStock(need);
 
-        // 4) scala stock
-        decrementDemoStock(need);
-        return res;
+        // 3) crea ordini per shop; se qualcosa va storto lo stock torna disponibile
+        try {
+            Map<Integer, List<CartItem>> byShop = groupByShop(items);
+            return createDemoOrders(userId, byShop);
+        } catch (RuntimeException ex) {
+            DemoData.inventory().release(need);
+            throw ex;
+        }
     }
 
-    private static Map<String, Integer> aggregateNeed(List<CartItem> items) {
-        Map<String, Integer> need = new LinkedHashMap<>();
+    private static Map<SkuKey, Integer> aggregateNeed(List<CartItem> items) {
+        Map<SkuKey, Integer> need = new LinkedHashMap<>();
         for (CartItem it : items) {
-            String key = stockKey(it.getProductId(), it.getShopId(), it.getSize());
-            need.merge(key, it.getQuantity(), Integer::sum);
+            need.merge(SkuKey.of(it), it.getQuantity(), Integer::sum);
         }
         return need;
     }
 
-    private static void validateDemoStock(Map<String, Integer> need) throws SQLException {
-        for (var e : need.entrySet()) {
-            int available = DemoData.stock().getOrDefault(e.getKey(), 0);
-            int required = e.getValue();
-            if (available < required) {
-                String[] parts = e.getKey().split("\\|");
-                long pid = Long.parseLong(parts[0]);
-                int sid  = Integer.parseInt(parts[1]);
-                String sz = parts[2];
-                throw new SQLException("Stock insufficiente (demo) per product=" + pid
-                        + ", shop=" + sid + ", size=" + sz
-                        + " (richiesto " + required + ", disponibile " + available + ")");
-            }
+    // Usa gli hold del carrello e prenota solo la parte non coperta
+    private static void reserveDemoStock(Map<SkuKey, Integer> need) throws SQLException {
+        try {
+            InventoryHoldService.convertDemo(InventoryHoldService.currentOwner(), need);
+        } catch (InsufficientStockException e) {
+            throw new SQLException("(demo) " + e.getMessage(), e);
         }
     }
 
@@ -112,40 +133,22 @@ public final class OrderDAO {
             shopToOrderId.put(shopId, orderId);
             createdIds.add(orderId);
 
-            Order ord = new Order(orderId, userId, now, org.example.models.OrderStatus.IN_ELABORAZIONE);
+            List<OrderDetailLine> lines = new ArrayList<>(group.size());
             for (CartItem it : group) {
                 String prodKey = DemoData.prodKey(it.getProductId(), it.getShopId(), it.getSize());
                 Product p = DemoData.products().get(prodKey);
                 String productName = (p != null) ? p.getName()     : ("Prodotto #" + it.getProductId());
                 String shopName    = (p != null) ? p.getNameShop() : ("Shop #" + it.getShopId());
 
-                ord.addLine(new org.example.models.OrderLine(
-                        orderId,
-                        it.getProductId(),
-                        it.getShopId(),
-                        new org.example.models.OrderLine.Details(
-                                productName,
-                                shopName,
-                                it.getSize(),
-                                it.getQuantity(),
-                                BigDecimal.valueOf(it.getUnitPrice())
-                        )
-                ));
+                lines.add(new OrderDetailLine(orderId, it.getProductId(), it.getShopId(), productName, shopName,
+                        it.getSize(), it.getQuantity(), BigDecimal.valueOf(it.getUnitPrice())));
             }
-            DemoData.orders()
-                    .computeIfAbsent(userId, k -> new java.util.concurrent.CopyOnWriteArrayList<>())
-                    .add(ord);
+            // record immutabile in testa allo storico dell'utente: O(1), nessuna copia
+            DemoData.orders().append(new DemoOrders.DemoOrder(orderId, userId, now, OrderStatus.IN_ELABORAZIONE, lines));
         }
         return new CreationResult(createdIds, shopToOrderId);
     }
 
-    private static void decrementDemoStock(Map<String, Integer> need) {
-        for (var e : need.entrySet()) {
-            int available = DemoData.stock().getOrDefault(e.getKey(), 0);
-            DemoData.stock().put(e.getKey(), available - e.getValue());
-        }
-    }
-
     // Escape per JSON
     private static String jsonEscape(String s) {
         if (s == null) return "null";
@@ -171,16 +174,24 @@ public final class OrderDAO {
 
     // DB
     private static CreationResult placeOrderDb(int userId, List<CartItem> items, String address) throws SQLException {
-        final String CALL = "{ call sp_place_order(?, ?, ?) }";
+        String holdOwner = InventoryHoldService.currentOwner();
 
-        try (Connection conn = DatabaseConnection.getInstance();
-             CallableStatement cs = conn.prepareCall(CALL)) {
+        // ordini molto grandi: niente JSON unico, righe a lotti nello staging
+        if (items.size() >= BULK_THRESHOLD) {
+            return placeOrderStaged(userId, items, address, holdOwner, n -> { });
+        }
 
+        // modalità group-commit: l'ordine entra in una transazione condivisa con altri checkout concorrenti
+        if (OrderGroupCommit.enabled()) {
+            return OrderGroupCommit.submit(userId, items, address, holdOwner);
+        }
+
+        try (Connection conn = DatabaseConnection.getInstance()) {
             boolean oldAuto = beginTx(conn);
             try {
-                bindPlaceOrderParams(cs, userId, address, items);
-                Map<Integer, Integer> shopToOrder = executeAndReadMapping(cs);
+                Map<Integer, Integer> shopToOrder = placeOrderInTx(conn, userId, items, address, holdOwner);
                 conn.commit();
+                InventoryHoldService.forgetDb(holdOwner);
                 return toCreationResult(shopToOrder);
             } catch (Exception ex) {
                 safeRollback(conn);
@@ -191,15 +202,44 @@ public final class OrderDAO {
         }
     }
 
+    private static CreationResult placeOrderStaged(int userId, Iterable<CartItem> lines, String address,
+                                                   String holdOwner, LongConsumer progress) throws SQLException {
+        try (Connection conn = DatabaseConnection.getInstance()) {
+            boolean oldAuto = beginTx(conn);
+            try {
+                Map<Integer, Integer> shopToOrder = OrderStaging.placeInTx(conn, userId, lines, address, holdOwner, progress);
+                conn.commit();
+                InventoryHoldService.forgetDb(holdOwner);
+                return toCreationResult(shopToOrder);
+            } catch (Exception ex) {
+                safeRollback(conn);
+                throw wrapToSqlException(ex);
+            } finally {
+                restoreAutoCommit(conn, oldAuto);
+            }
+        }
+    }
+
+    // Scrive un ordine sulla transazione già aperta dal chiamante (singolo ordine o batch group-commit)
+    static Map<Integer, Integer> placeOrderInTx(Connection conn, int userId, List<CartItem> items,
+                                                String address, String holdOwner) throws SQLException {
+        try (CallableStatement cs = conn.prepareCall("{ call sp_place_order(?, ?, ?) }")) {
+            // gli hold del carrello diventano decremento reale nella stessa transazione
+            InventoryHoldDAO.releaseAll(conn, holdOwner);
+            bindPlaceOrderParams(cs, userId, address, items);
+            return executeAndReadMapping(cs);
+        }
+    }
+
     // Helpers
 
-    private static boolean beginTx(Connection conn) throws SQLException {
+    static boolean beginTx(Connection conn) throws SQLException {
         boolean old = conn.getAutoCommit();
         conn.setAutoCommit(false);
         return old;
     }
 
-    private static void restoreAutoCommit(Connection conn, boolean oldAuto) {
+    static void restoreAutoCommit(Connection conn, boolean oldAuto) {
         try {
             conn.setAutoCommit(oldAuto);
         } catch (Exception ignore) {
@@ -207,7 +247,7 @@ public final class OrderDAO {
         }
     }
 
-    private static void safeRollback(Connection conn) {
+    static void safeRollback(Connection conn) {
         try {
             conn.rollback();
         } catch (Exception ignore) {
@@ -223,7 +263,7 @@ public final class OrderDAO {
     }
 
     // Esegue la SP, avanza tra i resultset intermedi e ritorna la mappa shop->orderId.
-    private static Map<Integer, Integer> executeAndReadMapping(CallableStatement cs) throws SQLException {
+    static Map<Integer, Integer> executeAndReadMapping(CallableStatement cs) throws SQLException {
         boolean hasInitialResultSet = cs.execute();
         if (!hasInitialResultSet && !advanceToFinalResultSet(cs)) {
             throw new SQLException("sp_place_order non ha restituito il result set atteso (id_shop/id_order).");
@@ -288,14 +328,14 @@ public final class OrderDAO {
     }
 
     // Converte la mappa in CreationResult
-    private static CreationResult toCreationResult(Map<Integer, Integer> shopToOrder) {
+    static CreationResult toCreationResult(Map<Integer, Integer> shopToOrder) {
         List<Integer> orderIds = new ArrayList<>(shopToOrder.values());
         orderIds.sort(Integer::compareTo);
         return new CreationResult(orderIds, shopToOrder);
     }
 
     // Uniforma le eccezioni a SQLException
-    private static SQLException wrapToSqlException(Exception ex) {
+    static SQLException wrapToSqlException(Exception ex) {
         if (ex instanceof SQLException se) return se;
         return new SQLException("Errore durante placeOrderDb", ex);
     }
@@ -313,42 +353,130 @@ public final class OrderDAO {
     // Riga tabella ORDINI
     public record OrderSummary(int idOrder, Timestamp dateOrder, String stateOrder, BigDecimal totalAmount) { }
 
-    // Riga tabella DETTAGLIO
-    public record OrderLine(int orderId, long productId, int shopId, String productName, String shopName, String size, int quantity, BigDecimal unitPrice) {
-        public BigDecimal getSubtotal() {
-            return (unitPrice == null) ? BigDecimal.ZERO : unitPrice.multiply(BigDecimal.valueOf(quantity));
+    // Posizione nella cronologia: ultimo ordine della pagina precedente (ordinamento data DESC, id DESC)
+    public record HistoryCursor(Timestamp dateOrder, int idOrder) { }
+
+    // Pagina di cronologia; next == null se non ci sono altri ordini
+    public record HistoryPage(List<OrderSummary> orders, HistoryCursor next) {
+        public HistoryPage {
+            orders = List.copyOf(orders);
         }
     }
 
-    // Ordini completi come model `Order`
-    public static List<Order> listOrdersModel(int userId) throws SQLException {
+    // Cronologia a pagine: solo intestazioni con totale, le righe si leggono con listOrderLines
+    public static HistoryPage listOrderHistory(int userId, HistoryCursor after, int limit) throws SQLException {
+        if (limit <= 0) throw new IllegalArgumentException("limit deve essere positivo");
+
+        // si chiede una riga in più per sapere se esiste una pagina successiva
+        List<OrderSummary> rows = Session.isDemo()
+                ? listOrderHistoryDemo(userId, after, limit + 1)
+                : listOrderHistoryDb(userId, after, limit + 1);
+
+        if (rows.size() <= limit) return new HistoryPage(rows, null);
+        List<OrderSummary> page = rows.subList(0, limit);
+        OrderSummary last = page.get(limit - 1);
+        return new HistoryPage(page, new HistoryCursor(last.dateOrder(), last.idOrder()));
+    }
+
+    private static List<OrderSummary> listOrderHistoryDb(int userId, HistoryCursor after, int limit) throws SQLException {
+        try (Connection conn = DatabaseConnection.getInstance();
+             CallableStatement cs = conn.prepareCall("{ call sp_list_orders_page(?, ?, ?, ?) }")) {
+            cs.setInt(1, userId);
+            if (after == null) {
+                cs.setNull(2, Types.TIMESTAMP);
+                cs.setNull(3, Types.INTEGER);
+            } else {
+                cs.setTimestamp(2, after.dateOrder());
+                cs.setInt(3, after.idOrder());
+            }
+            cs.setInt(4, limit);
+
+            List<OrderSummary> out = new ArrayList<>(limit);
+            try (ResultSet rs = cs.executeQuery()) {
+                while (rs.next()) {
+                    out.add(new OrderSummary(
+                            rs.getInt(ORDER_ID),
+                            rs.getTimestamp("date_order"),
+                            rs.getString("state_order"),
+                            rs.getBigDecimal("total_amount")
+                    ));
+                }
+            }
+            return out;
+        }
+    }
+
+    // Stesso ordinamento del DB (data DESC, id DESC): l'ordine di append non lo garantisce con
+    // inserimenti concorrenti, quindi si confronta ogni ordine con il cursore e si ordina la pagina
+    private static final Comparator<DemoOrders.DemoOrder> NEWEST_FIRST =
+            Comparator.comparing(DemoOrders.DemoOrder::createdAt)
+                    .thenComparingInt(DemoOrders.DemoOrder::id)
+                    .reversed();
+
+    private static List<OrderSummary> listOrderHistoryDemo(int userId, HistoryCursor after, int limit) {
+        DemoData.ensureLoaded();
+        return DemoData.orders().newestFirst(userId)
+                .filter(o -> after == null || isAfter(o, after))
+                .sorted(NEWEST_FIRST)
+                .limit(limit)
+                .map(o -> new OrderSummary(o.id(), Timestamp.valueOf(o.createdAt()), o.status().toDb(), o.total()))
+                .toList();
+    }
+
+    private static boolean isAfter(DemoOrders.DemoOrder o, HistoryCursor c) {
+        int cmp = Timestamp.valueOf(o.createdAt()).compareTo(c.dateOrder());
+        return cmp < 0 || (cmp == 0 && o.id() < c.idOrder());
+    }
+
+    // Righe di un solo ordine (dettaglio della cronologia)
+    public static List<OrderDetailLine> listOrderLines(int userId, int orderId) throws SQLException {
         if (Session.isDemo()) {
             DemoData.ensureLoaded();
-            var src = DemoData.orders().getOrDefault(userId, Collections.emptyList());
-            // ritorna copia profonda
-            List<Order> out = new ArrayList<>(src.size());
-            for (Order o : src) {
-                Order copy = new Order(o.getId(), o.getUserId(), o.getCreatedAt(), o.getStatus());
-                for (org.example.models.OrderLine l : o.getLines()) {
-                    copy.addLine(new org.example.models.OrderLine(
-                            l.getOrderId(), l.getProductId(), l.getShopId(),
-                            new org.example.models.OrderLine.Details(
-                                    l.getProductName(),
-                                    l.getShopName(),
-                                    l.getSize(),
-                                    l.getQuantity(),
-                                    l.getUnitPrice()
-                            )
+            // lista immutabile: si restituisce direttamente
+            return DemoData.orders().find(userId, orderId)
+                    .map(DemoOrders.DemoOrder::lines)
+                    .orElse(List.of());
+        }
+
+        try (Connection conn = DatabaseConnection.getInstance();
+             CallableStatement cs = conn.prepareCall("{ call sp_list_order_lines(?, ?) }")) {
+            cs.setInt(1, userId);
+            cs.setInt(2, orderId);
+            List<OrderDetailLine> out = new ArrayList<>();
+            try (ResultSet rs = cs.executeQuery()) {
+                while (rs.next()) {
+                    out.add(new OrderDetailLine(
+                            rs.getInt(ORDER_ID),
+                            rs.getLong("id_product"),
+                            rs.getInt("id_shop"),
+                            rs.getString("product_name"),
+                            rs.getString("shop_name"),
+                            rs.getString("size"),
+                            rs.getInt("quantity"),
+                            rs.getBigDecimal("price")
                     ));
                 }
-                out.add(copy);
             }
-            out.sort((a, b) -> {
-                int c = b.getCreatedAt().compareTo(a.getCreatedAt());
-                return (c != 0) ? c : Integer.compare(b.getId(), a.getId());
-            });
             return out;
         }
+    }
+
+    private static Order toModel(DemoOrders.DemoOrder o) {
+        Order ord = new Order(o.id(), o.userId(), o.createdAt(), o.status());
+        for (OrderDetailLine l : o.lines()) {
+            ord.addLine(new org.example.models.OrderLine(l.orderId(), l.productId(), l.shopId(),
+                    new org.example.models.OrderLine.Details(l.productName(), l.shopName(), l.size(), l.quantity(), l.unitPrice())));
+        }
+        return ord;
+    }
+
+    // Ordini completi come model `Order`
+    public static List<Order> listOrdersModel(int userId) throws SQLException {
+        if (Session.isDemo()) {
+            DemoData.ensureLoaded();
+            // i record demo sono immutabili: si costruisce il model una volta, senza copie intermedie né sort
+            return DemoData.orders().newestFirst(userId).map(OrderDAO::toModel).toList();
+        }
 
         // PRODUZIONE
         final String CALL_H = "{ call sp_list_orders_header(?) }";
@@ -0,0 +1,180 @@
+package org.example.dao;
+
+import org.example.database.DatabaseConnection;
+import org.example.inventory.InventoryHoldService;
+import org.example.models.CartItem;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Group-commit degli ordini (opzionale, -Dorders.groupCommit=true).
+// I checkout concorrenti vengono accodati; un unico writer li preleva a piccoli lotti e li scrive
+// in una sola transazione, con un savepoint per ordine: un ordine in errore viene annullato da solo
+// senza compromettere gli altri. Il costo del commit (fsync) si divide sull'intero lotto.
+final class OrderGroupCommit {
+
+    private OrderGroupCommit() {}
+
+    private static final Logger logger = Logger.getLogger(OrderGroupCommit.class.getName());
+
+    private static final boolean ENABLED = Boolean.getBoolean("orders.groupCommit");
+    private static final int MAX_BATCH = Integer.getInteger("orders.groupCommit.maxBatch", 32);
+    // attesa massima per riempire il lotto quando la coda è quasi vuota
+    private static final long LINGER_MS = Long.getLong("orders.groupCommit.lingerMs", 2);
+    // attesa massima dell'esito per chi ha accodato l'ordine
+    private static final long TIMEOUT_MS = Long.getLong("orders.groupCommit.timeoutMs", 30_000);
+
+    // taken: preso dal writer (l'ordine può essere scritto) o abbandonato da chi attende;
+    // vince il primo compareAndSet, quindi un ordine abbandonato non viene mai scritto
+    private record Pending(int userId, List<CartItem> items, String address, String holdOwner,
+                           CompletableFuture<OrderDAO.CreationResult> result, AtomicBoolean taken) { }
+
+    private record Placed(Pending request, Map<Integer, Integer> shopToOrder) { }
+
+    private static final BlockingQueue<Pending> QUEUE = new LinkedBlockingQueue<>();
+
+    static {
+        if (ENABLED) {
+            Thread writer = new Thread(OrderGroupCommit::writerLoop, "order-group-commit");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    static boolean enabled() {
+        return ENABLED;
+    }
+
+    // Accoda l'ordine e attende l'esito del lotto in cui viene scritto
+    static OrderDAO.CreationResult submit(int userId, List<CartItem> items, String address, String holdOwner)
+            throws SQLException {
+        CompletableFuture<OrderDAO.CreationResult> f = new CompletableFuture<>();
+        Pending p = new Pending(userId, List.copyOf(items), address, holdOwner, f, new AtomicBoolean());
+        QUEUE.add(p);
+        try {
+            return unwrap(() -> f.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        } catch (TimeoutException te) {
+            if (p.taken().compareAndSet(false, true)) {
+                throw new SQLException("Nessun esito dal group-commit entro " + TIMEOUT_MS + " ms", te);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            if (p.taken().compareAndSet(false, true)) {
+                throw new SQLException("Attesa del group-commit interrotta", ie);
+            }
+        }
+        // già preso dal writer: può ancora essere committato, quindi si attende comunque l'esito
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return unwrap(f::get);
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                } catch (TimeoutException te) {
+                    throw new IllegalStateException(te); // attesa senza limite
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface Wait {
+        OrderDAO.CreationResult get() throws InterruptedException, ExecutionException, TimeoutException;
+    }
+
+    private static OrderDAO.CreationResult unwrap(Wait w) throws SQLException, InterruptedException, TimeoutException {
+        try {
+            return w.get();
+        } catch (ExecutionException ee) {
+            Throwable c = ee.getCause();
+            if (c instanceof SQLException se) throw se;
+            throw new SQLException("Errore durante il group-commit", c);
+        }
+    }
+
+    private static void writerLoop() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(QUEUE.take());
+                QUEUE.drainTo(batch, MAX_BATCH - 1);
+                if (batch.size() < MAX_BATCH && LINGER_MS > 0) {
+                    Pending more = QUEUE.poll(LINGER_MS, TimeUnit.MILLISECONDS);
+                    if (more != null) {
+                        batch.add(more);
+                        QUEUE.drainTo(batch, MAX_BATCH - batch.size());
+                    }
+                }
+                writeBatch(batch);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException ex) {
+                logger.log(Level.SEVERE, "Errore inatteso nel writer group-commit", ex);
+                for (Pending p : batch) p.result().completeExceptionally(ex);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private static void writeBatch(List<Pending> batch) {
+        List<Placed> placed = new ArrayList<>(batch.size());
+
+        try (Connection conn = DatabaseConnection.getInstance()) {
+            boolean oldAuto = OrderDAO.beginTx(conn);
+            try {
+                for (Pending p : batch) {
+                    if (!p.taken().compareAndSet(false, true)) {
+                        // chi attendeva ha già ricevuto l'errore: l'ordine non si scrive
+                        p.result().cancel(false);
+                        continue;
+                    }
+                    Savepoint sp = conn.setSavepoint();
+                    try {
+                        placed.add(new Placed(p, OrderDAO.placeOrderInTx(conn, p.userId(), p.items(), p.address(), p.holdOwner())));
+                        conn.releaseSavepoint(sp);
+                    } catch (SQLException ex) {
+                        // annulla solo questo ordine (es. stock insufficiente)
+                        conn.rollback(sp);
+                        p.result().completeExceptionally(ex);
+                    }
+                }
+                conn.commit();
+            } catch (SQLException ex) {
+                // transazione persa (es. deadlock: InnoDB annulla tutto e i savepoint spariscono):
+                // falliscono sia gli ordini già scritti sia quelli non ancora processati
+                OrderDAO.safeRollback(conn);
+                failUnfinished(batch, ex);
+                return;
+            } finally {
+                OrderDAO.restoreAutoCommit(conn, oldAuto);
+            }
+        } catch (SQLException ex) {
+            // connessione non disponibile: falliscono tutti quelli non ancora chiusi
+            for (Pending p : batch) p.result().completeExceptionally(ex);
+            return;
+        }
+
+        for (Placed pl : placed) {
+            InventoryHoldService.forgetDb(pl.request().holdOwner());
+            pl.request().result().complete(OrderDAO.toCreationResult(pl.shopToOrder()));
+        }
+        logger.log(Level.FINE, "Group-commit: {0} ordini su {1}", new Object[] { placed.size(), batch.size() });
+    }
+
+    private static void failUnfinished(List<Pending> batch, SQLException ex) {
+        for (Pending p : batch) {
+            if (!p.result().isDone()) p.result().completeExceptionally(ex);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.example.dao;
+
+import org.example.models.CartItem;
+
+import java.math.BigDecimal;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.LongConsumer;
+
+// Percorso "bulk" per ordini con migliaia di righe.
+// Le righe vengono scritte a lotti in order_staging (PreparedStatement + executeBatch) e poi
+// finalizzate da sp_place_order_staged: nessun JSON gigante, memoria costante lato client,
+// nessun pacchetto oltre max_allowed_packet.
+final class OrderStaging {
+
+    private OrderStaging() {}
+
+    // righe per executeBatch (con rewriteBatchedStatements diventano una sola INSERT multi-valore)
+    static final int BATCH_SIZE = Integer.getInteger("orders.staging.batchSize", 500);
+
+    private static final String INSERT_LINE =
+            "INSERT INTO order_staging(batch_id, line_no, product_id, id_shop, size, quantity, unit_price) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    // Carica le righe e finalizza l'ordine sulla transazione del chiamante.
+    // progress riceve il numero di righe già scritte dopo ogni lotto.
+    static Map<Integer, Integer> placeInTx(Connection conn, int userId, Iterable<CartItem> lines,
+                                           String address, String holdOwner, LongConsumer progress) throws SQLException {
+        String batchId = UUID.randomUUID().toString();
+        long written = stage(conn, batchId, lines, progress);
+        if (written == 0) throw new IllegalArgumentException("Lista articoli vuota");
+
+        try (CallableStatement cs = conn.prepareCall("{ call sp_place_order_staged(?, ?, ?) }")) {
+            InventoryHoldDAO.releaseAll(conn, holdOwner);
+            cs.setInt(1, userId);
+            if (address == null || address.isBlank()) cs.setNull(2, Types.VARCHAR);
+            else cs.setString(2, address);
+            cs.setString(3, batchId);
+            return OrderDAO.executeAndReadMapping(cs);
+        }
+    }
+
+    private static long stage(Connection conn, String batchId, Iterable<CartItem> lines,
+                              LongConsumer progress) throws SQLException {
+        long n = 0;
+        int pending = 0;
+        try (PreparedStatement ps = conn.prepareStatement(INSERT_LINE)) {
+            for (CartItem it : lines) {
+                if (it.getQuantity() <= 0) {
+                    throw new IllegalArgumentException("Quantità non valida alla riga " + (n + 1));
+                }
+                ps.setString(1, batchId);
+                ps.setLong(2, n);
+                ps.setLong(3, it.getProductId());
+                ps.setInt(4, it.getShopId());
+                ps.setString(5, it.getSize());
+                ps.setInt(6, it.getQuantity());
+                ps.setBigDecimal(7, BigDecimal.valueOf(it.getUnitPrice()));
+                ps.addBatch();
+                n++;
+
+                if (++pending == BATCH_SIZE) {
+                    ps.executeBatch();
+                    pending = 0;
+                    progress.accept(n);
+                }
+            }
+            if (pending > 0) {
+                ps.executeBatch();
+                progress.accept(n);
+            }
+        }
+        return n;
+    }
+}
@@ -1,12 +1,21 @@
 package org.example.dao;
 
 import org.example.database.DatabaseConnection;
+import org.example.models.OrderStatus;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.stream.Collectors;
 
 public final class SellerDAO {
 
@@ -39,6 +48,44 @@ public final class SellerDAO {
 
     public record SellerShop(int shopId, String shopName) {}
 
+    // Esito del cambio di stato di un ordine in un aggiornamento multiplo
+    public enum StateUpdateResult { UPDATED, UNCHANGED, NOT_ALLOWED, NOT_FOUND }
+
+    public record StateUpdateOutcome(int orderId, OrderStatus previous, StateUpdateResult result) {
+        public boolean updated() { return result == StateUpdateResult.UPDATED; }
+    }
+
+    // Modifica di un ordine nel feed dello shop
+    public record OrderChange(long version, ShopOrderSummary order) {}
+
+    // Avvisi di scorta (tabella stock_alerts); OK = avviso rientrato
+    public enum StockLevel {
+        OK, SCARSO, ESAURITO;
+
+        static StockLevel fromDb(String s) {
+            return valueOf(s.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    public record StockAlert(long version, int productId, String name, String size, int quantity, StockLevel level) {}
+
+    // Statistiche di vendita
+    public record SalesTotals(BigDecimal revenue, int units, int orders) {
+        public BigDecimal averageOrderValue() {
+            return orders == 0 ? BigDecimal.ZERO : revenue.divide(BigDecimal.valueOf(orders), 2, RoundingMode.HALF_UP);
+        }
+    }
+
+    public record SalesBucket(LocalDate period, BigDecimal revenue, int units, int orders) {}
+
+    public record ProductSales(int productId, String name, BigDecimal revenue, int units) {}
+
+    public record SizeSales(String size, int units) {}
+
+    // Fotografia (since = 0) o variazione: nella variazione ci sono solo le righe cambiate, con il loro valore aggiornato
+    public record SalesRollup(long version, SalesTotals totals, List<SalesBucket> daily, List<SalesBucket> weekly,
+                              List<ProductSales> products, List<SizeSales> sizes) {}
+
     public record ProductOption(
             int productId, String name, String brand,
             String sport, String category) {
@@ -102,6 +149,7 @@ public final class SellerDAO {
             cs.setInt(5, qty);
             cs.executeUpdate();
         }
+        DataChangeHooks.stockChanged();
     }
 
     public static void updateCatalogRow(int shopId, int productId, String size, BigDecimal price, int qty) throws SQLException {
@@ -115,6 +163,52 @@ public final class SellerDAO {
             cs.setInt(5, qty);
             cs.executeUpdate();
         }
+        DataChangeHooks.stockChanged();
+    }
+
+    // Modifica massiva del catalogo (prezzi/quantità): un'unica transazione, UPDATE in batch da
+    // CATALOG_BATCH righe. Il prezzo atteso fa da controllo: una riga cambiata nel frattempo non viene
+    // toccata e torna nella lista dei saltati. quantity null = quantità invariata.
+    public record CatalogUpdate(int productId, String size, BigDecimal expectedPrice, BigDecimal price, Integer quantity) {}
+
+    private static final int CATALOG_BATCH = 1000;
+
+    private static final String BULK_UPDATE_CATALOG =
+            "UPDATE product_availability SET price = ?, quantity = COALESCE(?, quantity) " +
+            "WHERE id_shop = ? AND product_id = ? AND size = ? AND price = ?";
+
+    public static List<CatalogUpdate> updateCatalogRows(int shopId, List<CatalogUpdate> updates) throws SQLException {
+        if (updates.isEmpty()) return List.of();
+        List<CatalogUpdate> skipped = new ArrayList<>();
+        try (Connection c = DatabaseConnection.getInstance()) {
+            boolean oldAuto = OrderDAO.beginTx(c);
+            try (PreparedStatement ps = c.prepareStatement(BULK_UPDATE_CATALOG)) {
+                for (int i = 0; i < updates.size(); i += CATALOG_BATCH) {
+                    List<CatalogUpdate> chunk = updates.subList(i, Math.min(updates.size(), i + CATALOG_BATCH));
+                    for (CatalogUpdate u : chunk) {
+                        ps.setBigDecimal(1, u.price());
+                        if (u.quantity() == null) ps.setNull(2, Types.INTEGER); else ps.setInt(2, u.quantity());
+                        ps.setInt(3, shopId);
+                        ps.setInt(4, u.productId());
+                        ps.setString(5, u.size());
+                        ps.setBigDecimal(6, u.expectedPrice());
+                        ps.addBatch();
+                    }
+                    int[] counts = ps.executeBatch();
+                    for (int k = 0; k < counts.length; k++) {
+                        if (counts[k] == 0) skipped.add(chunk.get(k));
+                    }
+                }
+                c.commit();
+            } catch (SQLException ex) {
+                OrderDAO.safeRollback(c);
+                throw ex;
+            } finally {
+                OrderDAO.restoreAutoCommit(c, oldAuto);
+            }
+        }
+        DataChangeHooks.stockChanged();
+        return skipped;
     }
 
     public static void deleteCatalogRow(int shopId, int productId, String size) throws SQLException {
@@ -126,6 +220,7 @@ public final class SellerDAO {
             cs.setString(3, size);
             cs.executeUpdate();
         }
+        DataChangeHooks.stockChanged();
     }
 
     public static List<ProductOption> listAllProductOptions() throws SQLException {
@@ -216,13 +311,235 @@ public final class SellerDAO {
         }
     }
 
-    public static void updateOrderState(int orderId, String newState) throws SQLException {
-        final String call = "{ call sp_seller_update_order_state(?, ?) }";
+    // Cambio di stato di molti ordini: un'unica transazione, una chiamata per lotto di STATE_BATCH ordini.
+    // Le transizioni non ammesse da OrderStatus non vengono applicate e compaiono negli esiti.
+    private static final int STATE_BATCH = 500;
+
+    public static List<StateUpdateOutcome> updateOrderStates(int shopId, Collection<Integer> orderIds, OrderStatus target) throws SQLException {
+        Objects.requireNonNull(target, "target");
+        List<Integer> ids = orderIds.stream().distinct().toList();
+        if (ids.isEmpty()) return List.of();
+
+        EnumSet<OrderStatus> from = OrderStatus.allowedFrom(target);
+        String fromJson = from.stream().map(st -> "\"" + st.toDb() + "\"")
+                .collect(Collectors.joining(",", "[", "]"));
+
+        Map<Integer, StateUpdateOutcome> outcomes = new LinkedHashMap<>();
+        try (Connection c = DatabaseConnection.getInstance()) {
+            boolean oldAuto = OrderDAO.beginTx(c);
+            try (CallableStatement cs = c.prepareCall("{ call sp_seller_update_order_states(?, ?, ?, ?) }")) {
+                for (int i = 0; i < ids.size(); i += STATE_BATCH) {
+                    List<Integer> chunk = ids.subList(i, Math.min(ids.size(), i + STATE_BATCH));
+                    cs.setInt(1, shopId);
+                    cs.setString(2, chunk.toString());
+                    cs.setString(3, fromJson);
+                    cs.setString(4, target.toDb());
+                    try (ResultSet rs = cs.executeQuery()) {
+                        while (rs.next()) {
+                            int id = rs.getInt("id_order");
+                            String prev = rs.getString("prev_state");
+                            outcomes.put(id, outcomeOf(id, prev, target, from));
+                        }
+                    }
+                }
+                c.commit();
+            } catch (SQLException ex) {
+                OrderDAO.safeRollback(c);
+                throw ex;
+            } finally {
+                OrderDAO.restoreAutoCommit(c, oldAuto);
+            }
+        }
+        DataChangeHooks.ordersChanged();
+
+        List<StateUpdateOutcome> out = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            out.add(outcomes.getOrDefault(id, new StateUpdateOutcome(id, null, StateUpdateResult.NOT_FOUND)));
+        }
+        return out;
+    }
+
+    private static StateUpdateOutcome outcomeOf(int orderId, String prevState, OrderStatus target, EnumSet<OrderStatus> from) {
+        if (prevState == null) return new StateUpdateOutcome(orderId, null, StateUpdateResult.NOT_FOUND);
+        OrderStatus prev = OrderStatus.fromDb(prevState);
+        if (prev == target) return new StateUpdateOutcome(orderId, prev, StateUpdateResult.UNCHANGED);
+        if (from.contains(prev)) return new StateUpdateOutcome(orderId, prev, StateUpdateResult.UPDATED);
+        return new StateUpdateOutcome(orderId, prev, StateUpdateResult.NOT_ALLOWED);
+    }
+
+    // Avvisi di scorta
+
+    public static long stockAlertVersion(int shopId) throws SQLException {
+        final String call = "{ call sp_seller_stock_alert_version(?) }";
+        try (Connection c = DatabaseConnection.getInstance();
+             CallableStatement cs = c.prepareCall(call)) {
+            cs.setInt(1, shopId);
+            try (ResultSet rs = cs.executeQuery()) {
+                return rs.next() ? rs.getLong("version") : 0L;
+            }
+        }
+    }
+
+    public static List<StockAlert> listStockAlerts(int shopId) throws SQLException {
+        final String call = "{ call sp_seller_stock_alerts(?) }";
         try (Connection c = DatabaseConnection.getInstance();
              CallableStatement cs = c.prepareCall(call)) {
-            cs.setInt(1, orderId);
-            cs.setString(2, newState);
-            cs.executeUpdate();
+            cs.setInt(1, shopId);
+            return readStockAlerts(cs);
+        }
+    }
+
+    public static List<StockAlert> listStockAlertChanges(int shopId, long sinceVersion, int replaySeconds, int limit) throws SQLException {
+        final String call = "{ call sp_seller_stock_alert_changes(?, ?, ?, ?) }";
+        try (Connection c = DatabaseConnection.getInstance();
+             CallableStatement cs = c.prepareCall(call)) {
+            cs.setInt(1, shopId);
+            cs.setLong(2, sinceVersion);
+            cs.setInt(3, replaySeconds);
+            cs.setInt(4, limit);
+            return readStockAlerts(cs);
+        }
+    }
+
+    private static List<StockAlert> readStockAlerts(CallableStatement cs) throws SQLException {
+        try (ResultSet rs = cs.executeQuery()) {
+            List<StockAlert> out = new ArrayList<>();
+            while (rs.next()) {
+                out.add(new StockAlert(
+                        rs.getLong("version"),
+                        rs.getInt(COL_PRODUCT_ID),
+                        rs.getString(COL_NAME),
+                        rs.getString("size"),
+                        rs.getInt("quantity"),
+                        StockLevel.fromDb(rs.getString("level"))
+                ));
+            }
+            return out;
+        }
+    }
+
+    public static int getStockThreshold(int shopId) throws SQLException {
+        final String call = "{ call sp_seller_get_stock_threshold(?) }";
+        try (Connection c = DatabaseConnection.getInstance();
+             CallableStatement cs = c.prepareCall(call)) {
+            cs.setInt(1, shopId);
+            try (ResultSet rs = cs.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    public static void setStockThreshold(int shopId, int threshold) throws SQLException {
+        final String call = "{ call sp_seller_set_stock_threshold(?, ?) }";
+        try (Connection c = DatabaseConnection.getInstance();
+             CallableStatement cs = c.prepareCall(call)) {
+            cs.setInt(1, shopId);
+            cs.setInt(2, threshold);
+            cs.execute();
+        }
+        DataChangeHooks.stockChanged();
+    }
+
+    // Feed modifiche ordini
+
+    public static long currentOrderVersion(int shopId) throws SQLException {
+        final String call = "{ call sp_seller_order_version(?) }";
+        try (Connection c = DatabaseConnection.getInstance();
+             CallableStatement cs = c.prepareCall(call)) {
+            cs.setInt(1, shopId);
+            try (ResultSet rs = cs.executeQuery()) {
+                return rs.next() ? rs.getLong("version") : 0L;
+            }
+        }
+    }
+
+    public static List<OrderChange> listOrderChanges(int shopId, long sinceVersion, int replaySeconds, int limit) throws SQLException {
+        final String call = "{ call sp_seller_order_changes(?, ?, ?, ?) }";
+        try (Connection c = DatabaseConnection.getInstance();
+             CallableStatement cs = c.prepareCall(call)) {
+            cs.setInt(1, shopId);
+            cs.setLong(2, sinceVersion);
+            cs.setInt(3, replaySeconds);
+            cs.setInt(4, limit);
+            try (ResultSet rs = cs.executeQuery()) {
+                List<OrderChange> out = new ArrayList<>();
+                while (rs.next()) {
+                    out.add(new OrderChange(rs.getLong("version"), new ShopOrderSummary(
+                            rs.getInt("id_order"),
+                            rs.getTimestamp("date_order"),
+                            rs.getString("state_order"),
+                            rs.getBigDecimal("total"),
+                            rs.getString("customer"),
+                            rs.getString("address")
+                    )));
+                }
+                return out;
+            }
+        }
+    }
+
+    // Statistiche di vendita
+
+    public static SalesRollup salesSnapshot(int shopId, int days, int weeks, int top) throws SQLException {
+        return loadSales(shopId, 0L, days, weeks, top);
+    }
+
+    public static SalesRollup salesChangesSince(int shopId, long sinceVersion, int days, int weeks) throws SQLException {
+        return loadSales(shopId, sinceVersion, days, weeks, 0);
+    }
+
+    private static SalesRollup loadSales(int shopId, long since, int days, int weeks, int top) throws SQLException {
+        final String call = "{ call sp_seller_sales(?, ?, ?, ?, ?) }";
+        try (Connection c = DatabaseConnection.getInstance();
+             CallableStatement cs = c.prepareCall(call)) {
+            cs.setInt(1, shopId);
+            cs.setLong(2, since);
+            cs.setInt(3, days);
+            cs.setInt(4, weeks);
+            cs.setInt(5, top);
+
+            if (!cs.execute()) throw new SQLException("sp_seller_sales non ha restituito risultati");
+
+            long version;
+            SalesTotals totals;
+            try (ResultSet rs = cs.getResultSet()) {
+                if (!rs.next()) throw new SQLException("Totali di vendita mancanti");
+                totals = new SalesTotals(rs.getBigDecimal("revenue"), rs.getInt("units"), rs.getInt("orders"));
+                version = rs.getLong("version");
+            }
+
+            List<SalesBucket> daily = readBuckets(nextResultSet(cs));
+            List<SalesBucket> weekly = readBuckets(nextResultSet(cs));
+
+            List<ProductSales> products = new ArrayList<>();
+            try (ResultSet rs = nextResultSet(cs)) {
+                while (rs.next()) {
+                    products.add(new ProductSales(rs.getInt(COL_PRODUCT_ID), rs.getString(COL_NAME),
+                            rs.getBigDecimal("revenue"), rs.getInt("units")));
+                }
+            }
+
+            List<SizeSales> sizes = new ArrayList<>();
+            try (ResultSet rs = nextResultSet(cs)) {
+                while (rs.next()) sizes.add(new SizeSales(rs.getString("size"), rs.getInt("units")));
+            }
+            return new SalesRollup(version, totals, daily, weekly, products, sizes);
+        }
+    }
+
+    private static ResultSet nextResultSet(CallableStatement cs) throws SQLException {
+        if (!cs.getMoreResults()) throw new SQLException("Result set mancante da sp_seller_sales");
+        return cs.getResultSet();
+    }
+
+    private static List<SalesBucket> readBuckets(ResultSet rs) throws SQLException {
+        try (rs) {
+            List<SalesBucket> out = new ArrayList<>();
+            while (rs.next()) {
+                out.add(new SalesBucket(rs.getDate("period").toLocalDate(), rs.getBigDecimal("revenue"),
+                        rs.getInt("units"), rs.getInt("orders")));
+            }
+            return out;
         }
     }
 }
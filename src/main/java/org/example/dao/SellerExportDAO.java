@@ -0,0 +1,98 @@
+package org.example.dao;
+
+import org.example.database.DatabaseConnection;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDate;
+
+// Letture in streaming per l'export del venditore.
+// Result set forward-only con fetch size Integer.MIN_VALUE: il driver MySQL consegna una riga
+// alla volta invece di caricare tutto il risultato; la riga passata al sink è sempre lo stesso array.
+public final class SellerExportDAO {
+
+    private SellerExportDAO() {
+        throw new AssertionError("Utility class, no instances allowed");
+    }
+
+    @FunctionalInterface
+    public interface RowSink {
+        void accept(String[] row) throws IOException;
+    }
+
+    public static final String[] ORDER_COLUMNS = {
+            "id_ordine", "data", "stato", "cliente", "indirizzo",
+            "id_prodotto", "prodotto", "taglia", "quantita", "prezzo_unitario", "totale_riga"
+    };
+
+    public static final String[] CATALOG_COLUMNS = {
+            "id_prodotto", "nome", "sport", "marca", "categoria", "taglia", "prezzo", "quantita"
+    };
+
+    // Ritorna il numero di righe inviate al sink
+    public static long streamOrderLines(int shopId, LocalDate from, LocalDate to, RowSink sink) throws SQLException, IOException {
+        try (Connection c = DatabaseConnection.getInstance();
+             CallableStatement cs = streaming(c, "{ call sp_seller_export_orders(?, ?, ?) }")) {
+            cs.setInt(1, shopId);
+            if (from == null) cs.setNull(2, Types.DATE); else cs.setDate(2, Date.valueOf(from));
+            if (to == null) cs.setNull(3, Types.DATE); else cs.setDate(3, Date.valueOf(to));
+
+            String[] row = new String[ORDER_COLUMNS.length];
+            long n = 0;
+            try (ResultSet rs = cs.executeQuery()) {
+                while (rs.next()) {
+                    int qty = rs.getInt("quantity");
+                    BigDecimal price = rs.getBigDecimal("price");
+                    row[0] = rs.getString("id_order");
+                    Timestamp ts = rs.getTimestamp("date_order");
+                    row[1] = (ts == null) ? null : ts.toLocalDateTime().toString();
+                    row[2] = rs.getString("state_order");
+                    row[3] = rs.getString("customer");
+                    row[4] = rs.getString("address");
+                    row[5] = rs.getString("id_product");
+                    row[6] = rs.getString("product_name");
+                    row[7] = rs.getString("size");
+                    row[8] = Integer.toString(qty);
+                    row[9] = (price == null) ? null : price.toPlainString();
+                    row[10] = (price == null) ? null : price.multiply(BigDecimal.valueOf(qty)).toPlainString();
+                    sink.accept(row);
+                    n++;
+                }
+            }
+            return n;
+        }
+    }
+
+    public static long streamCatalog(int shopId, RowSink sink) throws SQLException, IOException {
+        try (Connection c = DatabaseConnection.getInstance();
+             CallableStatement cs = streaming(c, "{ call sp_seller_export_catalog(?) }")) {
+            cs.setInt(1, shopId);
+
+            String[] row = new String[CATALOG_COLUMNS.length];
+            long n = 0;
+            try (ResultSet rs = cs.executeQuery()) {
+                while (rs.next()) {
+                    BigDecimal price = rs.getBigDecimal("price");
+                    row[0] = rs.getString("product_id");
+                    row[1] = rs.getString("name_p");
+                    row[2] = rs.getString("sport");
+                    row[3] = rs.getString("brand");
+                    row[4] = rs.getString("category");
+                    row[5] = rs.getString("size");
+                    row[6] = (price == null) ? null : price.toPlainString();
+                    row[7] = rs.getString("quantity");
+                    sink.accept(row);
+                    n++;
+                }
+            }
+            return n;
+        }
+    }
+
+    private static CallableStatement streaming(Connection c, String call) throws SQLException {
+        CallableStatement cs = c.prepareCall(call, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        cs.setFetchSize(Integer.MIN_VALUE);
+        return cs;
+    }
+}
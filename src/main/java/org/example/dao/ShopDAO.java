@@ -5,6 +5,9 @@ import org.example.models.Shop;
 
 import java.math.BigDecimal;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,20 +33,54 @@ public final class ShopDAO {
         }
     }
 
-    public static void requestWithdraw(long userId, BigDecimal amount) throws SQLException {
+    // Saldo, totale dei prelievi in attesa e id dell'ultimo movimento del registro
+    public record BalanceSummary(int shopId, BigDecimal balance, BigDecimal pending, long version) {
+        public BigDecimal available() {
+            return balance.subtract(pending);
+        }
+    }
+
+    public enum WithdrawalStatus {
+        IN_ATTESA, COMPLETATO, RIFIUTATO;
+
+        static WithdrawalStatus fromDb(String s) {
+            return valueOf(s.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    public record Withdrawal(long id, BigDecimal amount, WithdrawalStatus status,
+                             Timestamp requestedAt, Timestamp settledAt, String reason) {}
+
+    public record SettledWithdrawal(long id, int shopId, WithdrawalStatus status) {}
+
+    public static BalanceSummary getBalanceSummary(long userId) throws SQLException {
+        final String call = "{ call sp_shop_balance_summary(?) }";
+        try (Connection c = DatabaseConnection.getInstance();
+             CallableStatement cs = c.prepareCall(call)) {
+            cs.setLong(1, userId);
+            try (ResultSet rs = cs.executeQuery()) {
+                if (!rs.next()) return null;
+                return new BalanceSummary(rs.getInt("id_shop"), rs.getBigDecimal("balance"),
+                        rs.getBigDecimal("pending"), rs.getLong("version"));
+            }
+        }
+    }
+
+    // Accoda la richiesta e ritorna subito il suo id; il saldo viene scalato da settleWithdrawals
+    public static long requestWithdraw(long userId, BigDecimal amount) throws SQLException {
         if (amount == null || amount.signum() <= 0) {
             throw new SQLException("Importo non valido");
         }
 
-        // piccolo delay
-        try { Thread.sleep(900); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
-
         final String call = "{ call sp_shop_request_withdraw(?, ?) }";
         try (Connection c = DatabaseConnection.getInstance();
              CallableStatement cs = c.prepareCall(call)) {
             cs.setLong(1, userId);
             cs.setBigDecimal(2, amount);
-            cs.execute();
+            try (ResultSet rs = cs.executeQuery()) {
+                if (!rs.next()) throw new SQLException("Richiesta di prelievo non registrata");
+                return rs.getLong("id_withdrawal");
+            }
         } catch (SQLException e) {
             throw new SQLException(
                     "Errore nella richiesta di prelievo (userId=" + userId + ", amount=" + amount + ")", e
@@ -51,6 +88,41 @@ public final class ShopDAO {
         }
     }
 
+    // Salda fino a limit richieste in attesa (di qualunque negozio) in un'unica transazione
+    public static List<SettledWithdrawal> settleWithdrawals(int limit) throws SQLException {
+        final String call = "{ call sp_shop_settle_withdrawals(?) }";
+        try (Connection c = DatabaseConnection.getInstance();
+             CallableStatement cs = c.prepareCall(call)) {
+            cs.setInt(1, limit);
+            try (ResultSet rs = cs.executeQuery()) {
+                List<SettledWithdrawal> out = new ArrayList<>();
+                while (rs.next()) {
+                    out.add(new SettledWithdrawal(rs.getLong("id_withdrawal"), rs.getInt("id_shop"),
+                            WithdrawalStatus.fromDb(rs.getString("status"))));
+                }
+                return out;
+            }
+        }
+    }
+
+    public static List<Withdrawal> listWithdrawals(long userId, int limit) throws SQLException {
+        final String call = "{ call sp_shop_list_withdrawals(?, ?) }";
+        try (Connection c = DatabaseConnection.getInstance();
+             CallableStatement cs = c.prepareCall(call)) {
+            cs.setLong(1, userId);
+            cs.setInt(2, limit);
+            try (ResultSet rs = cs.executeQuery()) {
+                List<Withdrawal> out = new ArrayList<>();
+                while (rs.next()) {
+                    out.add(new Withdrawal(rs.getLong("id_withdrawal"), rs.getBigDecimal("amount"),
+                            WithdrawalStatus.fromDb(rs.getString("status")),
+                            rs.getTimestamp("requested_at"), rs.getTimestamp("settled_at"), rs.getString("reason")));
+                }
+                return out;
+            }
+        }
+    }
+
     // Restituisce il negozio con via e telefono
     public static Shop getById(long idShop) {
         final String call = "{ call sp_shop_get_by_id(?) }";
@@ -1,6 +1,5 @@
 package org.example.dao;
 
-import javafx.scene.image.Image;
 import org.example.database.DatabaseConnection;
 import org.example.demo.DemoData;
 import org.example.models.Product;
@@ -8,7 +7,6 @@ import org.example.models.User;
 import org.example.util.Session;
 import org.mindrot.jbcrypt.BCrypt;
 
-import java.io.ByteArrayInputStream;
 import java.sql.*;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -358,6 +356,94 @@ public final class UserDAO {
         }
     }
 
+    // Modifica netta di una voce della wishlist (add = true aggiunge, false rimuove)
+    public record WishlistChange(long productId, int idShop, String size, boolean add) {}
+
+    // Modifiche nette accumulate da WishlistWriteBehind, in un'unica transazione: prima lo
+    // svuotamento (se richiesto), poi rimozioni e aggiunte a batch. Se un batch fallisce si ripete
+    // voce per voce (con savepoint, come l'import del catalogo): restituisce le voci rifiutate dal
+    // DB (es. prodotto non più esistente), le altre vengono comunque salvate
+    public static List<WishlistChange> applyWishlistChanges(String username, boolean clearFirst, List<WishlistChange> changes) throws SQLException {
+        if (!clearFirst && changes.isEmpty()) return List.of();
+        try (Connection conn = DatabaseConnection.getInstance()) {
+            boolean oldAuto = OrderDAO.beginTx(conn);
+            try (CallableStatement clear = conn.prepareCall("{ call sp_wishlist_clear(?) }");
+                 CallableStatement remove = conn.prepareCall("{ call sp_wishlist_remove(?, ?, ?, ?) }");
+                 CallableStatement add = conn.prepareCall("{ call sp_wishlist_add(?, ?, ?, ?) }")) {
+                if (clearFirst) {
+                    clear.setString(1, username);
+                    clear.executeUpdate();
+                }
+                List<WishlistChange> rejected = List.of();
+                try {
+                    int removes = 0;
+                    int adds = 0;
+                    for (WishlistChange c : changes) {
+                        CallableStatement cs = c.add() ? add : remove;
+                        bindWishlistChange(cs, username, c);
+                        cs.addBatch();
+                        if (c.add()) adds++; else removes++;
+                    }
+                    if (removes > 0) remove.executeBatch();
+                    if (adds > 0) add.executeBatch();
+                } catch (BatchUpdateException ex) {
+                    remove.clearBatch();
+                    add.clearBatch();
+                    OrderDAO.safeRollback(conn);
+                    if (clearFirst) clear.executeUpdate();
+                    rejected = new ArrayList<>();
+                    for (WishlistChange c : changes) {
+                        CallableStatement cs = c.add() ? add : remove;
+                        Savepoint sp = conn.setSavepoint();
+                        try {
+                            bindWishlistChange(cs, username, c);
+                            cs.executeUpdate();
+                            conn.releaseSavepoint(sp);
+                        } catch (SQLException rowEx) {
+                            conn.rollback(sp);
+                            logger.log(Level.WARNING, rowEx, () -> "Voce della wishlist rifiutata per " + username + ": " + c);
+                            rejected.add(c);
+                        }
+                    }
+                }
+                conn.commit();
+                return rejected;
+            } catch (SQLException ex) {
+                OrderDAO.safeRollback(conn);
+                throw ex;
+            } finally {
+                OrderDAO.restoreAutoCommit(conn, oldAuto);
+            }
+        }
+    }
+
+    private static void bindWishlistChange(CallableStatement cs, String username, WishlistChange c) throws SQLException {
+        cs.setString(1, username);
+        cs.setLong(2, c.productId());
+        cs.setInt(3, c.idShop());
+        cs.setString(4, c.size());
+    }
+
+    // Byte dell'immagine di un prodotto, null se non c'è
+    public static byte[] getProductImage(long productId) throws SQLException {
+        if (Session.isDemo()) {
+            DemoData.ensureLoaded();
+            return DemoData.products().values().stream()
+                    .filter(p -> p.getProductId() == productId && p.getImageData() != null)
+                    .map(Product::getImageData)
+                    .findFirst().orElse(null);
+        }
+
+        final String call = "{ call sp_product_image(?) }";
+        try (Connection conn = DatabaseConnection.getInstance();
+             CallableStatement cs = conn.prepareCall(call)) {
+            cs.setLong(1, productId);
+            try (ResultSet rs = cs.executeQuery()) {
+                return rs.next() ? rs.getBytes("image_data") : null;
+            }
+        }
+    }
+
     // UTIL
     private static Product mapRowToProduct(ResultSet rs) throws SQLException {
         Product p = new Product();
@@ -369,14 +455,7 @@ public final class UserDAO {
         p.setNameShop(rs.getString("name_s"));
         p.setPrice(rs.getDouble("price"));
         p.setSize(rs.getString("p_size"));
-
-        byte[] imgBytes = rs.getBytes("image_data");
-        if (imgBytes != null && imgBytes.length > 0) {
-            Image img = new Image(new ByteArrayInputStream(imgBytes));
-            if (!img.isError()) {
-                p.setImage(img);
-            }
-        }
+        // immagine caricata a parte (getProductImage) solo per le righe visibili
         return p;
     }
 }
@@ -1,8 +1,13 @@
 package org.example.dao.api;
 
 import org.example.models.Product;
+import org.example.models.SkuKey;
+
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public interface ProductDao {
     List<Product> findLatest(int limit) throws SQLException;
@@ -16,6 +21,17 @@ public interface ProductDao {
     double getPriceFor(long productId, int idShop, String size) throws SQLException;
     Integer getStockFor(long productId, int idShop, String size) throws SQLException;
 
+    // Disponibilità di più varianti in una sola lettura; le chiavi assenti valgono 0.
+    // Il default fa una chiamata per chiave: le implementazioni lo sostituiscono con una lettura batch.
+    default Map<SkuKey, Integer> getStockFor(Collection<SkuKey> keys) throws SQLException {
+        Map<SkuKey, Integer> out = new HashMap<>();
+        for (SkuKey k : keys) {
+            Integer q = getStockFor(k.productId(), k.shopId(), k.size());
+            out.put(k, q != null ? q : 0);
+        }
+        return out;
+    }
+
     boolean existsWish(String username, long productId, int shopId, String size) throws SQLException;
     default boolean existsWish(String username, long productId, int shopId) throws SQLException {
         return existsWish(username, productId, shopId, null);
@@ -3,6 +3,7 @@ package org.example.dao.db;
 import org.example.dao.api.ProductDao;
 import org.example.database.DatabaseConnection;
 import org.example.models.Product;
+import org.example.models.SkuKey;
 
 import java.sql.*;
 import java.util.*;
@@ -129,6 +130,44 @@ public class ProductDaoDb implements ProductDao {
         }
     }
 
+    @Override
+    public Map<SkuKey, Integer> getStockFor(Collection<SkuKey> keys) throws SQLException {
+        Map<SkuKey, Integer> out = new HashMap<>();
+        if (keys.isEmpty()) return out;
+        for (SkuKey k : keys) out.put(k, 0);
+
+        // un solo round trip: le chiavi viaggiano come JSON e la SP le espande con JSON_TABLE
+        String call = "{ call sp_get_stock_for_many(?) }";
+        try (Connection conn = DatabaseConnection.getInstance();
+             CallableStatement cs = conn.prepareCall(call)) {
+            cs.setString(1, buildKeysJson(keys));
+            try (ResultSet rs = cs.executeQuery()) {
+                while (rs.next()) {
+                    SkuKey k = new SkuKey(rs.getLong("product_id"), rs.getInt("id_shop"), rs.getString("size"));
+                    out.put(k, rs.getInt("quantity"));
+                }
+            }
+        }
+        return out;
+    }
+
+    private static String buildKeysJson(Collection<SkuKey> keys) {
+        StringBuilder sb = new StringBuilder("[");
+        for (SkuKey k : keys) {
+            if (sb.length() > 1) sb.append(',');
+            sb.append("{\"productId\":").append(k.productId())
+                    .append(",\"shopId\":").append(k.shopId())
+                    .append(",\"size\":").append(jsonEscape(k.size()))
+                    .append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String jsonEscape(String s) {
+        if (s == null) return "null";
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
     @Override
     public boolean existsWish(String username, long productId, int shopId, String size) throws SQLException {
         String call = "{ call sp_exists_wish(?, ?, ?, ?, ?) }";
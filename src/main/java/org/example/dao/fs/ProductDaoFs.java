@@ -4,6 +4,7 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import org.example.dao.api.ProductDao;
 import org.example.dao.fs.model.*;
 import org.example.models.Product;
+import org.example.models.SkuKey;
 
 import java.nio.file.Path;
 import java.time.LocalDateTime;
@@ -184,6 +185,22 @@ public class ProductDaoFs implements ProductDao {
         } finally { store.rw.readLock().unlock(); }
     }
 
+    @Override public Map<SkuKey, Integer> getStockFor(Collection<SkuKey> keys) {
+        Map<SkuKey, Integer> out = new HashMap<>();
+        for (SkuKey k : keys) out.put(k, 0);
+        if (keys.isEmpty()) return out;
+        store.rw.readLock().lock();
+        try {
+            // una sola lettura del file per tutte le chiavi
+            var avail = store.readList(AVAILABILITY, new TypeReference<List<FsAvailability>>() {});
+            for (FsAvailability a : avail) {
+                SkuKey k = new SkuKey(a.productId(), a.idShop(), a.size());
+                if (out.containsKey(k)) out.put(k, a.quantity());
+            }
+            return out;
+        } finally { store.rw.readLock().unlock(); }
+    }
+
     @Override public boolean existsWish(String username, long productId, int shopId, String size) {
         store.rw.readLock().lock();
         try {
@@ -1,9 +1,10 @@
 package org.example.demo;
 
+import org.example.inventory.InventoryEngine;
 import org.example.models.Card;
-import org.example.models.Order;
 import org.example.models.Product;
 import org.example.models.Review;
+import org.example.models.SkuKey;
 
 import java.util.List;
 import java.util.Map;
@@ -21,16 +22,16 @@ public final class DemoData {
     private static final Map<String, Product> PRODUCTS = new ConcurrentHashMap<>();
     private static final Map<Integer, List<Card>> SAVED_CARDS = new ConcurrentHashMap<>();
     private static final Map<String, List<Review>> REVIEWS = new ConcurrentHashMap<>();
-    private static final Map<Integer, List<Order>> ORDERS = new ConcurrentHashMap<>();
-    private static final Map<String, Integer> STOCK = new ConcurrentHashMap<>();
+    private static final DemoOrders ORDERS = new DemoOrders();
+    private static final InventoryEngine INVENTORY = new InventoryEngine();
 
     public static Map<String, User> users() { return USERS; }
     public static Map<String, List<Product>> wishlists() { return WISHLISTS; }
     public static Map<String, Product> products() { return PRODUCTS; }
     public static Map<Integer, List<Card>> savedCards() { return SAVED_CARDS; }
     public static Map<String, List<Review>> reviews() { return REVIEWS; }
-    public static Map<Integer, List<Order>> orders() { return ORDERS; }
-    public static Map<String, Integer> stock() { return STOCK; }
+    public static DemoOrders orders() { return ORDERS; }
+    public static InventoryEngine inventory() { return INVENTORY; }
 
     public record User(Integer id, String username, String passHash, String role, String email, String phone) {}
 
@@ -50,7 +51,7 @@ public final class DemoData {
         PRODUCTS.put(prodKey(1002, 1, "M"),  makeProduct(1002, "Maglia Demo", "Calcio", "BrandY", "Maglie", 39.90, "M"));
 
         for (var p : PRODUCTS.values()) {
-            STOCK.putIfAbsent(stockKey(p.getProductId(), p.getIdShop(), p.getSize()), 5);
+            INVENTORY.seed(SkuKey.of(p), 5);
         }
     }
 
@@ -63,10 +64,6 @@ public final class DemoData {
         return productId + "|" + idShop;
     }
 
-    public static String stockKey(long productId, int shopId, String size) {
-        return productId + "|" + shopId + "|" + (size == null ? "" : size);
-    }
-
     // Helper per ottenere/creare la lista recensioni in demo
     public static List<Review> reviewsOf(long productId, int idShop) {
         String key = reviewKey(productId, idShop);
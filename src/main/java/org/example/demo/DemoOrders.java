@@ -0,0 +1,65 @@
+package org.example.demo;
+
+import org.example.models.OrderDetailLine;
+import org.example.models.OrderStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+// Storico ordini demo: per ogni utente una lista persistente (immutabile, condivisa) con l'ordine
+// più recente in testa. L'append è O(1) (CAS sulla testa) e le letture lavorano su uno snapshot
+// senza copiare nulla: i record non cambiano mai, quindi possono essere condivisi tra thread e UI.
+public final class DemoOrders {
+
+    public record DemoOrder(int id, int userId, LocalDateTime createdAt, OrderStatus status,
+                            List<OrderDetailLine> lines, BigDecimal total) {
+        public DemoOrder {
+            lines = List.copyOf(lines);
+        }
+
+        public DemoOrder(int id, int userId, LocalDateTime createdAt, OrderStatus status, List<OrderDetailLine> lines) {
+            this(id, userId, createdAt, status, lines, lines.stream()
+                    .map(OrderDetailLine::getSubtotal)
+                    .reduce(BigDecimal.ZERO, BigDecimal::add));
+        }
+    }
+
+    private record Node(DemoOrder order, Node next, int size) { }
+
+    private final Map<Integer, AtomicReference<Node>> heads = new ConcurrentHashMap<>();
+
+    public void append(DemoOrder order) {
+        AtomicReference<Node> head = heads.computeIfAbsent(order.userId(), u -> new AtomicReference<>());
+        head.updateAndGet(h -> new Node(order, h, (h == null) ? 1 : h.size() + 1));
+    }
+
+    // Ordini dell'utente dal più recente; lo stream vede lo stato al momento della chiamata
+    public Stream<DemoOrder> newestFirst(int userId) {
+        Node h = head(userId);
+        return Stream.iterate(h, n -> n != null, Node::next).map(Node::order);
+    }
+
+    public Optional<DemoOrder> find(int userId, int orderId) {
+        return newestFirst(userId).filter(o -> o.id() == orderId).findFirst();
+    }
+
+    public int count(int userId) {
+        Node h = head(userId);
+        return (h == null) ? 0 : h.size();
+    }
+
+    public void clear(int userId) {
+        heads.remove(userId);
+    }
+
+    private Node head(int userId) {
+        AtomicReference<Node> ref = heads.get(userId);
+        return (ref == null) ? null : ref.get();
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.export;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+// Compressione del file esportato.
+// zstd passa da commons-compress ma richiede zstd-jni a runtime: se manca non viene proposta.
+public enum Compression {
+    NONE("Nessuna", ""),
+    GZIP("gzip", ".gz"),
+    BZIP2("bzip2", ".bz2"),
+    ZSTD("zstd", ".zst");
+
+    private static final int BUFFER = 64 * 1024;
+
+    private final String label;
+    private final String extension;
+
+    Compression(String label, String extension) {
+        this.label = label;
+        this.extension = extension;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    public boolean available() {
+        return this != ZSTD || ZstdUtils.isZstdCompressionAvailable();
+    }
+
+    public static List<Compression> availableValues() {
+        return Arrays.stream(values()).filter(Compression::available).toList();
+    }
+
+    public OutputStream wrap(OutputStream out) throws IOException {
+        return switch (this) {
+            case NONE  -> out;
+            case GZIP  -> new GZIPOutputStream(out, BUFFER);
+            case BZIP2 -> new BZip2CompressorOutputStream(out);
+            case ZSTD  -> {
+                if (!available()) throw new IOException("Compressione zstd non disponibile (manca zstd-jni)");
+                yield new ZstdCompressorOutputStream(out);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
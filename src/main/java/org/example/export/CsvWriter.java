@@ -0,0 +1,92 @@
+package org.example.export;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Writer CSV in streaming: ogni riga va dritta nel buffer del file (eventualmente compresso),
+// quindi la memoria usata non dipende dal numero di righe.
+// Separatore ';' e BOM UTF-8, come si aspetta Excel con impostazioni italiane.
+public final class CsvWriter implements Closeable {
+
+    private static final char SEP = ';';
+    private static final int BUFFER = 64 * 1024;
+
+    private final Writer out;
+    private final boolean appending;
+    private long rows;
+
+    public CsvWriter(Path file, Compression compression) throws IOException {
+        this(file, compression, false);
+    }
+
+    // In append (solo senza compressione) il BOM non viene riscritto
+    public CsvWriter(Path file, Compression compression, boolean append) throws IOException {
+        boolean appending = append && compression == Compression.NONE && Files.exists(file) && Files.size(file) > 0;
+        OutputStream raw = new BufferedOutputStream(appending
+                ? Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                : Files.newOutputStream(file), BUFFER);
+        try {
+            this.out = new BufferedWriter(new OutputStreamWriter(compression.wrap(raw), StandardCharsets.UTF_8), BUFFER);
+        } catch (IOException ex) {
+            raw.close();
+            throw ex;
+        }
+        if (!appending) out.write('\uFEFF');
+        this.appending = appending;
+    }
+
+    // true se il file esisteva già: l'intestazione non va ripetuta
+    public boolean appending() {
+        return appending;
+    }
+
+    public void writeHeader(String... columns) throws IOException {
+        writeFields(columns);
+    }
+
+    public void writeRow(String... values) throws IOException {
+        writeFields(values);
+        rows++;
+    }
+
+    public long rows() {
+        return rows;
+    }
+
+    private void writeFields(String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) out.write(SEP);
+            writeField(values[i]);
+        }
+        out.write("\r\n");
+    }
+
+    // Virgolette solo se servono (RFC 4180)
+    private void writeField(String v) throws IOException {
+        if (v == null || v.isEmpty()) return;
+        boolean quote = false;
+        for (int i = 0; i < v.length() && !quote; i++) {
+            char c = v.charAt(i);
+            quote = c == SEP || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(v);
+            return;
+        }
+        out.write('"');
+        out.write(v.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
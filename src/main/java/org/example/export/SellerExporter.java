@@ -0,0 +1,72 @@
+package org.example.export;
+
+import org.example.dao.SellerExportDAO;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.function.LongConsumer;
+
+// Export CSV di ordini e catalogo del venditore: righe dal ResultSet direttamente al file.
+// Si scrive su un file temporaneo accanto alla destinazione e lo si rinomina solo a export
+// completato, così un errore a metà non lascia un CSV troncato.
+public final class SellerExporter {
+
+    private SellerExporter() {}
+
+    // ogni quante righe notificare il progresso
+    private static final int PROGRESS_EVERY = 1000;
+
+    public static long exportOrders(int shopId, LocalDate from, LocalDate to, Path target,
+                                    Compression compression, LongConsumer progress) throws IOException, SQLException {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new IllegalArgumentException("La data iniziale è successiva a quella finale");
+        }
+        return write(target, compression, SellerExportDAO.ORDER_COLUMNS, progress,
+                sink -> SellerExportDAO.streamOrderLines(shopId, from, to, sink));
+    }
+
+    public static long exportCatalog(int shopId, Path target, Compression compression,
+                                     LongConsumer progress) throws IOException, SQLException {
+        return write(target, compression, SellerExportDAO.CATALOG_COLUMNS, progress,
+                sink -> SellerExportDAO.streamCatalog(shopId, sink));
+    }
+
+    // Aggiunge l'estensione della compressione se manca
+    public static Path withExtension(Path file, Compression compression) {
+        String name = file.getFileName().toString();
+        if (!name.toLowerCase().endsWith(".csv" + compression.extension()) && !compression.extension().isEmpty()) {
+            return file.resolveSibling(name + compression.extension());
+        }
+        return file;
+    }
+
+    @FunctionalInterface
+    private interface Source {
+        long stream(SellerExportDAO.RowSink sink) throws SQLException, IOException;
+    }
+
+    private static long write(Path target, Compression compression, String[] header,
+                              LongConsumer progress, Source source) throws IOException, SQLException {
+        LongConsumer onProgress = (progress != null) ? progress : n -> { };
+        Path tmp = target.resolveSibling(target.getFileName() + ".part");
+        try {
+            long rows;
+            try (CsvWriter csv = new CsvWriter(tmp, compression)) {
+                csv.writeHeader(header);
+                rows = source.stream(row -> {
+                    csv.writeRow(row);
+                    if (csv.rows() % PROGRESS_EVERY == 0) onProgress.accept(csv.rows());
+                });
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            onProgress.accept(rows);
+            return rows;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package org.example.gateway;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+// Singola richiesta di addebito per chargeAll
+public record ChargeRequest(int userId, BigDecimal amount, Map<String, String> paymentData) {
+}
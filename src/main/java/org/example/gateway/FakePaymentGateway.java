@@ -5,53 +5,104 @@ import java.security.SecureRandom;
 import java.util.Map;
 import java.util.SplittableRandom;
 import java.util.UUID;
-import java.util.function.DoubleSupplier;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+// Gateway finto utilizzabile anche come controparte locale nei test di carico.
+// Simula: latenza con coda lunga (log-normale), limite di richieste contemporanee,
+// rate limit (token bucket), timeout e fallimenti riproducibili a partire da un seed.
+// Nessun lock globale: chiamate concorrenti procedono davvero in parallelo.
 public class FakePaymentGateway implements PaymentGateway {
 
-    private final long simulatedDelayMs;
-    private final double failRate;
-    private final DoubleSupplier rng;
-    private Boolean forceNext = null;
+    // Parametri della simulazione; 0 disattiva la voce corrispondente
+    public record Config(
+            long medianLatencyMs,   // latenza mediana
+            double tailSigma,       // dispersione log-normale: 0 = latenza fissa, 0.5–1 = coda marcata
+            int maxConcurrent,      // richieste in volo contemporaneamente
+            double ratePerSecond,   // richieste al secondo ammesse (burst = 1 secondo)
+            long timeoutMs,         // oltre questa latenza la chiamata fallisce con timeout
+            double failRate,        // probabilità di rifiuto
+            int failEvery,          // ogni N-esima chiamata viene rifiutata
+            Long seed               // null = casuale, altrimenti esiti e latenze riproducibili
+    ) {
+        public static Config fixed(long delayMs, double failRate) {
+            return new Config(delayMs, 0, 0, 0, 0, failRate, 0, null);
+        }
+
+        public Config withSeed(long seed) {
+            return new Config(medianLatencyMs, tailSigma, maxConcurrent, ratePerSecond, timeoutMs, failRate, failEvery, seed);
+        }
+    }
+
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private final Config config;
+    private final Semaphore inFlight;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong nextFreeNanos = new AtomicLong(); // token bucket in forma GCRA
+    private final long baseSeed;
+    private final AtomicReference<Boolean> forceNext = new AtomicReference<>();
 
     public FakePaymentGateway(long simulatedDelayMs, double failRate) {
-        this(simulatedDelayMs, failRate, new SecureRandom()::nextDouble);
+        this(Config.fixed(simulatedDelayMs, failRate));
     }
 
     // Versione deterministica
     public FakePaymentGateway(long simulatedDelayMs, double failRate, long seed) {
-        this(simulatedDelayMs, failRate, new SplittableRandom(seed)::nextDouble);
+        this(Config.fixed(simulatedDelayMs, failRate).withSeed(seed));
     }
 
     // Costruttore principale
-    private FakePaymentGateway(long simulatedDelayMs, double failRate, DoubleSupplier rng) {
-        this.simulatedDelayMs = simulatedDelayMs;
-        this.failRate = failRate;
-        this.rng = rng;
+    public FakePaymentGateway(Config config) {
+        this.config = config;
+        this.inFlight = config.maxConcurrent() > 0 ? new Semaphore(config.maxConcurrent(), true) : null;
+        this.baseSeed = (config.seed() != null) ? config.seed() : new SecureRandom().nextLong();
     }
 
-    public synchronized void forceNext(boolean success) {
-        this.forceNext = success;
+    public void forceNext(boolean success) {
+        forceNext.set(success);
     }
 
     @Override
     public PaymentResult charge(int userId, BigDecimal amount, Map<String, String> paymentData)
             throws PaymentGatewayException {
+        // RNG per chiamata, derivato da seed e numero progressivo: stesso seed => stessa sequenza
+        // di esiti anche se le chiamate arrivano da thread diversi
+        long n = calls.incrementAndGet();
+        SplittableRandom rng = new SplittableRandom(baseSeed + n * GOLDEN);
+
+        checkRateLimit();
+        acquireSlot();
         try {
-            Thread.sleep(simulatedDelayMs);
+            simulateLatency(rng);
+            return decide(n, rng, paymentData);
+        } finally {
+            if (inFlight != null) inFlight.release();
+        }
+    }
+
+    @Override
+    public void voidCharge(String transactionId) throws PaymentGatewayException {
+        if (transactionId == null || transactionId.isBlank()) {
+            throw new PaymentGatewayException("Transazione da annullare non valida");
+        }
+        try {
+            // lo storno costa meno dell'autorizzazione
+            Thread.sleep(config.medianLatencyMs() / 4);
         } catch (InterruptedException ie) {
             Thread.currentThread().interrupt();
-            throw new PaymentGatewayException("Operazione di pagamento interrotta", ie);
+            throw new PaymentGatewayException("Storno interrotto", ie);
         }
+    }
 
-        synchronized (this) {
-            if (forceNext != null) {
-                boolean ok = forceNext;
-                forceNext = null;
-                return ok
-                        ? new PaymentResult(true, "Pagamento forzato OK (sim)", "FAKE-" + UUID.randomUUID(), false)
-                        : new PaymentResult(false, "Pagamento forzato FALLITO (sim)", null, false);
-            }
+    private PaymentResult decide(long n, SplittableRandom rng, Map<String, String> paymentData) {
+        Boolean forced = forceNext.getAndSet(null);
+        if (forced != null) {
+            return forced
+                    ? new PaymentResult(true, "Pagamento forzato OK (sim)", "FAKE-" + UUID.randomUUID(), false)
+                    : new PaymentResult(false, "Pagamento forzato FALLITO (sim)", null, false);
         }
 
         // Validazioni dati carta
@@ -67,12 +118,69 @@ public class FakePaymentGateway implements PaymentGateway {
             return new PaymentResult(false, "3DS required (sim)", null, true);
         }
 
-        // Fallimento casuale in base a failRate (usa RNG iniettato)
-        if (rng.getAsDouble() < failRate) {
+        // Fallimenti: a cadenza fissa e casuali in base a failRate
+        if (config.failEvery() > 0 && n % config.failEvery() == 0) {
+            return new PaymentResult(false, "Transazione rifiutata", null, false);
+        }
+        if (rng.nextDouble() < config.failRate()) {
             return new PaymentResult(false, "Transazione rifiutata", null, false);
         }
 
         String txId = "FAKE-" + UUID.randomUUID();
         return new PaymentResult(true, "Pagamento autorizzato", txId, false);
     }
+
+    // Token bucket senza lock: ogni richiesta sposta in avanti l'istante "libero" di 1/rate;
+    // se finisce oltre la finestra di burst la richiesta viene respinta
+    private void checkRateLimit() throws PaymentGatewayException {
+        if (config.ratePerSecond() <= 0) return;
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / config.ratePerSecond());
+        long burst = TimeUnit.SECONDS.toNanos(1);
+        while (true) {
+            long now = System.nanoTime();
+            long free = nextFreeNanos.get();
+            long next = Math.max(free, now) + interval;
+            if (next - now > burst) {
+                throw new PaymentGatewayException("Troppe richieste al gateway (sim)");
+            }
+            if (nextFreeNanos.compareAndSet(free, next)) return;
+        }
+    }
+
+    private void acquireSlot() throws PaymentGatewayException {
+        if (inFlight == null) return;
+        long wait = config.timeoutMs() > 0 ? config.timeoutMs() : Long.MAX_VALUE;
+        try {
+            if (!inFlight.tryAcquire(wait, TimeUnit.MILLISECONDS)) {
+                throw new PaymentGatewayException("Gateway saturo (sim)");
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new PaymentGatewayException("Operazione di pagamento interrotta", ie);
+        }
+    }
+
+    private void simulateLatency(SplittableRandom rng) throws PaymentGatewayException {
+        long latency = config.medianLatencyMs();
+        if (config.tailSigma() > 0) {
+            latency = Math.round(latency * Math.exp(config.tailSigma() * gaussian(rng)));
+        }
+        boolean timedOut = config.timeoutMs() > 0 && latency > config.timeoutMs();
+        try {
+            Thread.sleep(timedOut ? config.timeoutMs() : latency);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new PaymentGatewayException("Operazione di pagamento interrotta", ie);
+        }
+        if (timedOut) {
+            throw new PaymentGatewayException("Timeout del gateway dopo " + config.timeoutMs() + " ms (sim)");
+        }
+    }
+
+    // Normale standard (Box-Muller)
+    private static double gaussian(SplittableRandom rng) {
+        double u1 = 1.0 - rng.nextDouble();
+        double u2 = rng.nextDouble();
+        return Math.sqrt(-2.0 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+    }
 }
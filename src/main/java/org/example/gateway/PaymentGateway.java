@@ -1,11 +1,52 @@
 package org.example.gateway;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public interface PaymentGateway {
 
     PaymentResult charge(int userId, BigDecimal amount, Map<String,String> paymentData)
             throws PaymentGatewayException;
 
+    // Annulla un'autorizzazione già concessa (compensazione se l'ordine non va a buon fine)
+    void voidCharge(String transactionId) throws PaymentGatewayException;
+
+    // Variante asincrona: di default esegue charge su un virtual thread.
+    // Gli errori arrivano come CompletionException con causa PaymentGatewayException.
+    default CompletableFuture<PaymentResult> chargeAsync(int userId, BigDecimal amount, Map<String,String> paymentData) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return charge(userId, amount, paymentData);
+            } catch (PaymentGatewayException e) {
+                throw new CompletionException(e);
+            }
+        }, Async.EXEC);
+    }
+
+    // Addebiti in blocco, tutti in parallelo; i risultati sono nello stesso ordine delle richieste.
+    // Una richiesta in errore non blocca le altre: il suo esito è un PaymentResult non riuscito.
+    default CompletableFuture<List<PaymentResult>> chargeAll(List<ChargeRequest> requests) {
+        List<CompletableFuture<PaymentResult>> futures = requests.stream()
+                .map(r -> chargeAsync(r.userId(), r.amount(), r.paymentData())
+                        .exceptionally(t -> new PaymentResult(false, errorMessage(t), null, false)))
+                .toList();
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .thenApply(v -> futures.stream().map(CompletableFuture::join).toList());
+    }
+
+    private static String errorMessage(Throwable t) {
+        Throwable c = (t instanceof CompletionException && t.getCause() != null) ? t.getCause() : t;
+        return c.getMessage() != null ? c.getMessage() : c.getClass().getSimpleName();
+    }
+
+    // Executor condiviso per le implementazioni di default
+    final class Async {
+        private Async() {}
+        static final ExecutorService EXEC = Executors.newVirtualThreadPerTaskExecutor();
+    }
 }
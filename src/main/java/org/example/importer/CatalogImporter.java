@@ -0,0 +1,284 @@
+package org.example.importer;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.example.dao.CatalogImportDAO;
+import org.example.dao.SellerDAO;
+import org.example.export.Compression;
+import org.example.export.CsvWriter;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
+
+// Import massivo del catalogo da CSV o JSON (anche .gz/.bz2).
+// Il file viene letto in streaming, validato e scritto a lotti di CHUNK righe, ognuno nella sua
+// transazione. Dopo ogni lotto committato si aggiorna il checkpoint (<file>.checkpoint): se l'import
+// si interrompe, rilanciandolo con resume si riparte dalla prima riga non committata.
+// Le righe scartate finiscono in <file>.errors.csv con il motivo.
+public final class CatalogImporter {
+
+    private CatalogImporter() {}
+
+    static final int CHUNK = Integer.getInteger("catalog.import.chunkSize", 1000);
+
+    // Colonne accettate: le stesse dell'export del catalogo, oppure i nomi inglesi
+    private static final String[] ID_COLS = {"id_prodotto", "product_id"};
+    private static final String[] NAME_COLS = {"nome", "name"};
+    private static final String[] SIZE_COLS = {"taglia", "size"};
+    private static final String[] PRICE_COLS = {"prezzo", "price"};
+    private static final String[] QTY_COLS = {"quantita", "quantity"};
+
+    private static final String[] ERROR_COLUMNS = {"riga", "errore", "id_prodotto", "nome", "taglia", "prezzo", "quantita"};
+
+    private static final int MAX_SIZE_LEN = 10;
+
+    public record ImportReport(long processed, long imported, long rejected, long resumedFrom, Path errorReport) {}
+
+    // Destinazione dei lotti: un lotto scritto va committato prima di tornare; restituisce le righe rifiutate
+    @FunctionalInterface
+    interface ChunkSink {
+        List<CatalogImportDAO.RowError> write(List<CatalogImportDAO.Row> rows) throws SQLException;
+    }
+
+    public static Path checkpointFile(Path input) {
+        return input.resolveSibling(input.getFileName() + ".checkpoint");
+    }
+
+    public static Path errorReportFile(Path input) {
+        return input.resolveSibling(input.getFileName() + ".errors.csv");
+    }
+
+    // Ultima riga committata da un import precedente dello stesso file, 0 se non c'è nulla da riprendere
+    public static long pendingCheckpoint(int shopId, Path input) throws IOException {
+        Properties p = readCheckpoint(input);
+        if (p == null || !matches(p, shopId, input)) return 0;
+        return Long.parseLong(p.getProperty("committed", "0"));
+    }
+
+    public static ImportReport importCatalog(int shopId, Path input, boolean resume,
+                                             LongConsumer progress) throws IOException, SQLException {
+        List<SellerDAO.ProductOption> products = SellerDAO.listAllProductOptions();
+        try (CatalogImportDAO.BatchWriter writer = CatalogImportDAO.openWriter(shopId)) {
+            return importCatalog(shopId, input, resume, progress, products, writer::writeChunk, CHUNK);
+        }
+    }
+
+    static ImportReport importCatalog(int shopId, Path input, boolean resume, LongConsumer progress,
+                                      List<SellerDAO.ProductOption> products, ChunkSink writer,
+                                      int chunkSize) throws IOException, SQLException {
+        LongConsumer onProgress = (progress != null) ? progress : n -> { };
+        Path errors = errorReportFile(input);
+        long skip = resume ? pendingCheckpoint(shopId, input) : 0;
+        if (skip == 0) {
+            Files.deleteIfExists(checkpointFile(input));
+            Files.deleteIfExists(errors);
+        }
+
+        ProductResolver resolver = new ProductResolver(products);
+
+        long processed = 0, imported = 0, rejected = 0, last = skip;
+        List<CatalogImportDAO.Row> chunk = new ArrayList<>(chunkSize);
+        Map<Long, RecordReader.RawRow> raw = new HashMap<>(chunkSize * 2);
+        List<String[]> invalid = new ArrayList<>();
+
+        try (RecordReader reader = open(input);
+             CsvWriter report = new CsvWriter(errors, Compression.NONE, true)) {
+            if (!report.appending()) report.writeHeader(ERROR_COLUMNS);
+
+            RecordReader.RawRow row;
+            while ((row = reader.next()) != null) {
+                if (row.index() <= skip) continue;
+                processed++;
+                last = row.index();
+                try {
+                    chunk.add(parse(row, resolver));
+                    raw.put(row.index(), row);
+                } catch (IllegalArgumentException ex) {
+                    invalid.add(errorRow(row, ex.getMessage()));
+                }
+                if (chunk.size() + invalid.size() >= chunkSize) {
+                    int failed = flush(shopId, input, writer, report, chunk, raw, invalid, last);
+                    imported += chunk.size() - failed;
+                    rejected += invalid.size() + failed;
+                    chunk.clear();
+                    raw.clear();
+                    invalid.clear();
+                    onProgress.accept(processed);
+                }
+            }
+            int failed = flush(shopId, input, writer, report, chunk, raw, invalid, last);
+            imported += chunk.size() - failed;
+            rejected += invalid.size() + failed;
+        }
+
+        onProgress.accept(processed);
+        Files.deleteIfExists(checkpointFile(input));
+        // report vuoto (solo intestazione) se in nessuna esecuzione ci sono stati scarti
+        boolean anyErrors = rejected > 0 || (skip > 0 && countLines(errors) > 1);
+        if (!anyErrors) Files.deleteIfExists(errors);
+        return new ImportReport(processed, imported, rejected, skip, anyErrors ? errors : null);
+    }
+
+    // Ritorna quante righe del lotto sono state rifiutate dal DB
+    private static int flush(int shopId, Path input, ChunkSink writer, CsvWriter report,
+                             List<CatalogImportDAO.Row> chunk, Map<Long, RecordReader.RawRow> raw,
+                             List<String[]> invalid, long last) throws SQLException, IOException {
+        List<CatalogImportDAO.RowError> dbErrors = writer.write(chunk);
+        for (String[] e : invalid) report.writeRow(e);
+        for (CatalogImportDAO.RowError e : dbErrors) report.writeRow(errorRow(raw.get(e.line()), e.message()));
+        report.flush();
+        writeCheckpoint(shopId, input, last);
+        return dbErrors.size();
+    }
+
+    private static CatalogImportDAO.Row parse(RecordReader.RawRow row, ProductResolver resolver) {
+        Map<String, String> f = row.fields();
+        int productId = resolver.resolve(field(f, ID_COLS), field(f, NAME_COLS));
+
+        String size = field(f, SIZE_COLS);
+        if (size == null) throw new IllegalArgumentException("Taglia mancante");
+        if (size.length() > MAX_SIZE_LEN) throw new IllegalArgumentException("Taglia troppo lunga (max " + MAX_SIZE_LEN + ")");
+
+        String priceText = field(f, PRICE_COLS);
+        if (priceText == null) throw new IllegalArgumentException("Prezzo mancante");
+        BigDecimal price;
+        try {
+            price = new BigDecimal(priceText.replace(',', '.'));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Prezzo non valido: " + priceText);
+        }
+        if (price.signum() <= 0) throw new IllegalArgumentException("Il prezzo deve essere positivo");
+        if (price.stripTrailingZeros().scale() > 2) throw new IllegalArgumentException("Prezzo con più di 2 decimali");
+
+        String qtyText = field(f, QTY_COLS);
+        if (qtyText == null) throw new IllegalArgumentException("Quantità mancante");
+        int qty;
+        try {
+            qty = Integer.parseInt(qtyText);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Quantità non valida: " + qtyText);
+        }
+        if (qty < 0) throw new IllegalArgumentException("La quantità non può essere negativa");
+
+        return new CatalogImportDAO.Row(row.index(), productId, size, price, qty);
+    }
+
+    // Primo valore non vuoto tra gli alias della colonna
+    private static String field(Map<String, String> f, String[] names) {
+        for (String n : names) {
+            String v = f.get(n);
+            if (v != null && !v.isBlank()) return v.trim();
+        }
+        return null;
+    }
+
+    private static String[] errorRow(RecordReader.RawRow row, String message) {
+        Map<String, String> f = row.fields();
+        return new String[]{
+                Long.toString(row.index()), message,
+                field(f, ID_COLS), field(f, NAME_COLS), field(f, SIZE_COLS), field(f, PRICE_COLS), field(f, QTY_COLS)
+        };
+    }
+
+    private static RecordReader open(Path input) throws IOException {
+        String name = input.getFileName().toString().toLowerCase(Locale.ROOT);
+        InputStream in = new BufferedInputStream(Files.newInputStream(input), 64 * 1024);
+        try {
+            if (name.endsWith(".gz")) {
+                in = new GZIPInputStream(in, 64 * 1024);
+                name = name.substring(0, name.length() - 3);
+            } else if (name.endsWith(".bz2")) {
+                in = new BZip2CompressorInputStream(in);
+                name = name.substring(0, name.length() - 4);
+            }
+            if (name.endsWith(".json")) return new JsonRecordReader(in);
+            return new CsvRecordReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024));
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    // ---- checkpoint ----
+
+    private static void writeCheckpoint(int shopId, Path input, long committed) throws IOException {
+        Properties p = new Properties();
+        p.setProperty("shop", Integer.toString(shopId));
+        p.setProperty("size", Long.toString(Files.size(input)));
+        p.setProperty("modified", Long.toString(Files.getLastModifiedTime(input).toMillis()));
+        p.setProperty("committed", Long.toString(committed));
+        Path target = checkpointFile(input);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            p.store(w, "Import catalogo");
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Properties readCheckpoint(Path input) throws IOException {
+        Path file = checkpointFile(input);
+        if (!Files.exists(file)) return null;
+        Properties p = new Properties();
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            p.load(r);
+        }
+        return p;
+    }
+
+    // Il checkpoint vale solo per lo stesso negozio e lo stesso file non modificato
+    private static boolean matches(Properties p, int shopId, Path input) throws IOException {
+        return Integer.toString(shopId).equals(p.getProperty("shop"))
+                && Long.toString(Files.size(input)).equals(p.getProperty("size"))
+                && Long.toString(Files.getLastModifiedTime(input).toMillis()).equals(p.getProperty("modified"));
+    }
+
+    private static long countLines(Path file) throws IOException {
+        if (!Files.exists(file)) return 0;
+        try (var lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            return lines.count();
+        }
+    }
+
+    // Risoluzione dei prodotti: una sola chiamata a listAllProductOptions, poi lookup in memoria.
+    // Il nome vale solo se identifica un unico prodotto.
+    private static final class ProductResolver {
+        private static final int AMBIGUOUS = -1;
+
+        private final Set<Integer> ids = new HashSet<>();
+        private final Map<String, Integer> byName = new HashMap<>();
+
+        ProductResolver(List<SellerDAO.ProductOption> options) {
+            for (SellerDAO.ProductOption o : options) {
+                ids.add(o.productId());
+                if (o.name() != null) {
+                    byName.merge(o.name().trim().toLowerCase(Locale.ROOT), o.productId(), (a, b) -> AMBIGUOUS);
+                }
+            }
+        }
+
+        int resolve(String idText, String name) {
+            if (idText != null) {
+                int id;
+                try {
+                    id = Integer.parseInt(idText);
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("Id prodotto non valido: " + idText);
+                }
+                if (!ids.contains(id)) throw new IllegalArgumentException("Prodotto " + id + " inesistente");
+                return id;
+            }
+            if (name == null) throw new IllegalArgumentException("Manca id_prodotto o nome");
+            Integer id = byName.get(name.toLowerCase(Locale.ROOT));
+            if (id == null) throw new IllegalArgumentException("Prodotto \"" + name + "\" inesistente");
+            if (id == AMBIGUOUS) throw new IllegalArgumentException("Nome \"" + name + "\" ambiguo, indicare id_prodotto");
+            return id;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.example.importer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Lettore CSV in streaming (RFC 4180): un record alla volta, campi tra virgolette anche su più righe.
+// Separatore ';' o ',' dedotto dall'intestazione; BOM iniziale ignorato.
+final class CsvRecordReader implements RecordReader {
+
+    private final Reader in;
+    private final String[] header;
+    private final char sep;
+    private final StringBuilder field = new StringBuilder();
+    private long index;
+    private int pushback = -2;
+
+    CsvRecordReader(Reader in) throws IOException {
+        this.in = in;
+        String first = readHeaderLine();
+        this.sep = (first.indexOf(';') >= 0 || first.indexOf(',') < 0) ? ';' : ',';
+        List<String> cols = parseFields(first);
+        this.header = new String[cols.size()];
+        for (int i = 0; i < header.length; i++) {
+            header[i] = cols.get(i).trim().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    @Override
+    public RawRow next() throws IOException {
+        while (true) {
+            List<String> values = readRecord();
+            if (values == null) return null;
+            if (values.size() == 1 && values.get(0).isBlank()) continue; // righe vuote
+            Map<String, String> fields = new HashMap<>(header.length * 2);
+            for (int i = 0; i < header.length && i < values.size(); i++) {
+                fields.put(header[i], values.get(i));
+            }
+            return new RawRow(++index, fields);
+        }
+    }
+
+    private String readHeaderLine() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c = in.read();
+        if (c == '\uFEFF') c = in.read();
+        while (c != -1 && c != '\n') {
+            if (c != '\r') sb.append((char) c);
+            c = in.read();
+        }
+        if (sb.isEmpty()) throw new IOException("File vuoto o senza intestazione");
+        return sb.toString();
+    }
+
+    private List<String> parseFields(String line) {
+        List<String> out = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') { sb.append('"'); i++; }
+                else if (c == '"') quoted = false;
+                else sb.append(c);
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == sep) {
+                out.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        out.add(sb.toString());
+        return out;
+    }
+
+    // null a fine file
+    private List<String> readRecord() throws IOException {
+        int c = read();
+        if (c == -1) return null;
+        List<String> out = new ArrayList<>(header.length);
+        field.setLength(0);
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) throw new IOException("Virgolette non chiuse al record " + (index + 1));
+                if (c == '"') {
+                    int n = read();
+                    if (n == '"') field.append('"');
+                    else { quoted = false; c = n; continue; }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == sep) {
+                out.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == -1) {
+                break;
+            } else if (c == '\r') {
+                int n = read();
+                if (n != '\n') unread(n);
+                break;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+        out.add(field.toString());
+        return out;
+    }
+
+    private int read() throws IOException {
+        if (pushback != -2) {
+            int c = pushback;
+            pushback = -2;
+            return c;
+        }
+        return in.read();
+    }
+
+    private void unread(int c) {
+        pushback = c;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
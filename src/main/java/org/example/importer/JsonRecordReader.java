@@ -0,0 +1,54 @@
+package org.example.importer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Lettore JSON in streaming: il file è un array di oggetti piatti, letti uno alla volta
+// con il parser a token di Jackson (nessun albero dell'intero documento in memoria).
+final class JsonRecordReader implements RecordReader {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private final JsonParser parser;
+    private long index;
+
+    JsonRecordReader(InputStream in) throws IOException {
+        this.parser = FACTORY.createParser(in);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            parser.close();
+            throw new IOException("Il file JSON deve contenere un array di oggetti");
+        }
+    }
+
+    @Override
+    public RawRow next() throws IOException {
+        JsonToken t = parser.nextToken();
+        if (t == null || t == JsonToken.END_ARRAY) return null;
+        if (t != JsonToken.START_OBJECT) {
+            throw new IOException("Elemento " + (index + 1) + ": atteso un oggetto");
+        }
+        Map<String, String> fields = new HashMap<>();
+        while ((t = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            String name = parser.currentName().trim().toLowerCase(Locale.ROOT);
+            t = parser.nextToken();
+            if (t.isScalarValue()) {
+                fields.put(name, (t == JsonToken.VALUE_NULL) ? null : parser.getValueAsString());
+            } else {
+                parser.skipChildren(); // oggetti o array annidati non servono
+            }
+        }
+        return new RawRow(++index, fields);
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
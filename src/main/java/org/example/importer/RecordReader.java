@@ -0,0 +1,15 @@
+package org.example.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+// Sorgente di righe da importare, letta una riga alla volta.
+// index parte da 1 e identifica la riga nel checkpoint e nel report degli errori.
+interface RecordReader extends Closeable {
+
+    record RawRow(long index, Map<String, String> fields) {}
+
+    // null a fine file
+    RawRow next() throws IOException;
+}
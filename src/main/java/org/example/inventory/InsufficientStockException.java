@@ -0,0 +1,26 @@
+package org.example.inventory;
+
+import org.example.models.SkuKey;
+
+// Una riga dell'ordine non è coperta dalla disponibilità: nessuna riga resta prenotata
+public class InsufficientStockException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient SkuKey key;
+    private final int requested;
+    private final int available;
+
+    public InsufficientStockException(SkuKey key, int requested, int available) {
+        super("Stock insufficiente per product=" + key.productId()
+                + ", shop=" + key.shopId() + ", size=" + key.size()
+                + " (richiesto " + requested + ", disponibile " + available + ")");
+        this.key = key;
+        this.requested = requested;
+        this.available = available;
+    }
+
+    public SkuKey getKey() { return key; }
+    public int getRequested() { return requested; }
+    public int getAvailable() { return available; }
+}
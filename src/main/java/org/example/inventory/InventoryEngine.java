@@ -0,0 +1,79 @@
+package org.example.inventory;
+
+import org.example.models.SkuKey;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Disponibilità in memoria con un contatore atomico per variante (SKU).
+// reserve() prenota tutte le righe di un ordine con CAS, senza lock: o passano tutte o nessuna.
+// Le chiavi sono acquisite sempre nello stesso ordine globale, così due ordini sugli stessi SKU
+// non si rubano a vicenda le prime righe all'infinito; in caso di fallimento si restituisce
+// quanto già preso.
+public final class InventoryEngine {
+
+    // ordine globale delle chiavi: prodotto, negozio, taglia (null prima)
+    static final Comparator<SkuKey> KEY_ORDER = Comparator
+            .comparingLong(SkuKey::productId)
+            .thenComparingInt(SkuKey::shopId)
+            .thenComparing(SkuKey::size, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final Map<SkuKey, AtomicInteger> counters = new ConcurrentHashMap<>();
+
+    // Imposta la disponibilità solo se lo SKU non è ancora noto
+    public void seed(SkuKey key, int quantity) {
+        counters.putIfAbsent(key, new AtomicInteger(quantity));
+    }
+
+    public void set(SkuKey key, int quantity) {
+        counters.computeIfAbsent(key, k -> new AtomicInteger()).set(quantity);
+    }
+
+    public int available(SkuKey key) {
+        AtomicInteger c = counters.get(key);
+        return c != null ? c.get() : 0;
+    }
+
+    public Set<SkuKey> keys() {
+        return Collections.unmodifiableSet(counters.keySet());
+    }
+
+    // Prenota atomicamente tutte le quantità richieste (chiavi duplicate già sommate dal chiamante)
+    public void reserve(Map<SkuKey, Integer> need) throws InsufficientStockException {
+        List<SkuKey> ordered = new ArrayList<>(need.keySet());
+        ordered.sort(KEY_ORDER);
+
+        List<SkuKey> taken = new ArrayList<>(ordered.size());
+        for (SkuKey key : ordered) {
+            int qty = need.get(key);
+            if (qty <= 0) continue;
+            int seen = tryTake(key, qty);
+            if (seen >= 0) {
+                // rollback delle righe già prenotate
+                for (SkuKey k : taken) counters.get(k).addAndGet(need.get(k));
+                throw new InsufficientStockException(key, qty, seen);
+            }
+            taken.add(key);
+        }
+    }
+
+    // Restituisce una prenotazione (es. pagamento fallito o ordine annullato)
+    public void release(Map<SkuKey, Integer> reserved) {
+        for (var e : reserved.entrySet()) {
+            if (e.getValue() <= 0) continue;
+            counters.computeIfAbsent(e.getKey(), k -> new AtomicInteger()).addAndGet(e.getValue());
+        }
+    }
+
+    // CAS loop: -1 se preso, altrimenti la disponibilità vista al momento del rifiuto
+    private int tryTake(SkuKey key, int qty) {
+        AtomicInteger c = counters.get(key);
+        if (c == null) return 0;
+        while (true) {
+            int cur = c.get();
+            if (cur < qty) return cur;
+            if (c.compareAndSet(cur, cur - qty)) return -1;
+        }
+    }
+}
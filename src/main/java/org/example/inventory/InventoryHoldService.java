@@ -0,0 +1,284 @@
+package org.example.inventory;
+
+import org.example.dao.InventoryHoldDAO;
+import org.example.demo.DemoData;
+import org.example.models.SkuKey;
+import org.example.util.Session;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Hold di stock presi all'aggiunta al carrello, con scadenza (TTL).
+// - demo: l'hold scala subito i contatori dell'InventoryEngine e all'ordine viene convertito
+//   senza passare di nuovo dalla prenotazione;
+// - DB: l'hold è una riga di inventory_holds che riduce la disponibilità per gli altri carrelli;
+//   l'ordine la cancella nella sua stessa transazione.
+// Un thread daemon consuma una DelayQueue e libera gli hold non rinnovati; un altro rinnova ogni
+// TTL/2 gli hold delle sessioni attive sul carrello (ultima attività entro holds.idle.seconds):
+// quelli delle sessioni inattive o abbandonate scadono e lo stock torna disponibile.
+public final class InventoryHoldService {
+
+    private InventoryHoldService() {}
+
+    private static final Logger logger = Logger.getLogger(InventoryHoldService.class.getName());
+
+    public static final Duration TTL = Duration.ofSeconds(Long.getLong("holds.ttl.seconds", 600));
+    // oltre questa inattività sul carrello gli hold non si rinnovano più
+    private static final Duration IDLE = Duration.ofSeconds(Long.getLong("holds.idle.seconds", 1800));
+
+    private static final class Hold {
+        final boolean demo;
+        int quantity;
+        volatile long expiresAt;
+
+        Hold(boolean demo) { this.demo = demo; }
+    }
+
+    // Voce della coda di scadenza: una sola per hold, ri-accodata se nel frattempo è stato rinnovato
+    private record Expiry(String owner, SkuKey key, long at) implements Delayed {
+        @Override public long getDelay(TimeUnit unit) {
+            return unit.convert(at - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+        @Override public int compareTo(Delayed o) {
+            return Long.compare(at, ((Expiry) o).at);
+        }
+    }
+
+    // owner -> (sku -> hold); le operazioni di uno stesso owner sono serializzate sulla sua mappa
+    private static final Map<String, Map<SkuKey, Hold>> HOLDS = new ConcurrentHashMap<>();
+    private static final DelayQueue<Expiry> EXPIRIES = new DelayQueue<>();
+    private static final AtomicBoolean SWEEPER_STARTED = new AtomicBoolean(false);
+
+    private static final ScheduledExecutorService RENEWER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "inventory-hold-renewal");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final AtomicBoolean RENEWER_STARTED = new AtomicBoolean(false);
+    // owner -> ultima attività sul carrello (hold, rilascio, apertura del carrello)
+    private static final Map<String, Long> LAST_ACTIVITY = new ConcurrentHashMap<>();
+
+    // Token di hold della sessione corrente
+    public static String currentOwner() {
+        return Session.current().getHoldToken();
+    }
+
+    // Segna la sessione come attiva sul carrello (es. carrello aperto): i suoi hold si rinnovano
+    public static void touch(String owner) {
+        if (owner != null) LAST_ACTIVITY.put(owner, System.currentTimeMillis());
+    }
+
+    // Porta l'hold dello SKU a qty (0 = rilascio). Se la disponibilità non basta l'hold resta com'era.
+    public static void hold(String owner, SkuKey key, int qty) throws InsufficientStockException, SQLException {
+        touch(owner);
+        if (qty <= 0) {
+            release(owner, key);
+            return;
+        }
+        boolean demo = Session.isDemo();
+        Map<SkuKey, Hold> mine = HOLDS.computeIfAbsent(owner, o -> new HashMap<>());
+        synchronized (mine) {
+            Hold h = mine.get(key);
+            int current = (h != null) ? h.quantity : 0;
+
+            if (demo) {
+                int delta = qty - current;
+                if (delta > 0) DemoData.inventory().reserve(Map.of(key, delta));
+                else if (delta < 0) DemoData.inventory().release(Map.of(key, -delta));
+            } else {
+                InventoryHoldDAO.HoldOutcome out = InventoryHoldDAO.setHold(owner, key, qty, ttlSeconds());
+                if (!out.ok()) throw new InsufficientStockException(key, qty, out.available());
+            }
+
+            boolean created = (h == null);
+            if (created) {
+                h = new Hold(demo);
+                mine.put(key, h);
+            }
+            h.quantity = qty;
+            h.expiresAt = System.currentTimeMillis() + TTL.toMillis();
+            if (created) schedule(owner, key, h.expiresAt);
+        }
+    }
+
+    public static void release(String owner, SkuKey key) {
+        touch(owner);
+        Map<SkuKey, Hold> mine = HOLDS.get(owner);
+        if (mine == null) return;
+        synchronized (mine) {
+            Hold h = mine.remove(key);
+            if (h != null) free(owner, key, h);
+        }
+    }
+
+    // Rilascia tutti gli hold della sessione (carrello svuotato, logout)
+    public static void releaseAll(String owner) {
+        LAST_ACTIVITY.remove(owner);
+        Map<SkuKey, Hold> mine = HOLDS.get(owner);
+        if (mine == null) return;
+        synchronized (mine) {
+            HOLDS.remove(owner, mine);
+            boolean anyDb = false;
+            for (var e : mine.entrySet()) {
+                if (e.getValue().demo) DemoData.inventory().release(Map.of(e.getKey(), e.getValue().quantity));
+                else anyDb = true;
+            }
+            mine.clear();
+            if (anyDb) {
+                try {
+                    InventoryHoldDAO.releaseAll(owner);
+                } catch (SQLException ex) {
+                    // scadranno da soli
+                    logger.log(Level.WARNING, "Impossibile rilasciare gli hold su DB", ex);
+                }
+            }
+        }
+    }
+
+    // Allunga la scadenza di tutti gli hold della sessione (chiamato dal rinnovo periodico)
+    public static void renewAll(String owner) {
+        Map<SkuKey, Hold> mine = HOLDS.get(owner);
+        if (mine == null) return;
+        boolean anyDb;
+        synchronized (mine) {
+            if (mine.isEmpty()) return;
+            long at = System.currentTimeMillis() + TTL.toMillis();
+            anyDb = false;
+            for (Hold h : mine.values()) {
+                h.expiresAt = at;
+                anyDb |= !h.demo;
+            }
+        }
+        if (anyDb) {
+            try {
+                InventoryHoldDAO.renew(owner, ttlSeconds());
+            } catch (SQLException ex) {
+                logger.log(Level.WARNING, "Impossibile rinnovare gli hold su DB", ex);
+            }
+        }
+    }
+
+    public static int held(String owner, SkuKey key) {
+        Map<SkuKey, Hold> mine = HOLDS.get(owner);
+        if (mine == null) return 0;
+        synchronized (mine) {
+            Hold h = mine.get(key);
+            return h != null ? h.quantity : 0;
+        }
+    }
+
+    // Demo: converte gli hold in decremento definitivo per l'ordine.
+    // Si prenota solo la parte non coperta da hold; l'eventuale eccedenza degli hold torna disponibile.
+    public static void convertDemo(String owner, Map<SkuKey, Integer> need) throws InsufficientStockException {
+        Map<SkuKey, Hold> mine = HOLDS.computeIfAbsent(owner, o -> new HashMap<>());
+        synchronized (mine) {
+            Map<SkuKey, Integer> extra = new HashMap<>();
+            for (var e : need.entrySet()) {
+                Hold h = mine.get(e.getKey());
+                int covered = (h != null && h.demo) ? h.quantity : 0;
+                if (e.getValue() > covered) extra.put(e.getKey(), e.getValue() - covered);
+            }
+            DemoData.inventory().reserve(extra);
+
+            for (var e : need.entrySet()) {
+                Hold h = mine.get(e.getKey());
+                if (h == null || !h.demo) continue;
+                mine.remove(e.getKey());
+                int surplus = h.quantity - e.getValue();
+                if (surplus > 0) DemoData.inventory().release(Map.of(e.getKey(), surplus));
+            }
+        }
+    }
+
+    // DB: dopo il commit dell'ordine gli hold sono già stati cancellati nella stessa transazione
+    public static void forgetDb(String owner) {
+        Map<SkuKey, Hold> mine = HOLDS.get(owner);
+        if (mine == null) return;
+        synchronized (mine) {
+            mine.values().removeIf(h -> !h.demo);
+        }
+    }
+
+    private static void free(String owner, SkuKey key, Hold h) {
+        if (h.demo) {
+            DemoData.inventory().release(Map.of(key, h.quantity));
+            return;
+        }
+        try {
+            InventoryHoldDAO.release(owner, key);
+        } catch (SQLException ex) {
+            // la riga ha comunque una scadenza: verrà ignorata dalla disponibilità
+            logger.log(Level.WARNING, ex, () -> "Impossibile rilasciare l'hold su DB per " + key);
+        }
+    }
+
+    private static int ttlSeconds() {
+        return (int) TTL.toSeconds();
+    }
+
+    private static void schedule(String owner, SkuKey key, long at) {
+        EXPIRIES.add(new Expiry(owner, key, at));
+        if (SWEEPER_STARTED.compareAndSet(false, true)) {
+            Thread t = new Thread(InventoryHoldService::sweep, "inventory-hold-sweeper");
+            t.setDaemon(true);
+            t.start();
+        }
+        if (RENEWER_STARTED.compareAndSet(false, true)) {
+            long period = TTL.toMillis() / 2;
+            RENEWER.scheduleWithFixedDelay(InventoryHoldService::renewActive, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Rinnova solo le sessioni attive di recente; le altre si lasciano scadere (sweeper)
+    private static void renewActive() {
+        long idleSince = System.currentTimeMillis() - IDLE.toMillis();
+        LAST_ACTIVITY.values().removeIf(at -> at < idleSince);
+        for (String owner : LAST_ACTIVITY.keySet()) {
+            if (!HOLDS.containsKey(owner)) continue;
+            try {
+                renewAll(owner);
+            } catch (RuntimeException ex) {
+                logger.log(Level.WARNING, "Errore nel rinnovo degli hold", ex);
+            }
+        }
+    }
+
+    private static void sweep() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                expire(EXPIRIES.take());
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException ex) {
+                logger.log(Level.WARNING, "Errore nello sweeper degli hold", ex);
+            }
+        }
+    }
+
+    private static void expire(Expiry e) {
+        Map<SkuKey, Hold> mine = HOLDS.get(e.owner());
+        if (mine == null) return;
+        synchronized (mine) {
+            Hold h = mine.get(e.key());
+            if (h == null) return; // già rilasciato o convertito
+            if (h.expiresAt > System.currentTimeMillis()) {
+                // rinnovato nel frattempo: torna in coda con la nuova scadenza
+                EXPIRIES.add(new Expiry(e.owner(), e.key(), h.expiresAt));
+                return;
+            }
+            mine.remove(e.key());
+            logger.log(Level.FINE, () -> "Hold scaduto per " + e.key());
+            free(e.owner(), e.key(), h);
+        }
+    }
+}
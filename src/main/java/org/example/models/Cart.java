@@ -0,0 +1,122 @@
+package org.example.models;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.function.Consumer;
+
+// Carrello a quantità: una riga per (prodotto, negozio, taglia) con contatore intero.
+// Totale e numero di pezzi sono tenuti aggiornati ad ogni modifica (niente ricalcolo O(n)).
+// Va usato dal thread FX, come il resto della sessione.
+public final class Cart {
+
+    public enum ChangeType { ADDED, UPDATED, REMOVED, CLEARED }
+
+    // key è null per CLEARED; quantity è la nuova quantità della riga (0 se rimossa)
+    public record Change(ChangeType type, SkuKey key, int quantity) { }
+
+    public static final class Line {
+        private final SkuKey key;
+        private final Product product; // una sola copia per riga, non una per pezzo
+        private final BigDecimal unitPrice;
+        private int quantity;
+
+        private Line(SkuKey key, Product product, int quantity) {
+            this.key = key;
+            this.product = product;
+            this.unitPrice = BigDecimal.valueOf(product.getPrice());
+            this.quantity = quantity;
+        }
+
+        public SkuKey getKey() { return key; }
+        public Product getProduct() { return product; }
+        public BigDecimal getUnitPrice() { return unitPrice; }
+        public int getQuantity() { return quantity; }
+        public BigDecimal getSubtotal() { return unitPrice.multiply(BigDecimal.valueOf(quantity)); }
+    }
+
+    private final Map<SkuKey, Line> lines = new LinkedHashMap<>();
+    private final List<Consumer<Change>> listeners = new ArrayList<>();
+    private BigDecimal total = BigDecimal.ZERO;
+    private int unitCount;
+
+    // Aggiunge qty pezzi del prodotto; il prodotto viene copiato solo alla creazione della riga
+    public void add(Product p, int qty) {
+        if (p == null || qty <= 0) return;
+        SkuKey key = SkuKey.of(p);
+        Line line = lines.get(key);
+        if (line == null) {
+            line = new Line(key, Product.copyOf(p), qty);
+            lines.put(key, line);
+            applyDelta(line, qty);
+            fire(new Change(ChangeType.ADDED, key, qty));
+        } else {
+            line.quantity += qty;
+            applyDelta(line, qty);
+            fire(new Change(ChangeType.UPDATED, key, line.quantity));
+        }
+    }
+
+    public void increment(SkuKey key) {
+        Line line = lines.get(key);
+        if (line == null) return;
+        line.quantity++;
+        applyDelta(line, 1);
+        fire(new Change(ChangeType.UPDATED, key, line.quantity));
+    }
+
+    // Toglie un pezzo; all'ultimo la riga sparisce
+    public void decrement(SkuKey key) {
+        Line line = lines.get(key);
+        if (line == null) return;
+        if (line.quantity <= 1) {
+            removeLine(key);
+            return;
+        }
+        line.quantity--;
+        applyDelta(line, -1);
+        fire(new Change(ChangeType.UPDATED, key, line.quantity));
+    }
+
+    public void removeLine(SkuKey key) {
+        Line line = lines.remove(key);
+        if (line == null) return;
+        applyDelta(line, -line.quantity);
+        fire(new Change(ChangeType.REMOVED, key, 0));
+    }
+
+    public void clear() {
+        if (lines.isEmpty()) return;
+        lines.clear();
+        total = BigDecimal.ZERO;
+        unitCount = 0;
+        fire(new Change(ChangeType.CLEARED, null, 0));
+    }
+
+    private void applyDelta(Line line, int delta) {
+        total = total.add(line.unitPrice.multiply(BigDecimal.valueOf(delta)));
+        unitCount += delta;
+    }
+
+    public Line getLine(SkuKey key) { return lines.get(key); }
+
+    public int getQuantity(SkuKey key) {
+        Line line = lines.get(key);
+        return line != null ? line.quantity : 0;
+    }
+
+    // Vista in sola lettura, in ordine di inserimento
+    public Collection<Line> getLines() { return Collections.unmodifiableCollection(lines.values()); }
+
+    public BigDecimal getTotal() { return total; }
+    public int getUnitCount() { return unitCount; }
+    public int getLineCount() { return lines.size(); }
+    public boolean isEmpty() { return lines.isEmpty(); }
+
+    public void addListener(Consumer<Change> l) { listeners.add(l); }
+    public void removeListener(Consumer<Change> l) { listeners.remove(l); }
+
+    private void fire(Change change) {
+        // copia: un listener può deregistrarsi durante la notifica
+        for (Consumer<Change> l : List.copyOf(listeners)) l.accept(change);
+    }
+}
@@ -0,0 +1,12 @@
+package org.example.models;
+
+import java.math.BigDecimal;
+
+// Riga di dettaglio di un ordine in sola lettura (cronologia acquisti, storico demo)
+public record OrderDetailLine(int orderId, long productId, int shopId, String productName, String shopName,
+                              String size, int quantity, BigDecimal unitPrice) {
+
+    public BigDecimal getSubtotal() {
+        return (unitPrice == null) ? BigDecimal.ZERO : unitPrice.multiply(BigDecimal.valueOf(quantity));
+    }
+}
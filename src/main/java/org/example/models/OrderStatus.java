@@ -1,5 +1,7 @@
 package org.example.models;
 
+import java.util.EnumSet;
+
 public enum OrderStatus {
     IN_ELABORAZIONE, SPEDITO, CONSEGNATO, ANNULLATO;
 
@@ -13,6 +15,24 @@ public enum OrderStatus {
         };
     }
 
+    // Transizioni ammesse: in elaborazione -> spedito/annullato, spedito -> consegnato; consegnato e annullato sono finali
+    public boolean canTransitionTo(OrderStatus next) {
+        return switch (this) {
+            case IN_ELABORAZIONE -> next == SPEDITO || next == ANNULLATO;
+            case SPEDITO         -> next == CONSEGNATO;
+            case CONSEGNATO, ANNULLATO -> false;
+        };
+    }
+
+    // Stati da cui si può arrivare a target
+    public static EnumSet<OrderStatus> allowedFrom(OrderStatus target) {
+        EnumSet<OrderStatus> out = EnumSet.noneOf(OrderStatus.class);
+        for (OrderStatus s : values()) {
+            if (s.canTransitionTo(target)) out.add(s);
+        }
+        return out;
+    }
+
     public String toDb() {
         return switch (this) {
             case IN_ELABORAZIONE -> "in elaborazione";
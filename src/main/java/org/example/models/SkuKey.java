@@ -0,0 +1,13 @@
+package org.example.models;
+
+// Identifica una variante vendibile: prodotto + negozio + taglia (size può essere null)
+public record SkuKey(long productId, int shopId, String size) {
+
+    public static SkuKey of(Product p) {
+        return new SkuKey(p.getProductId(), p.getIdShop(), p.getSize());
+    }
+
+    public static SkuKey of(CartItem ci) {
+        return new SkuKey(ci.getProductId(), ci.getShopId(), ci.getSize());
+    }
+}
@@ -0,0 +1,121 @@
+package org.example.services;
+
+import org.example.dao.SellerDAO;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// Modifica massiva del catalogo: una regola (variazione di prezzo, arrotondamento, quantità)
+// applicata a un insieme di righe. preview calcola in memoria cosa cambierebbe, apply scrive
+// tutte le modifiche dell'anteprima in un'unica transazione.
+public final class CatalogBulkEdit {
+
+    private CatalogBulkEdit() {}
+
+    public enum PriceChange {
+        NONE("Prezzo invariato"),
+        PERCENT("Variazione %"),
+        AMOUNT("Variazione in €");
+
+        private final String label;
+
+        PriceChange(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    public enum Rounding {
+        CENT("Al centesimo"),
+        TEN_CENTS("Ai 10 centesimi"),
+        WHOLE("All'euro"),
+        NINETY_NINE("Finale ,99");
+
+        private final String label;
+
+        Rounding(String label) {
+            this.label = label;
+        }
+
+        BigDecimal apply(BigDecimal p) {
+            return switch (this) {
+                case CENT -> p.setScale(2, RoundingMode.HALF_UP);
+                case TEN_CENTS -> p.setScale(1, RoundingMode.HALF_UP).setScale(2, RoundingMode.UNNECESSARY);
+                case WHOLE -> p.setScale(0, RoundingMode.HALF_UP).setScale(2, RoundingMode.UNNECESSARY);
+                // euro intero più vicino meno un centesimo (12,40 -> 11,99; 12,60 -> 12,99)
+                case NINETY_NINE -> p.setScale(0, RoundingMode.HALF_UP).subtract(new BigDecimal("0.01"));
+            };
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    // amount: percentuale (es. -20) o importo in euro, secondo priceChange; setQuantity null = invariata
+    public record Rule(PriceChange priceChange, BigDecimal amount, Rounding rounding, Integer setQuantity) {
+        public Rule {
+            Objects.requireNonNull(priceChange, "priceChange");
+            Objects.requireNonNull(rounding, "rounding");
+            if (priceChange != PriceChange.NONE) Objects.requireNonNull(amount, "amount");
+            if (setQuantity != null && setQuantity < 0) throw new IllegalArgumentException("La quantità non può essere negativa");
+        }
+
+        BigDecimal newPrice(BigDecimal old) {
+            BigDecimal base = (old == null) ? BigDecimal.ZERO : old;
+            return switch (priceChange) {
+                case NONE -> base;
+                case PERCENT -> rounding.apply(base.multiply(BigDecimal.ONE.add(amount.movePointLeft(2))));
+                case AMOUNT -> rounding.apply(base.add(amount));
+            };
+        }
+    }
+
+    public record Change(SellerDAO.CatalogRow row, BigDecimal newPrice, int newQuantity) {
+        public boolean priceChanged() {
+            return row.price() == null || row.price().compareTo(newPrice) != 0;
+        }
+    }
+
+    // changes: righe che cambiano davvero; invalid: righe il cui prezzo scenderebbe a zero o sotto
+    public record Preview(List<Change> changes, List<SellerDAO.CatalogRow> invalid, Rule rule) {}
+
+    public record Result(int updated, List<SellerDAO.CatalogUpdate> skipped) {}
+
+    public static Preview preview(List<SellerDAO.CatalogRow> rows, Rule rule) {
+        List<Change> changes = new ArrayList<>();
+        List<SellerDAO.CatalogRow> invalid = new ArrayList<>();
+        for (var r : rows) {
+            BigDecimal price = rule.newPrice(r.price());
+            if (price.signum() <= 0) {
+                invalid.add(r);
+                continue;
+            }
+            int qty = (rule.setQuantity() != null) ? rule.setQuantity() : r.quantity();
+            Change c = new Change(r, price, qty);
+            if (c.priceChanged() || qty != r.quantity()) changes.add(c);
+        }
+        return new Preview(changes, invalid, rule);
+    }
+
+    // Da chiamare fuori dal thread FX
+    public static Result apply(int shopId, Preview preview) throws SQLException {
+        Integer qty = preview.rule().setQuantity();
+        List<SellerDAO.CatalogUpdate> updates = new ArrayList<>(preview.changes().size());
+        for (Change c : preview.changes()) {
+            var r = c.row();
+            updates.add(new SellerDAO.CatalogUpdate(r.productId(), r.size(), r.price(), c.newPrice(), qty));
+        }
+        List<SellerDAO.CatalogUpdate> skipped = SellerDAO.updateCatalogRows(shopId, updates);
+        return new Result(updates.size() - skipped.size(), skipped);
+    }
+}
@@ -0,0 +1,164 @@
+package org.example.services;
+
+import org.example.dao.OrderDAO;
+import org.example.gateway.PaymentGateway;
+import org.example.gateway.PaymentGatewayException;
+import org.example.gateway.PaymentResult;
+import org.example.inventory.InsufficientStockException;
+import org.example.inventory.InventoryHoldService;
+import org.example.models.CartItem;
+import org.example.models.SkuKey;
+import org.example.util.SessionContext;
+import org.example.util.SessionRegistry;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Checkout in due fasi:
+// 1) autorizzazione del pagamento e prenotazione dello stock partono insieme;
+// 2) l'ordine viene scritto solo se entrambe riescono.
+// Se una delle due fallisce si compensa l'altra: storno dell'autorizzazione o ripristino degli hold.
+// La latenza è circa max(pagamento, DB) invece della somma.
+public final class CheckoutService {
+
+    private static final Logger logger = Logger.getLogger(CheckoutService.class.getName());
+
+    private static final ExecutorService EXEC = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final PaymentGateway gateway;
+
+    public CheckoutService(PaymentGateway gateway) {
+        this.gateway = Objects.requireNonNull(gateway, "gateway");
+    }
+
+    // Quantità tenute prima della prenotazione, per poterle ripristinare
+    private record Reservation(String owner, Map<SkuKey, Integer> previous) { }
+
+    // Esito di una fase: valore oppure errore, mai entrambi
+    private record Outcome<T>(T value, Throwable error) {
+        boolean ok() { return error == null; }
+    }
+
+    private record Phases(Outcome<PaymentResult> pay, Outcome<Reservation> stock) { }
+
+    public CompletableFuture<OrderDAO.CreationResult> checkout(int userId, List<CartItem> items, BigDecimal total,
+                                                               Map<String, String> paymentData, String address) {
+        // le fasi girano su altri thread ma devono vedere la sessione del chiamante (hold, modalità demo)
+        SessionContext ctx = SessionRegistry.current();
+        String owner = ctx.getHoldToken();
+
+        CompletableFuture<Outcome<PaymentResult>> pay =
+                gateway.chargeAsync(userId, total, paymentData).handle(CheckoutService::authorized);
+        CompletableFuture<Outcome<Reservation>> stock =
+                attempt(ctx, () -> reserve(owner, items));
+
+        // si aspettano entrambe le fasi, anche se una fallisce: serve sapere cosa compensare
+        return pay.thenCombine(stock, Phases::new)
+                .thenApplyAsync(ph -> call(ctx, () -> complete(userId, items, address, ph.pay(), ph.stock())), EXEC);
+    }
+
+    private OrderDAO.CreationResult complete(int userId, List<CartItem> items, String address,
+                                             Outcome<PaymentResult> pay, Outcome<Reservation> stock) throws Exception {
+        if (!pay.ok()) {
+            if (stock.ok()) restore(stock.value());
+            throw asException(pay.error());
+        }
+        if (!stock.ok()) {
+            voidQuietly(pay.value());
+            throw asException(stock.error());
+        }
+
+        try {
+            OrderDAO.CreationResult res = OrderDAO.placeOrderWithStockDecrement(userId, items, address);
+            logger.log(Level.INFO, "Payment txId: {0}", pay.value().transactionId());
+            return res;
+        } catch (Exception ex) {
+            // ordine non scritto: il cliente non deve restare addebitato
+            voidQuietly(pay.value());
+            restore(stock.value());
+            throw ex;
+        }
+    }
+
+    // Autorizzazione riuscita solo se il gateway risponde e accetta
+    private static Outcome<PaymentResult> authorized(PaymentResult res, Throwable err) {
+        if (err != null) {
+            return new Outcome<>(null, (err instanceof CompletionException && err.getCause() != null) ? err.getCause() : err);
+        }
+        if (!res.success()) {
+            return new Outcome<>(null, new IllegalStateException("Pagamento rifiutato: " + res.message()));
+        }
+        return new Outcome<>(res, null);
+    }
+
+    // Porta gli hold del carrello alle quantità dell'ordine (verifica + prenotazione)
+    private static Reservation reserve(String owner, List<CartItem> items) throws SQLException {
+        Map<SkuKey, Integer> need = new LinkedHashMap<>();
+        for (CartItem it : items) need.merge(SkuKey.of(it), it.getQuantity(), Integer::sum);
+
+        Map<SkuKey, Integer> previous = new LinkedHashMap<>();
+        try {
+            for (var e : need.entrySet()) {
+                int held = InventoryHoldService.held(owner, e.getKey());
+                if (held >= e.getValue()) continue;
+                InventoryHoldService.hold(owner, e.getKey(), e.getValue());
+                previous.put(e.getKey(), held);
+            }
+        } catch (InsufficientStockException ex) {
+            restore(new Reservation(owner, previous));
+            throw new SQLException(ex.getMessage(), ex);
+        } catch (SQLException ex) {
+            restore(new Reservation(owner, previous));
+            throw ex;
+        }
+        return new Reservation(owner, previous);
+    }
+
+    private static void restore(Reservation r) {
+        for (var e : r.previous().entrySet()) {
+            try {
+                InventoryHoldService.hold(r.owner(), e.getKey(), e.getValue());
+            } catch (Exception ex) {
+                // in ogni caso l'hold scade da solo
+                logger.log(Level.WARNING, ex, () -> "Impossibile ripristinare l'hold per " + e.getKey());
+            }
+        }
+    }
+
+    private void voidQuietly(PaymentResult pay) {
+        try {
+            gateway.voidCharge(pay.transactionId());
+            logger.log(Level.INFO, "Autorizzazione stornata: {0}", pay.transactionId());
+        } catch (PaymentGatewayException ex) {
+            logger.log(Level.SEVERE, "Storno non riuscito per " + pay.transactionId(), ex);
+        }
+    }
+
+    private static <T> CompletableFuture<Outcome<T>> attempt(SessionContext ctx, Callable<T> body) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return new Outcome<>(SessionRegistry.callWith(ctx, body), null);
+            } catch (Exception ex) {
+                return new Outcome<>(null, ex);
+            }
+        }, EXEC);
+    }
+
+    private static <T> T call(SessionContext ctx, Callable<T> body) {
+        try {
+            return SessionRegistry.callWith(ctx, body);
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    private static Exception asException(Throwable t) {
+        return (t instanceof Exception ex) ? ex : new ExecutionException(t);
+    }
+}
@@ -0,0 +1,108 @@
+package org.example.services;
+
+import org.example.dao.DataChangeHooks;
+import org.example.dao.SellerDAO;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Feed delle modifiche agli ordini di uno shop (tabella order_changes, versione crescente).
+// Ogni sottoscrizione legge solo le righe con versione > ultima vista e consegna al listener
+// gli ordini cambiati (nuovi o con stato diverso), non l'intera lista.
+// Il polling è leggero (indice per shop/versione); nudge() lo anticipa quando la modifica
+// nasce in questo stesso processo (nuovo ordine, cambio di stato).
+public final class OrderChangeFeed implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(OrderChangeFeed.class.getName());
+
+    private static final long POLL_MS = Long.getLong("orders.feed.pollMs", 1000);
+    // finestra riletta a ogni giro per le transazioni che committano fuori ordine
+    private static final int REPLAY_SECONDS = Integer.getInteger("orders.feed.replaySeconds", 5);
+    private static final int MAX_PER_POLL = 500;
+
+    private static final ScheduledExecutorService POLLER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "order-change-feed");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final Set<OrderChangeFeed> ACTIVE = ConcurrentHashMap.newKeySet();
+
+    static {
+        // scritture di questo processo (DAO): giro immediato
+        DataChangeHooks.onOrdersChanged(OrderChangeFeed::nudge);
+    }
+
+    private final int shopId;
+    private final Consumer<List<SellerDAO.ShopOrderSummary>> listener;
+    private final ScheduledFuture<?> task;
+    // toccati solo dal thread del poller
+    private long version;
+    private Map<Integer, Long> lastSeen = Map.of();
+
+    private OrderChangeFeed(int shopId, long fromVersion, Consumer<List<SellerDAO.ShopOrderSummary>> listener) {
+        this.shopId = shopId;
+        this.version = fromVersion;
+        this.listener = listener;
+        this.task = POLLER.scheduleWithFixedDelay(this::poll, POLL_MS, POLL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Avvia il feed a partire da fromVersion; il listener riceve gli ordini cambiati (chiamato dal thread del feed)
+    public static OrderChangeFeed subscribe(int shopId, long fromVersion, Consumer<List<SellerDAO.ShopOrderSummary>> listener) {
+        OrderChangeFeed feed = new OrderChangeFeed(shopId, fromVersion, listener);
+        ACTIVE.add(feed);
+        return feed;
+    }
+
+    // Richiede un giro di polling immediato su tutti i feed attivi
+    public static void nudge() {
+        for (OrderChangeFeed f : ACTIVE) {
+            try {
+                POLLER.execute(f::poll);
+            } catch (RejectedExecutionException ignore) {
+                // poller fermo: nessun feed da aggiornare
+            }
+        }
+    }
+
+    private void poll() {
+        if (task.isCancelled()) return;
+        try {
+            long since = version;
+            List<SellerDAO.OrderChange> changes = SellerDAO.listOrderChanges(shopId, since, REPLAY_SECONDS, MAX_PER_POLL);
+            if (changes.isEmpty()) return;
+
+            // la finestra di replay ripropone righe già consegnate: si scartano quelle con la stessa versione
+            List<SellerDAO.ShopOrderSummary> delta = new ArrayList<>();
+            Map<Integer, Long> seen = new HashMap<>();
+            int fresh = 0;
+            for (SellerDAO.OrderChange c : changes) {
+                int orderId = c.order().orderId();
+                seen.put(orderId, c.version());
+                if (c.version() > since) fresh++;
+                if (!Long.valueOf(c.version()).equals(lastSeen.get(orderId))) delta.add(c.order());
+                version = Math.max(version, c.version());
+            }
+            lastSeen = seen;
+
+            if (!delta.isEmpty()) listener.accept(delta);
+            // lotto pieno: altre righe nuove in coda, si prosegue subito
+            if (fresh == MAX_PER_POLL) POLLER.execute(this::poll);
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Polling del feed ordini non riuscito", ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        ACTIVE.remove(this);
+        task.cancel(false);
+    }
+}
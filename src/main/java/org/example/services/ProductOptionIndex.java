@@ -0,0 +1,156 @@
+package org.example.services;
+
+import org.example.dao.SellerDAO;
+
+import java.sql.SQLException;
+import java.util.*;
+
+// Indice locale dei prodotti per il typeahead del venditore.
+// Dizionario ordinato dei token (nome, marca, sport, categoria) con posting list di posizioni:
+// ogni token della ricerca è un prefisso, si trova l'intervallo di termini con una ricerca binaria
+// e si intersecano le posting list. I candidati sono ordinati per qualità del match.
+// L'indice è immutabile; quello condiviso viene ricostruito da listAllProductOptions quando è
+// più vecchio di products.index.refreshMs (default 5 minuti).
+public final class ProductOptionIndex {
+
+    private static final long REFRESH_MS = Long.getLong("products.index.refreshMs", 5 * 60 * 1000L);
+
+    private static volatile ProductOptionIndex shared;
+    private static volatile long sharedBuiltAt;
+
+    private final List<SellerDAO.ProductOption> options;
+    private final String[][] nameTokens;
+    private final String[] lowerNames;
+    private final String[] terms;
+    private final int[][] postings;
+    private final Map<Integer, SellerDAO.ProductOption> byId;
+
+    private ProductOptionIndex(List<SellerDAO.ProductOption> source) {
+        List<SellerDAO.ProductOption> sorted = new ArrayList<>(source);
+        sorted.sort(Comparator.comparing(o -> o.name() == null ? "" : o.name(), String.CASE_INSENSITIVE_ORDER));
+        this.options = List.copyOf(sorted);
+
+        int n = options.size();
+        this.nameTokens = new String[n][];
+        this.lowerNames = new String[n];
+        this.byId = new HashMap<>(n * 2);
+        TreeMap<String, List<Integer>> dict = new TreeMap<>();
+        for (int i = 0; i < n; i++) {
+            var o = options.get(i);
+            byId.put(o.productId(), o);
+            lowerNames[i] = normalize(o.name());
+            nameTokens[i] = tokens(lowerNames[i]);
+            Set<String> docTerms = new HashSet<>(Arrays.asList(nameTokens[i]));
+            docTerms.addAll(Arrays.asList(tokens(normalize(o.brand()))));
+            docTerms.addAll(Arrays.asList(tokens(normalize(o.sport()))));
+            docTerms.addAll(Arrays.asList(tokens(normalize(o.category()))));
+            for (String t : docTerms) dict.computeIfAbsent(t, k -> new ArrayList<>()).add(i);
+        }
+        this.terms = dict.keySet().toArray(new String[0]);
+        this.postings = new int[terms.length][];
+        int k = 0;
+        for (List<Integer> docs : dict.values()) {
+            postings[k++] = docs.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    public static ProductOptionIndex build(List<SellerDAO.ProductOption> options) {
+        return new ProductOptionIndex(options);
+    }
+
+    // Indice condiviso se già costruito (anche se vecchio), altrimenti null: non tocca il DB
+    public static ProductOptionIndex cached() {
+        return shared;
+    }
+
+    // Indice condiviso, ricostruito se assente o scaduto. Da chiamare fuori dal thread FX
+    public static ProductOptionIndex load() throws SQLException {
+        ProductOptionIndex cur = shared;
+        if (cur != null && System.currentTimeMillis() - sharedBuiltAt < REFRESH_MS) return cur;
+        synchronized (ProductOptionIndex.class) {
+            if (shared != null && System.currentTimeMillis() - sharedBuiltAt < REFRESH_MS) return shared;
+            ProductOptionIndex fresh = build(SellerDAO.listAllProductOptions());
+            sharedBuiltAt = System.currentTimeMillis();
+            shared = fresh;
+            return fresh;
+        }
+    }
+
+    public int size() {
+        return options.size();
+    }
+
+    public SellerDAO.ProductOption byId(int productId) {
+        return byId.get(productId);
+    }
+
+    // Primi limit prodotti in ordine alfabetico
+    public List<SellerDAO.ProductOption> first(int limit) {
+        return options.subList(0, Math.min(limit, options.size()));
+    }
+
+    public List<SellerDAO.ProductOption> search(String query, int limit) {
+        String[] qTokens = tokens(normalize(query));
+        if (qTokens.length == 0) return first(limit);
+
+        BitSet candidates = null;
+        for (String t : qTokens) {
+            BitSet docs = docsWithPrefix(t);
+            if (candidates == null) candidates = docs;
+            else candidates.and(docs);
+            if (candidates.isEmpty()) return List.of();
+        }
+
+        // chiave di ordinamento in un long: punteggio decrescente, poi nome più corto,
+        // poi ordine alfabetico (quello delle posizioni)
+        long[] keys = new long[candidates.cardinality()];
+        int j = 0;
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            long len = Math.min(lowerNames[i].length(), 0xFFFF);
+            keys[j++] = ((long) (0xFFFF - score(i, qTokens)) << 48) | (len << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        int n = Math.min(limit, keys.length);
+        List<SellerDAO.ProductOption> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) out.add(options.get((int) keys[i]));
+        return out;
+    }
+
+    private BitSet docsWithPrefix(String prefix) {
+        BitSet docs = new BitSet(options.size());
+        int from = Arrays.binarySearch(terms, prefix);
+        if (from < 0) from = -from - 1;
+        for (int i = from; i < terms.length && terms[i].startsWith(prefix); i++) {
+            for (int d : postings[i]) docs.set(d);
+        }
+        return docs;
+    }
+
+    // Token uguale nel nome > prefisso nel nome > solo marca/sport/categoria; bonus se il nome
+    // comincia con il primo token cercato
+    private int score(int doc, String[] qTokens) {
+        int s = 0;
+        for (String q : qTokens) {
+            int best = 1;
+            for (String t : nameTokens[doc]) {
+                if (t.equals(q)) { best = 4; break; }
+                if (t.startsWith(q)) best = 3;
+            }
+            s += best;
+        }
+        if (lowerNames[doc].startsWith(qTokens[0])) s += 2;
+        return s;
+    }
+
+    private static String normalize(String s) {
+        return (s == null) ? "" : s.toLowerCase(Locale.ITALIAN).trim();
+    }
+
+    private static String[] tokens(String s) {
+        if (s.isEmpty()) return new String[0];
+        return Arrays.stream(s.split("[^\\p{L}\\p{N}]+"))
+                .filter(t -> !t.isEmpty())
+                .toArray(String[]::new);
+    }
+}
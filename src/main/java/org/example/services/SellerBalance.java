@@ -0,0 +1,145 @@
+package org.example.services;
+
+import org.example.dao.ShopDAO;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Saldo del venditore con cache in memoria e coda dei prelievi.
+// La lettura del saldo è un lookup nella cache (aggiornata da refresh, dal polling e dopo ogni
+// prelievo). Un prelievo viene solo accodato sul DB e torna subito; le richieste in attesa vengono
+// saldate a lotti dal thread del servizio, poco dopo la richiesta (balance.settleDelayMs) così che
+// richieste ravvicinate finiscano nello stesso lotto. Chi si sottoscrive riceve saldo e esiti.
+public final class SellerBalance implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(SellerBalance.class.getName());
+
+    private static final long SETTLE_DELAY_MS = Long.getLong("balance.settleDelayMs", 300);
+    private static final int SETTLE_BATCH = Integer.getInteger("balance.settleBatch", 100);
+    private static final long POLL_MS = Long.getLong("balance.pollMs", 5000);
+
+    // Saldo aggiornato più le richieste saldate in questo giro (vuota se non ce ne sono)
+    public record BalanceUpdate(ShopDAO.BalanceSummary summary, List<ShopDAO.SettledWithdrawal> settled) {}
+
+    private static final ScheduledExecutorService EXEC = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "seller-balance");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final Map<Long, ShopDAO.BalanceSummary> CACHE = new ConcurrentHashMap<>();
+    private static final Set<SellerBalance> ACTIVE = ConcurrentHashMap.newKeySet();
+    private static ScheduledFuture<?> pendingSettle; // guardato da SellerBalance.class
+
+    private final long userId;
+    private final Consumer<BalanceUpdate> listener;
+    private final ScheduledFuture<?> task;
+
+    private SellerBalance(long userId, Consumer<BalanceUpdate> listener) {
+        this.userId = userId;
+        this.listener = listener;
+        this.task = EXEC.scheduleWithFixedDelay(this::poll, 0, POLL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Il listener è chiamato dal thread del servizio, subito con il saldo corrente e poi a ogni variazione
+    public static SellerBalance subscribe(long userId, Consumer<BalanceUpdate> listener) {
+        SellerBalance sub = new SellerBalance(userId, listener);
+        ACTIVE.add(sub);
+        return sub;
+    }
+
+    // Saldo in cache, null se non ancora caricato: non tocca il DB
+    public static ShopDAO.BalanceSummary cached(long userId) {
+        return CACHE.get(userId);
+    }
+
+    // Da chiamare fuori dal thread FX
+    public static ShopDAO.BalanceSummary refresh(long userId) throws SQLException {
+        ShopDAO.BalanceSummary s = ShopDAO.getBalanceSummary(userId);
+        if (s != null) CACHE.put(userId, s);
+        return s;
+    }
+
+    // Accoda il prelievo (una sola chiamata al DB, senza attese) e pianifica il saldo del lotto
+    public static long requestWithdraw(long userId, BigDecimal amount) throws SQLException {
+        long id = ShopDAO.requestWithdraw(userId, amount);
+        CACHE.computeIfPresent(userId, (k, s) ->
+                new ShopDAO.BalanceSummary(s.shopId(), s.balance(), s.pending().add(amount), s.version()));
+        notifyUser(userId, List.of());
+        scheduleSettle();
+        return id;
+    }
+
+    private static synchronized void scheduleSettle() {
+        if (pendingSettle != null && !pendingSettle.isDone()) return;
+        try {
+            pendingSettle = EXEC.schedule(SellerBalance::settle, SETTLE_DELAY_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignore) {
+            // servizio fermo: le richieste restano in attesa e le salda il prossimo avvio
+        }
+    }
+
+    // Sul thread del servizio: salda lotti finché ce ne sono, poi aggiorna i negozi coinvolti
+    private static void settle() {
+        List<ShopDAO.SettledWithdrawal> settled = new ArrayList<>();
+        try {
+            List<ShopDAO.SettledWithdrawal> batch;
+            do {
+                batch = ShopDAO.settleWithdrawals(SETTLE_BATCH);
+                settled.addAll(batch);
+            } while (batch.size() == SETTLE_BATCH);
+        } catch (SQLException ex) {
+            logger.log(Level.WARNING, "Saldo dei prelievi non riuscito, nuovo tentativo al prossimo giro", ex);
+        }
+        if (settled.isEmpty()) return;
+
+        Map<Integer, List<ShopDAO.SettledWithdrawal>> byShop = new HashMap<>();
+        for (var w : settled) {
+            byShop.computeIfAbsent(w.shopId(), k -> new ArrayList<>()).add(w);
+        }
+        for (var e : CACHE.entrySet()) {
+            var mine = byShop.get(e.getValue().shopId());
+            if (mine == null) continue;
+            try {
+                refresh(e.getKey());
+            } catch (SQLException ex) {
+                logger.log(Level.WARNING, "Aggiornamento saldo non riuscito", ex);
+            }
+            notifyUser(e.getKey(), mine);
+        }
+    }
+
+    private static void notifyUser(long userId, List<ShopDAO.SettledWithdrawal> settled) {
+        ShopDAO.BalanceSummary s = CACHE.get(userId);
+        if (s == null) return;
+        for (SellerBalance sub : ACTIVE) {
+            if (sub.userId == userId) sub.listener.accept(new BalanceUpdate(s, settled));
+        }
+    }
+
+    // Raccoglie vendite e prelievi fatti altrove; se restano richieste in attesa (es. app chiusa
+    // prima del saldo) le fa saldare
+    private void poll() {
+        if (task != null && task.isCancelled()) return;
+        try {
+            ShopDAO.BalanceSummary before = CACHE.get(userId);
+            ShopDAO.BalanceSummary now = refresh(userId);
+            if (now == null) return;
+            if (!now.equals(before)) listener.accept(new BalanceUpdate(now, List.of()));
+            if (now.pending().signum() > 0) scheduleSettle();
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Polling del saldo non riuscito", ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        ACTIVE.remove(this);
+        task.cancel(false);
+    }
+}
@@ -0,0 +1,160 @@
+package org.example.services;
+
+import org.example.dao.SellerDAO;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.*;
+
+// Catalogo del venditore tenuto in memoria: si carica una volta e i filtri (nome, marca, categoria)
+// si applicano sui dati locali, senza tornare sul DB a ogni tasto.
+// Per marca e categoria c'è un indice valore -> BitSet delle righe; per il nome si tengono i nomi
+// già in minuscolo e, se la nuova ricerca estende la precedente, si filtra solo il risultato precedente.
+// Le modifiche fatte dal venditore aggiornano il modello (update/delete) o lo invalidano (inserimenti, import).
+public final class SellerCatalogModel {
+
+    public record View(List<SellerDAO.CatalogRow> rows, List<String> brands, List<String> categories) {}
+
+    private final int shopId;
+
+    private List<SellerDAO.CatalogRow> rows = List.of();
+    private String[] lowerNames = new String[0];
+    private Map<String, BitSet> byBrand = Map.of();
+    private Map<String, BitSet> byCategory = Map.of();
+    private boolean loaded;
+
+    // cache dell'ultima ricerca per nome
+    private String lastQuery;
+    private BitSet lastNameMatch;
+
+    public SellerCatalogModel(int shopId) {
+        this.shopId = shopId;
+    }
+
+    // Da chiamare fuori dal thread FX
+    public void load() throws SQLException {
+        replace(SellerDAO.listCatalog(shopId, null));
+    }
+
+    synchronized void replace(List<SellerDAO.CatalogRow> fresh) {
+        rows = new ArrayList<>(fresh);
+        rebuild();
+        loaded = true;
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    public synchronized void invalidate() {
+        loaded = false;
+    }
+
+    public synchronized int size() {
+        return rows.size();
+    }
+
+    // Modifica di prezzo/quantità: nome, marca e categoria non cambiano, gli indici restano validi
+    public synchronized void applyUpdate(int productId, String size, BigDecimal price, int quantity) {
+        int i = indexOf(productId, size);
+        if (i < 0) {
+            loaded = false;
+            return;
+        }
+        var r = rows.get(i);
+        rows.set(i, new SellerDAO.CatalogRow(r.productId(), r.name(), r.sport(), r.brand(),
+                r.category(), r.size(), price, quantity));
+    }
+
+    public synchronized void applyDelete(int productId, String size) {
+        int i = indexOf(productId, size);
+        if (i < 0) return;
+        rows.remove(i);
+        rebuild(); // le posizioni successive scalano
+    }
+
+    public synchronized View filter(String nameQuery, String brand, String category) {
+        BitSet match = matchName(normalize(nameQuery));
+
+        // le opzioni dei filtri dipendono solo dalla ricerca per nome, come prima
+        List<String> brands = optionsWithin(byBrand, match);
+        List<String> categories = optionsWithin(byCategory, match);
+
+        BitSet result = (BitSet) match.clone();
+        if (brand != null) result.and(byBrand.getOrDefault(brand, new BitSet()));
+        if (category != null) result.and(byCategory.getOrDefault(category, new BitSet()));
+
+        List<SellerDAO.CatalogRow> out = new ArrayList<>(result.cardinality());
+        for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) out.add(rows.get(i));
+        return new View(out, brands, categories);
+    }
+
+    private BitSet matchName(String q) {
+        if (q == null) {
+            BitSet all = new BitSet(rows.size());
+            all.set(0, rows.size());
+            return all;
+        }
+        if (q.equals(lastQuery)) return lastNameMatch;
+
+        // se q contiene la ricerca precedente, i candidati sono solo le righe già trovate
+        BitSet candidates = (lastQuery != null && q.contains(lastQuery)) ? lastNameMatch : null;
+        BitSet match = new BitSet(rows.size());
+        if (candidates == null) {
+            for (int i = 0; i < lowerNames.length; i++) {
+                if (lowerNames[i] != null && lowerNames[i].contains(q)) match.set(i);
+            }
+        } else {
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                if (lowerNames[i].contains(q)) match.set(i);
+            }
+        }
+        lastQuery = q;
+        lastNameMatch = match;
+        return match;
+    }
+
+    private static List<String> optionsWithin(Map<String, BitSet> index, BitSet match) {
+        List<String> out = new ArrayList<>();
+        for (var e : index.entrySet()) {
+            if (e.getValue().intersects(match)) out.add(e.getKey());
+        }
+        return out; // l'indice è già ordinato
+    }
+
+    private void rebuild() {
+        int n = rows.size();
+        String[] names = new String[n];
+        Map<String, BitSet> brands = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Map<String, BitSet> categories = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < n; i++) {
+            var r = rows.get(i);
+            names[i] = (r.name() == null) ? null : r.name().toLowerCase(Locale.ITALIAN);
+            index(brands, r.brand(), i);
+            index(categories, r.category(), i);
+        }
+        lowerNames = names;
+        byBrand = brands;
+        byCategory = categories;
+        lastQuery = null;
+        lastNameMatch = null;
+    }
+
+    private static void index(Map<String, BitSet> idx, String value, int row) {
+        if (value == null || value.isBlank()) return;
+        idx.computeIfAbsent(value.trim(), k -> new BitSet()).set(row);
+    }
+
+    private int indexOf(int productId, String size) {
+        for (int i = 0; i < rows.size(); i++) {
+            var r = rows.get(i);
+            if (r.productId() == productId && Objects.equals(r.size(), size)) return i;
+        }
+        return -1;
+    }
+
+    private static String normalize(String q) {
+        if (q == null || q.isBlank()) return null;
+        return q.trim().toLowerCase(Locale.ITALIAN);
+    }
+}
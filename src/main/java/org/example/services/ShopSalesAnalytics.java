@@ -0,0 +1,101 @@
+package org.example.services;
+
+import org.example.dao.SellerDAO;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.*;
+
+// Statistiche di vendita di uno shop tenute in memoria.
+// load() legge la fotografia dai rollup già aggregati sul DB; refresh() chiede solo le righe
+// cambiate dopo l'ultima versione vista e le sostituisce nel modello. Nessuna scansione di details_order.
+// La fotografia contiene solo i primi TOP prodotti: se un delta ne fa scendere uno (annullamenti)
+// si rilegge tutto, perché chi sale in classifica può non essere in memoria.
+public final class ShopSalesAnalytics {
+
+    public static final int DAYS = 30;
+    public static final int WEEKS = 12;
+    public static final int TOP = 10;
+
+    private final int shopId;
+
+    private long version = -1;
+    private SellerDAO.SalesTotals totals = new SellerDAO.SalesTotals(BigDecimal.ZERO, 0, 0);
+    private final NavigableMap<LocalDate, SellerDAO.SalesBucket> daily = new TreeMap<>();
+    private final NavigableMap<LocalDate, SellerDAO.SalesBucket> weekly = new TreeMap<>();
+    private final Map<Integer, SellerDAO.ProductSales> products = new HashMap<>();
+    private final Map<String, SellerDAO.SizeSales> sizes = new HashMap<>();
+
+    public ShopSalesAnalytics(int shopId) {
+        this.shopId = shopId;
+    }
+
+    public synchronized void load() throws SQLException {
+        SellerDAO.SalesRollup snap = SellerDAO.salesSnapshot(shopId, DAYS, WEEKS, TOP);
+        daily.clear();
+        weekly.clear();
+        products.clear();
+        sizes.clear();
+        apply(snap);
+    }
+
+    // Ritorna true se qualcosa è cambiato dall'ultima lettura
+    public synchronized boolean refresh() throws SQLException {
+        if (version < 0) {
+            load();
+            return true;
+        }
+        SellerDAO.SalesRollup delta = SellerDAO.salesChangesSince(shopId, version, DAYS, WEEKS);
+        if (delta.version() == version) return false;
+        if (lowersAnyProduct(delta)) load();
+        else apply(delta);
+        return true;
+    }
+
+    private void apply(SellerDAO.SalesRollup r) {
+        version = r.version();
+        totals = r.totals();
+        for (var b : r.daily()) daily.put(b.period(), b);
+        for (var b : r.weekly()) weekly.put(b.period(), b);
+        for (var p : r.products()) products.put(p.productId(), p);
+        for (var z : r.sizes()) sizes.put(z.size(), z);
+
+        // le finestre scorrono: i periodi usciti non servono più
+        daily.headMap(LocalDate.now().minusDays(DAYS), false).clear();
+        weekly.headMap(LocalDate.now().minusWeeks(WEEKS + 1L), false).clear();
+    }
+
+    private boolean lowersAnyProduct(SellerDAO.SalesRollup delta) {
+        for (var p : delta.products()) {
+            SellerDAO.ProductSales before = products.get(p.productId());
+            if (before != null && p.units() < before.units()) return true;
+        }
+        return false;
+    }
+
+    public synchronized SellerDAO.SalesTotals totals() {
+        return totals;
+    }
+
+    public synchronized List<SellerDAO.SalesBucket> daily() {
+        return List.copyOf(daily.values());
+    }
+
+    public synchronized List<SellerDAO.SalesBucket> weekly() {
+        return List.copyOf(weekly.values());
+    }
+
+    public synchronized List<SellerDAO.ProductSales> topProducts() {
+        return products.values().stream()
+                .sorted(Comparator.comparingInt(SellerDAO.ProductSales::units).reversed())
+                .limit(TOP)
+                .toList();
+    }
+
+    public synchronized List<SellerDAO.SizeSales> sizes() {
+        return sizes.values().stream()
+                .sorted(Comparator.comparingInt(SellerDAO.SizeSales::units).reversed())
+                .toList();
+    }
+}
@@ -0,0 +1,144 @@
+package org.example.services;
+
+import org.example.dao.DataChangeHooks;
+import org.example.dao.SellerDAO;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Varianti di uno shop sotto la soglia di scorta, tenute in memoria.
+// Il DB mantiene la tabella stock_alerts con i trigger su product_availability (ordini, modifiche,
+// import): qui si carica una volta l'elenco corrente e poi si leggono solo gli avvisi cambiati
+// dopo l'ultima versione vista, come per il feed ordini. Nessuna scansione del catalogo.
+// Le query (livello di una variante, conteggi) sono lookup in memoria.
+public final class StockThresholdMonitor implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(StockThresholdMonitor.class.getName());
+
+    private static final long POLL_MS = Long.getLong("stock.alerts.pollMs", 2000);
+    private static final int REPLAY_SECONDS = Integer.getInteger("orders.feed.replaySeconds", 5);
+    private static final int MAX_PER_POLL = 500;
+
+    private static final ScheduledExecutorService POLLER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "stock-threshold-monitor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final Set<StockThresholdMonitor> ACTIVE = ConcurrentHashMap.newKeySet();
+
+    static {
+        // scritture di questo processo (DAO): giro immediato
+        DataChangeHooks.onStockChanged(StockThresholdMonitor::nudge);
+    }
+
+    private record Variant(int productId, String size) {}
+
+    private final int shopId;
+    private final Consumer<List<SellerDAO.StockAlert>> listener;
+    private final Map<Variant, SellerDAO.StockAlert> alerts = new ConcurrentHashMap<>();
+    private final ScheduledFuture<?> task;
+    private volatile int threshold;
+    // toccati solo dal thread del poller
+    private long version;
+    private Map<Variant, Long> lastSeen = Map.of();
+
+    private StockThresholdMonitor(int shopId, Consumer<List<SellerDAO.StockAlert>> listener) throws SQLException {
+        this.shopId = shopId;
+        this.listener = listener;
+        // versione letta prima dell'elenco: quello che cambia nel mezzo arriva comunque dal polling
+        this.version = SellerDAO.stockAlertVersion(shopId);
+        for (SellerDAO.StockAlert a : SellerDAO.listStockAlerts(shopId)) {
+            alerts.put(new Variant(a.productId(), a.size()), a);
+        }
+        this.threshold = SellerDAO.getStockThreshold(shopId);
+        this.task = POLLER.scheduleWithFixedDelay(this::poll, POLL_MS, POLL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Carica gli avvisi correnti (da chiamare fuori dal thread FX); il listener riceve gli avvisi
+    // cambiati, con livello OK per quelli rientrati (chiamato dal thread del monitor)
+    public static StockThresholdMonitor start(int shopId, Consumer<List<SellerDAO.StockAlert>> listener) throws SQLException {
+        StockThresholdMonitor m = new StockThresholdMonitor(shopId, listener);
+        ACTIVE.add(m);
+        return m;
+    }
+
+    // Richiede un giro immediato su tutti i monitor attivi (scrittura fatta da questo processo)
+    public static void nudge() {
+        for (StockThresholdMonitor m : ACTIVE) {
+            try {
+                POLLER.execute(m::poll);
+            } catch (RejectedExecutionException ignore) {
+                // poller fermo: nessun monitor da aggiornare
+            }
+        }
+    }
+
+    public SellerDAO.StockLevel level(int productId, String size) {
+        SellerDAO.StockAlert a = alerts.get(new Variant(productId, size));
+        return (a == null) ? SellerDAO.StockLevel.OK : a.level();
+    }
+
+    public List<SellerDAO.StockAlert> alerts() {
+        List<SellerDAO.StockAlert> out = new ArrayList<>(alerts.values());
+        out.sort(Comparator.comparing(SellerDAO.StockAlert::level).reversed()
+                .thenComparing(a -> a.name() == null ? "" : a.name(), String.CASE_INSENSITIVE_ORDER)
+                .thenComparing(a -> a.size() == null ? "" : a.size()));
+        return out;
+    }
+
+    public long count(SellerDAO.StockLevel level) {
+        return alerts.values().stream().filter(a -> a.level() == level).count();
+    }
+
+    public int threshold() {
+        return threshold;
+    }
+
+    // Da chiamare fuori dal thread FX; gli avvisi ricalcolati arrivano al listener
+    public void setThreshold(int value) throws SQLException {
+        SellerDAO.setStockThreshold(shopId, value);
+        threshold = value;
+    }
+
+    private void poll() {
+        if (task.isCancelled()) return;
+        try {
+            long since = version;
+            List<SellerDAO.StockAlert> changes = SellerDAO.listStockAlertChanges(shopId, since, REPLAY_SECONDS, MAX_PER_POLL);
+            if (changes.isEmpty()) return;
+
+            // la finestra di replay ripropone avvisi già consegnati: si scartano quelli con la stessa versione
+            List<SellerDAO.StockAlert> delta = new ArrayList<>();
+            Map<Variant, Long> seen = new HashMap<>();
+            int fresh = 0;
+            for (SellerDAO.StockAlert a : changes) {
+                Variant v = new Variant(a.productId(), a.size());
+                seen.put(v, a.version());
+                if (a.version() > since) fresh++;
+                version = Math.max(version, a.version());
+                if (Long.valueOf(a.version()).equals(lastSeen.get(v))) continue;
+                if (a.level() == SellerDAO.StockLevel.OK) alerts.remove(v);
+                else alerts.put(v, a);
+                delta.add(a);
+            }
+            lastSeen = seen;
+
+            if (!delta.isEmpty()) listener.accept(delta);
+            // lotto pieno: altre righe nuove in coda, si prosegue subito
+            if (fresh == MAX_PER_POLL) POLLER.execute(this::poll);
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Polling degli avvisi di scorta non riuscito", ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        ACTIVE.remove(this);
+        task.cancel(false);
+    }
+}
@@ -0,0 +1,151 @@
+package org.example.services;
+
+import org.example.dao.UserDAO;
+import org.example.models.Product;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Preferiti dell'utente tenuti in memoria per le verifiche "è già nei preferiti?".
+// Si caricano una volta (al login) da getFavorites; aggiunte, rimozioni e svuotamento (scritti o
+// accodati da WishlistWriteBehind) aggiornano l'insieme, quindi dettaglio prodotto e card della
+// home leggono lo stato senza I/O.
+// Chiave: productId e id_shop impaccati in un long; per ogni chiave un BitSet delle taglie (codici
+// assegnati al primo uso), così anche la verifica "in qualsiasi taglia" è un solo lookup.
+// Con wishlist di poche centinaia di voci l'insieme esatto costa poco: nessun filtro probabilistico.
+public final class WishlistMembership {
+
+    private static final Logger logger = Logger.getLogger(WishlistMembership.class.getName());
+
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "wishlist-membership");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final Map<String, WishlistMembership> BY_USER = new ConcurrentHashMap<>();
+    // scritture fatte da questo processo: un caricamento concorrente a una scrittura si ripete
+    private static final AtomicLong WRITES = new AtomicLong();
+
+    private final Map<Long, BitSet> sizesByItem = new HashMap<>();
+    private final Map<String, Integer> sizeCodes = new HashMap<>();
+
+    private WishlistMembership(List<Product> favorites) {
+        for (Product p : favorites) add(p.getProductId(), p.getIdShop(), p.getSize());
+    }
+
+    // Insieme dell'utente, caricato al primo uso. Da chiamare fuori dal thread FX
+    public static WishlistMembership of(String username) throws SQLException {
+        WishlistMembership m = BY_USER.get(username);
+        if (m != null) return m;
+        synchronized (WishlistMembership.class) {
+            m = BY_USER.get(username);
+            if (m != null) return m;
+            long writes;
+            do {
+                writes = WRITES.get();
+                // modifiche ancora in differita: prima sul DB, poi si legge; se la scrittura
+                // non riesce restano in attesa e si applicano sopra la lettura
+                WishlistWriteBehind.PendingChanges pending =
+                        WishlistWriteBehind.flush(username) ? null : WishlistWriteBehind.pending(username);
+                m = new WishlistMembership(UserDAO.getFavorites(username));
+                if (pending != null) m.apply(pending);
+            } while (writes != WRITES.get());
+            BY_USER.put(username, m);
+            return m;
+        }
+    }
+
+    // Insieme già caricato, altrimenti null: non tocca il DB
+    public static WishlistMembership cached(String username) {
+        return (username == null) ? null : BY_USER.get(username);
+    }
+
+    // Carica in background; onReady (se presente) è chiamato dal thread del caricamento
+    public static void preload(String username, Runnable onReady) {
+        if (username == null) return;
+        try {
+            LOADER.execute(() -> {
+                try {
+                    of(username);
+                    if (onReady != null) onReady.run();
+                } catch (Exception ex) {
+                    logger.log(Level.WARNING, "Caricamento dei preferiti non riuscito", ex);
+                }
+            });
+        } catch (RejectedExecutionException ignore) {
+            // caricamento al primo uso
+        }
+    }
+
+    // Logout: alla prossima sessione si ricarica dal DB
+    public static void forget(String username) {
+        if (username != null) BY_USER.remove(username);
+    }
+
+    // Chiamati da WishlistWriteBehind quando accoda la modifica (o la scrive subito, in demo)
+    public static void added(String username, long productId, int shopId, String size) {
+        WRITES.incrementAndGet();
+        WishlistMembership m = cached(username);
+        if (m != null) m.add(productId, shopId, size);
+    }
+
+    public static void removed(String username, long productId, int shopId, String size) {
+        WRITES.incrementAndGet();
+        WishlistMembership m = cached(username);
+        if (m != null) m.remove(productId, shopId, size);
+    }
+
+    public static void cleared(String username) {
+        WRITES.incrementAndGet();
+        WishlistMembership m = cached(username);
+        if (m != null) m.clear();
+    }
+
+    // size null = in qualsiasi taglia
+    public synchronized boolean contains(long productId, int shopId, String size) {
+        BitSet sizes = sizesByItem.get(key(productId, shopId));
+        if (sizes == null) return false;
+        if (size == null) return true;
+        Integer code = sizeCodes.get(size);
+        return code != null && sizes.get(code);
+    }
+
+    public synchronized int size() {
+        return sizesByItem.values().stream().mapToInt(BitSet::cardinality).sum();
+    }
+
+    private synchronized void add(long productId, int shopId, String size) {
+        int code = sizeCodes.computeIfAbsent(size == null ? "" : size, k -> sizeCodes.size());
+        sizesByItem.computeIfAbsent(key(productId, shopId), k -> new BitSet()).set(code);
+    }
+
+    private synchronized void remove(long productId, int shopId, String size) {
+        long key = key(productId, shopId);
+        BitSet sizes = sizesByItem.get(key);
+        Integer code = sizeCodes.get(size == null ? "" : size);
+        if (sizes == null || code == null) return;
+        sizes.clear(code);
+        if (sizes.isEmpty()) sizesByItem.remove(key);
+    }
+
+    private synchronized void clear() {
+        sizesByItem.clear();
+    }
+
+    private synchronized void apply(WishlistWriteBehind.PendingChanges pending) {
+        if (pending.clearFirst()) clear();
+        for (UserDAO.WishlistChange c : pending.changes()) {
+            if (c.add()) add(c.productId(), c.idShop(), c.size());
+            else remove(c.productId(), c.idShop(), c.size());
+        }
+    }
+
+    private static long key(long productId, int shopId) {
+        return (productId << 32) | (shopId & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,365 @@
+package org.example.services;
+
+import org.example.dao.UserDAO;
+import org.example.util.Session;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Scritture della wishlist in differita (write-behind).
+// Aggiunte, rimozioni e svuotamenti tornano subito: vengono aggiunti a un journal locale e alle
+// modifiche in attesa dell'utente, dove le modifiche successive sulla stessa voce si fondono
+// (conta l'ultima, e un aggiungi/rimuovi che riporta allo stato iniziale sparisce).
+// Le modifiche nette vanno sul DB a batch poco dopo (wishlist.flushDelayMs), prima di rileggere
+// la wishlist, al logout e alla chiusura dell'app. Il journal (wishlist.journal) si rilegge
+// all'avvio, quindi un crash non perde nulla; riapplicare operazioni già scritte non fa danni.
+// In demo le scritture sono già in memoria e restano immediate.
+public final class WishlistWriteBehind {
+
+    private static final Logger logger = Logger.getLogger(WishlistWriteBehind.class.getName());
+
+    private static final long FLUSH_DELAY_MS = Long.getLong("wishlist.flushDelayMs", 1000);
+    private static final long RETRY_MS = Long.getLong("wishlist.retryMs", 10_000);
+    private static final Path JOURNAL = Path.of(System.getProperty("wishlist.journal",
+            Path.of(System.getProperty("user.home"), ".eshop", "wishlist.journal").toString()));
+
+    private static final ScheduledExecutorService EXEC = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "wishlist-write-behind");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private record Item(long productId, int idShop, String size) {}
+
+    // Modifiche in attesa di un utente
+    private static final class Pending {
+        boolean clearFirst;
+        final Map<Item, Boolean> target = new LinkedHashMap<>();
+        // stato della voce prima della prima modifica, se noto
+        final Map<Item, Boolean> initial = new HashMap<>();
+
+        List<UserDAO.WishlistChange> changes() {
+            List<UserDAO.WishlistChange> out = new ArrayList<>(target.size());
+            target.forEach((i, add) -> out.add(new UserDAO.WishlistChange(i.productId(), i.idShop(), i.size(), add)));
+            return out;
+        }
+    }
+
+    private static final Object LOCK = new Object();
+    // guardati da LOCK
+    private static final Map<String, Pending> PENDING = new LinkedHashMap<>();
+    private static FileChannel journal;
+    private static ScheduledFuture<?> scheduled;
+
+    // un solo flush alla volta; le nuove modifiche non aspettano il DB
+    private static final Object FLUSH_LOCK = new Object();
+
+    private WishlistWriteBehind() {}
+
+    // All'avvio: rilegge il journal lasciato da una sessione precedente e pianifica la scrittura
+    public static void start() {
+        synchronized (LOCK) {
+            if (journal != null) return;
+            if (Files.exists(JOURNAL)) {
+                try {
+                    for (String line : Files.readAllLines(JOURNAL, StandardCharsets.UTF_8)) replay(line);
+                } catch (IOException ex) {
+                    logger.log(Level.WARNING, "Lettura del journal della wishlist non riuscita", ex);
+                }
+            }
+            openJournal();
+            if (!PENDING.isEmpty()) {
+                logger.info(() -> "Wishlist: modifiche in sospeso recuperate per " + PENDING.size() + " utenti");
+                schedule(0);
+            }
+        }
+    }
+
+    public static void add(String username, long productId, int idShop, String size) {
+        if (Session.isDemo()) {
+            if (direct(() -> UserDAO.addInWishList(username, productId, idShop, size))) {
+                WishlistMembership.added(username, productId, idShop, size);
+            }
+            return;
+        }
+        record(username, 'A', new Item(productId, idShop, size));
+        WishlistMembership.added(username, productId, idShop, size);
+    }
+
+    public static void remove(String username, long productId, int idShop, String size) {
+        if (Session.isDemo()) {
+            if (direct(() -> UserDAO.removeInWishlist(username, productId, idShop, size))) {
+                WishlistMembership.removed(username, productId, idShop, size);
+            }
+            return;
+        }
+        record(username, 'R', new Item(productId, idShop, size));
+        WishlistMembership.removed(username, productId, idShop, size);
+    }
+
+    public static void clear(String username) {
+        if (Session.isDemo()) {
+            if (direct(() -> UserDAO.clearWishlist(username))) WishlistMembership.cleared(username);
+            return;
+        }
+        record(username, 'C', null);
+        WishlistMembership.cleared(username);
+    }
+
+    // Scrive subito le modifiche in attesa dell'utente (prima di rileggere la wishlist dal DB).
+    // false se la scrittura non è riuscita: le modifiche restano in attesa
+    public static boolean flush(String username) {
+        return flushNow(username);
+    }
+
+    // Modifiche nette ancora in attesa dell'utente, null se non ce ne sono
+    public record PendingChanges(boolean clearFirst, List<UserDAO.WishlistChange> changes) {}
+
+    // Dopo un flush non riuscito: chi rilegge dal DB le applica sopra la lettura.
+    // Da prendere prima della lettura; attende un eventuale flush in corso
+    public static PendingChanges pending(String username) {
+        synchronized (FLUSH_LOCK) {
+            synchronized (LOCK) {
+                Pending p = PENDING.get(username);
+                return (p == null) ? null : new PendingChanges(p.clearFirst, p.changes());
+            }
+        }
+    }
+
+    // Logout e chiusura dell'app: scrive tutto quello che è in attesa
+    public static boolean flushAll() {
+        return flushNow(null);
+    }
+
+    // Chiusura dell'app
+    public static void shutdown() {
+        flushAll();
+        synchronized (LOCK) {
+            closeJournal();
+        }
+    }
+
+    private interface Write {
+        void run() throws SQLException;
+    }
+
+    private static boolean direct(Write w) {
+        try {
+            w.run();
+            return true;
+        } catch (SQLException ex) {
+            logger.log(Level.WARNING, "Scrittura della wishlist non riuscita", ex);
+            return false;
+        }
+    }
+
+    private static void record(String username, char op, Item item) {
+        synchronized (LOCK) {
+            if (journal == null) openJournal();
+            boolean logged = append(line(username, op, item));
+            apply(username, op, item, true);
+            // senza journal la modifica non è al sicuro: si scrive appena possibile
+            schedule(logged ? FLUSH_DELAY_MS : 0);
+        }
+    }
+
+    // chiamato con LOCK; knownState: si può usare lo stato in memoria per scartare le modifiche nulle
+    private static void apply(String username, char op, Item item, boolean knownState) {
+        Pending p = PENDING.computeIfAbsent(username, k -> new Pending());
+        if (op == 'C') {
+            p.clearFirst = true;
+            p.target.clear();
+            p.initial.clear();
+            return;
+        }
+        boolean add = op == 'A';
+        if (!p.target.containsKey(item)) {
+            Boolean before = p.clearFirst ? Boolean.FALSE : null;
+            if (before == null && knownState) {
+                WishlistMembership m = WishlistMembership.cached(username);
+                if (m != null) before = m.contains(item.productId(), item.idShop(), item.size());
+            }
+            if (before != null) p.initial.put(item, before);
+        }
+        if (Objects.equals(p.initial.get(item), add)) {
+            p.target.remove(item);
+            p.initial.remove(item);
+        } else {
+            p.target.put(item, add);
+        }
+        if (!p.clearFirst && p.target.isEmpty()) PENDING.remove(username);
+    }
+
+    private static boolean flushNow(String onlyUser) {
+        synchronized (FLUSH_LOCK) {
+            Map<String, Pending> batch = new LinkedHashMap<>();
+            synchronized (LOCK) {
+                if (onlyUser == null) {
+                    batch.putAll(PENDING);
+                    PENDING.clear();
+                } else {
+                    Pending p = PENDING.remove(onlyUser);
+                    if (p != null) batch.put(onlyUser, p);
+                }
+            }
+            if (batch.isEmpty()) return true;
+
+            Map<String, Pending> failed = new LinkedHashMap<>();
+            Map<String, List<UserDAO.WishlistChange>> rejected = new LinkedHashMap<>();
+            for (var e : batch.entrySet()) {
+                try {
+                    List<UserDAO.WishlistChange> r = UserDAO.applyWishlistChanges(e.getKey(), e.getValue().clearFirst, e.getValue().changes());
+                    if (!r.isEmpty()) rejected.put(e.getKey(), r);
+                } catch (SQLException ex) {
+                    logger.log(Level.WARNING, ex, () -> "Scrittura della wishlist non riuscita per " + e.getKey());
+                    failed.put(e.getKey(), e.getValue());
+                }
+            }
+
+            synchronized (LOCK) {
+                // le voci rifiutate dal DB non si ritentano: escono dal journal con la compattazione
+                rejected.forEach((user, list) -> list.forEach(c -> dropRejected(user, c)));
+                // le modifiche non scritte tornano in attesa, sotto quelle arrivate nel frattempo
+                failed.forEach(WishlistWriteBehind::mergeBack);
+                compactJournal();
+                if (!failed.isEmpty()) schedule(RETRY_MS);
+            }
+            return failed.isEmpty();
+        }
+    }
+
+    // chiamato con LOCK; l'insieme in memoria torna allo stato del DB, salvo modifiche più recenti
+    private static void dropRejected(String username, UserDAO.WishlistChange c) {
+        logger.warning(() -> "Wishlist: modifica scartata per " + username + ": " + c);
+        Pending newer = PENDING.get(username);
+        if (newer != null && (newer.clearFirst || newer.target.containsKey(new Item(c.productId(), c.idShop(), c.size())))) return;
+        if (c.add()) WishlistMembership.removed(username, c.productId(), c.idShop(), c.size());
+        else WishlistMembership.added(username, c.productId(), c.idShop(), c.size());
+    }
+
+    // chiamato con LOCK
+    private static void mergeBack(String username, Pending older) {
+        Pending newer = PENDING.get(username);
+        if (newer != null && newer.clearFirst) return; // lo svuotamento successivo le annulla
+        if (newer != null) {
+            newer.target.forEach(older.target::put);
+            newer.initial.forEach(older.initial::putIfAbsent);
+        }
+        PENDING.put(username, older);
+    }
+
+    // chiamato con LOCK
+    private static void schedule(long delayMs) {
+        if (scheduled != null && !scheduled.isDone() && scheduled.getDelay(TimeUnit.MILLISECONDS) <= delayMs) return;
+        if (scheduled != null) scheduled.cancel(false);
+        try {
+            scheduled = EXEC.schedule(WishlistWriteBehind::flushAll, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignore) {
+            // servizio fermo: restano nel journal fino al prossimo avvio
+        }
+    }
+
+    // --- journal ---
+
+    // chiamato con LOCK
+    private static void openJournal() {
+        try {
+            Path dir = JOURNAL.toAbsolutePath().getParent();
+            if (dir != null) Files.createDirectories(dir);
+            journal = FileChannel.open(JOURNAL, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Journal della wishlist non disponibile: scritture immediate", ex);
+            journal = null;
+        }
+    }
+
+    // chiamato con LOCK
+    private static void closeJournal() {
+        if (journal == null) return;
+        try {
+            journal.close();
+        } catch (IOException ignore) {
+            // Nessuna operazione
+        }
+        journal = null;
+    }
+
+    // chiamato con LOCK
+    private static boolean append(String line) {
+        if (journal == null) return false;
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (buf.hasRemaining()) journal.write(buf);
+            journal.force(false);
+            return true;
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Scrittura del journal della wishlist non riuscita", ex);
+            return false;
+        }
+    }
+
+    // Riscrive il journal con le sole modifiche ancora in attesa (chiamato con LOCK)
+    private static void compactJournal() {
+        StringBuilder sb = new StringBuilder();
+        PENDING.forEach((user, p) -> {
+            if (p.clearFirst) sb.append(line(user, 'C', null));
+            p.target.forEach((i, add) -> sb.append(line(user, add ? 'A' : 'R', i)));
+        });
+        closeJournal();
+        try {
+            Path tmp = JOURNAL.resolveSibling(JOURNAL.getFileName() + ".tmp");
+            Files.writeString(tmp, sb, StandardCharsets.UTF_8);
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ch.force(true);
+            }
+            Files.move(tmp, JOURNAL, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Compattazione del journal della wishlist non riuscita", ex);
+        }
+        openJournal();
+    }
+
+    private static String line(String username, char op, Item item) {
+        StringBuilder sb = new StringBuilder().append(op).append('\t').append(encode(username));
+        if (item != null) {
+            sb.append('\t').append(item.productId())
+              .append('\t').append(item.idShop())
+              .append('\t').append(encode(item.size()));
+        }
+        return sb.append('\n').toString();
+    }
+
+    // chiamato con LOCK; righe incomplete (crash durante la scrittura) ignorate
+    private static void replay(String line) {
+        String[] f = line.split("\t", -1);
+        try {
+            if (f.length == 2 && f[0].equals("C")) {
+                apply(decode(f[1]), 'C', null, false);
+            } else if (f.length == 5 && (f[0].equals("A") || f[0].equals("R"))) {
+                Item item = new Item(Long.parseLong(f[2]), Integer.parseInt(f[3]), decode(f[4]));
+                apply(decode(f[1]), f[0].charAt(0), item, false);
+            }
+        } catch (IllegalArgumentException ignore) {
+            // riga troncata
+        }
+    }
+
+    // "~" non compare mai nell'output di URLEncoder: indica il null
+    private static String encode(String s) {
+        return (s == null) ? "~" : URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+
+    private static String decode(String s) {
+        return s.equals("~") ? null : URLDecoder.decode(s, StandardCharsets.UTF_8);
+    }
+}
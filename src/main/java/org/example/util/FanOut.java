@@ -0,0 +1,106 @@
+package org.example.util;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Fan-out strutturato di lookup indipendenti su virtual thread.
+// Tutti i fork condividono una deadline; al primo errore (o allo scadere della deadline)
+// i fratelli ancora in corso vengono annullati. Ogni risultato è consegnato appena pronto
+// sull'executor indicato (es. Platform::runLater), così la vista si compone progressivamente.
+// Lo scope si chiude da solo quando l'ultimo fork è stato consegnato.
+public final class FanOut implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(FanOut.class.getName());
+
+    private static final ScheduledExecutorService DEADLINES = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "fanout-deadline");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final ExecutorService exec = Executors.newVirtualThreadPerTaskExecutor();
+    private final Executor delivery;
+    private final Consumer<Throwable> onFailure;
+    private final List<Future<?>> forks = new CopyOnWriteArrayList<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean done = new AtomicBoolean(false);
+    private final ScheduledFuture<?> deadline;
+
+    public FanOut(Duration timeout, Executor delivery, Consumer<Throwable> onFailure) {
+        this.delivery = Objects.requireNonNull(delivery, "delivery");
+        this.onFailure = Objects.requireNonNull(onFailure, "onFailure");
+        long ms = timeout.toMillis();
+        this.deadline = DEADLINES.schedule(
+                () -> fail(new TimeoutException("Caricamento oltre la deadline di " + ms + " ms")),
+                ms, TimeUnit.MILLISECONDS);
+    }
+
+    // Lancia un lookup; onResult viene eseguito sull'executor di consegna.
+    // Si può chiamare anche da dentro un onResult per i lookup che dipendono da un risultato precedente.
+    public <T> void fork(Callable<T> task, Consumer<? super T> onResult) {
+        if (done.get()) return;
+        // i fork vedono la stessa sessione del chiamante
+        SessionContext ctx = SessionRegistry.current();
+        pending.incrementAndGet();
+        try {
+            forks.add(exec.submit(() -> SessionRegistry.runWith(ctx, () -> runFork(task, onResult))));
+        } catch (RejectedExecutionException ex) {
+            // scope chiuso in concorrenza: niente da fare
+            pending.decrementAndGet();
+        }
+    }
+
+    private <T> void runFork(Callable<T> task, Consumer<? super T> onResult) {
+        T value;
+        try {
+            value = task.call();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception ex) {
+            fail(ex);
+            return;
+        }
+        if (done.get()) return;
+        delivery.execute(() -> {
+            if (done.get()) return;
+            try {
+                onResult.accept(value);
+            } finally {
+                // decremento dopo la consegna: i fork aggiunti da onResult tengono aperto lo scope
+                if (pending.decrementAndGet() == 0) close();
+            }
+        });
+    }
+
+    public boolean isDone() {
+        return done.get();
+    }
+
+    private void fail(Throwable t) {
+        if (!done.compareAndSet(false, true)) return;
+        cancelForks();
+        logger.log(Level.FINE, "Fan-out interrotto", t);
+        delivery.execute(() -> onFailure.accept(t));
+    }
+
+    // Annulla i fork ancora in corso senza segnalare errori (es. chiusura della finestra)
+    @Override
+    public void close() {
+        if (!done.compareAndSet(false, true)) return;
+        cancelForks();
+    }
+
+    private void cancelForks() {
+        deadline.cancel(false);
+        for (Future<?> f : forks) f.cancel(true);
+        exec.shutdownNow();
+    }
+}
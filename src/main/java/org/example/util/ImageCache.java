@@ -0,0 +1,103 @@
+package org.example.util;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+
+import java.io.ByteArrayInputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Cache condivisa delle immagini già decodificate, limitata a images.cache.entries voci (LRU).
+// Lettura dei byte e decodifica avvengono su un piccolo pool di thread, alla dimensione
+// richiesta (le miniature occupano poco); richieste uguali in corso si accodano alla stessa.
+public final class ImageCache {
+
+    private static final Logger logger = Logger.getLogger(ImageCache.class.getName());
+
+    private static final int MAX_ENTRIES = Integer.getInteger("images.cache.entries", 500);
+    private static final int THREADS = Integer.getInteger("images.decodeThreads", 2);
+
+    // Fornisce i byte dell'immagine (null se non c'è); chiamato da un thread del pool
+    @FunctionalInterface
+    public interface Source {
+        byte[] bytes() throws Exception;
+    }
+
+    private static final ExecutorService DECODER = Executors.newFixedThreadPool(THREADS, r -> {
+        Thread t = new Thread(r, "image-cache");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final Map<String, Image> CACHE = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Image> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private static final Map<String, CompletableFuture<Image>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    private ImageCache() {}
+
+    // Immagine già in cache, altrimenti null: nessun I/O
+    public static Image peek(String key) {
+        synchronized (CACHE) {
+            return CACHE.get(key);
+        }
+    }
+
+    // Immagine decodificata a width x height (0 = dimensione originale); null se la sorgente non ne ha
+    public static CompletableFuture<Image> get(String key, double width, double height, Source source) {
+        String k = key + '@' + width + 'x' + height;
+        Image hit = peek(k);
+        if (hit != null) return CompletableFuture.completedFuture(hit);
+
+        CompletableFuture<Image> created = new CompletableFuture<>();
+        CompletableFuture<Image> running = IN_FLIGHT.putIfAbsent(k, created);
+        if (running != null) return running;
+        DECODER.execute(() -> {
+            Image img = decode(k, width, height, source);
+            IN_FLIGHT.remove(k);
+            created.complete(img);
+        });
+        return created;
+    }
+
+    // Imposta l'immagine sulla view appena pronta (thread FX), se nel frattempo la view non è
+    // stata riusata per un'altra chiave
+    public static void load(ImageView view, String key, Source source) {
+        String k = key + '@' + view.getFitWidth() + 'x' + view.getFitHeight();
+        view.setUserData(k);
+        Image hit = peek(k);
+        if (hit != null) {
+            view.setImage(hit);
+            return;
+        }
+        get(key, view.getFitWidth(), view.getFitHeight(), source).whenComplete((img, ex) -> {
+            if (img == null) return;
+            Platform.runLater(() -> {
+                if (k.equals(view.getUserData())) view.setImage(img);
+            });
+        });
+    }
+
+    private static Image decode(String k, double width, double height, Source source) {
+        try {
+            byte[] bytes = source.bytes();
+            if (bytes == null || bytes.length == 0) return null;
+            Image img = new Image(new ByteArrayInputStream(bytes), width, height, true, true);
+            if (img.isError()) return null;
+            synchronized (CACHE) {
+                CACHE.put(k, img);
+            }
+            return img;
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, ex, () -> "Caricamento immagine non riuscito: " + k);
+            return null;
+        }
+    }
+}
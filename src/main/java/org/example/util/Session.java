@@ -1,60 +1,47 @@
 package org.example.util;
 
+import org.example.inventory.InventoryHoldService;
+import org.example.models.Cart;
 import org.example.models.Product;
 
-import java.util.ArrayList;
 import java.util.List;
 
+// Facciata statica sulla sessione corrente (vedi SessionRegistry):
+// nell'app desktop è sempre la sessione "desktop", in un driver headless quella legata al thread.
 public final class Session {
 
     private Session() {}
 
-    private static String currentUser;
-    private static Integer currentUserId;
-    private static boolean demo;
-
-    private static final List<Product> cartItems = new ArrayList<>();
-    private static final List<Product> wishListItems = new ArrayList<>();
+    public static SessionContext current() { return SessionRegistry.current(); }
 
     // Utente
-    public static String getUser() { return currentUser; }
-    public static void setUser(String user) { currentUser = user; }
-    public static Integer getUserId() { return currentUserId; }
-    public static void setUserId(Integer userId) { currentUserId = userId; }
+    public static String getUser() { return current().getUser(); }
+    public static void setUser(String user) { current().setUser(user); }
+    public static Integer getUserId() { return current().getUserId(); }
+    public static void setUserId(Integer userId) { current().setUserId(userId); }
 
     public static void clear() {
-        currentUser = null;
-        currentUserId = null;
-        cartItems.clear();
-        wishListItems.clear();
-    }
-
-    public static void removeLineFromCart(long productId, int shopId, String size) {
-        List<Product> cart = getCartItems();
-        if (cart == null) return;
-        cart.removeIf(p ->
-                p.getProductId() == productId &&
-                        p.getIdShop() == shopId &&
-                        java.util.Objects.equals(p.getSize(), size)
-        );
+        current().clear();
     }
 
     public static boolean isDemo() {
-        return demo;
+        return current().isDemo();
     }
 
     public static void setDemo(boolean demo) {
-        Session.demo = demo;
+        current().setDemo(demo);
     }
 
     // Carrello
-    public static List<Product> getCartItems() { return cartItems; }
-    public static void addToCart(Product item) { cartItems.add(item); }
-    public static void removeFromCart(Product item) { cartItems.remove(item); }
-    public static void clearCart() { cartItems.clear(); }
+    public static Cart getCart() { return current().getCart(); }
+    public static void addToCart(Product item, int qty) { getCart().add(item, qty); }
+    public static void clearCart() {
+        getCart().clear();
+        InventoryHoldService.releaseAll(current().getHoldToken());
+    }
 
     // Wishlist
-    public static List<Product> getWishListItems() { return wishListItems; }
-    public static void addToWishList(Product item) { wishListItems.add(item); }
-    public static void removeFromWishList(Product item) { wishListItems.remove(item); }
+    public static List<Product> getWishListItems() { return current().getWishListItems(); }
+    public static void addToWishList(Product item) { getWishListItems().add(item); }
+    public static void removeFromWishList(Product item) { getWishListItems().remove(item); }
 }
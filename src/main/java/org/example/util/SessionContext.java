@@ -0,0 +1,55 @@
+package org.example.util;
+
+import org.example.inventory.InventoryHoldService;
+import org.example.models.Cart;
+import org.example.models.Product;
+import org.example.services.WishlistMembership;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+// Stato di una singola sessione utente: utente, carrello, wishlist e modalità demo.
+// I campi semplici sono volatile perché la sessione può essere letta da thread di lavoro;
+// carrello e wishlist vanno invece usati da un thread alla volta (FX o il driver della sessione).
+public final class SessionContext {
+
+    private final String id;
+    // proprietario degli hold di stock: unico anche tra più istanze dell'app sullo stesso DB
+    private final String holdToken = UUID.randomUUID().toString();
+    private volatile String user;
+    private volatile Integer userId;
+    private volatile boolean demo;
+
+    private final Cart cart = new Cart();
+    private final List<Product> wishListItems = Collections.synchronizedList(new ArrayList<>());
+
+    SessionContext(String id) {
+        this.id = id;
+    }
+
+    public String getId() { return id; }
+    public String getHoldToken() { return holdToken; }
+
+    public String getUser() { return user; }
+    public void setUser(String user) { this.user = user; }
+    public Integer getUserId() { return userId; }
+    public void setUserId(Integer userId) { this.userId = userId; }
+
+    public boolean isDemo() { return demo; }
+    public void setDemo(boolean demo) { this.demo = demo; }
+
+    public Cart getCart() { return cart; }
+    public List<Product> getWishListItems() { return wishListItems; }
+
+    // Logout: la sessione resta registrata ma torna anonima
+    public void clear() {
+        WishlistMembership.forget(user);
+        user = null;
+        userId = null;
+        cart.clear();
+        wishListItems.clear();
+        InventoryHoldService.releaseAll(holdToken);
+    }
+}
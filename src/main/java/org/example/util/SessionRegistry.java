@@ -0,0 +1,90 @@
+package org.example.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Registro concorrente delle sessioni attive, indicizzate per id.
+// La sessione "corrente" è quella legata al thread con runWith/callWith; se nessuna è legata
+// si usa la sessione desktop, così l'app JavaFX continua a funzionare con un solo contesto.
+// Il legame è un ThreadLocal e non uno ScopedValue: quest'ultimo è ancora preview in Java 21.
+public final class SessionRegistry {
+
+    private SessionRegistry() {}
+
+    public static final String DESKTOP_ID = "desktop";
+
+    private static final Map<String, SessionContext> SESSIONS = new ConcurrentHashMap<>();
+    private static final SessionContext DESKTOP = new SessionContext(DESKTOP_ID);
+    private static final ThreadLocal<SessionContext> CURRENT = new ThreadLocal<>();
+
+    static {
+        SESSIONS.put(DESKTOP_ID, DESKTOP);
+    }
+
+    // Nuova sessione con id casuale, già registrata
+    public static SessionContext open() {
+        SessionContext ctx = new SessionContext(UUID.randomUUID().toString());
+        SESSIONS.put(ctx.getId(), ctx);
+        return ctx;
+    }
+
+    public static SessionContext get(String id) {
+        return SESSIONS.get(id);
+    }
+
+    // Chiude e rimuove la sessione; quella desktop viene solo svuotata
+    public static void close(String id) {
+        if (DESKTOP_ID.equals(id)) {
+            DESKTOP.clear();
+            return;
+        }
+        SessionContext ctx = SESSIONS.remove(id);
+        if (ctx != null) ctx.clear();
+    }
+
+    public static int size() {
+        return SESSIONS.size();
+    }
+
+    public static Collection<SessionContext> all() {
+        return Collections.unmodifiableCollection(SESSIONS.values());
+    }
+
+    public static SessionContext desktop() {
+        return DESKTOP;
+    }
+
+    public static SessionContext current() {
+        SessionContext ctx = CURRENT.get();
+        return ctx != null ? ctx : DESKTOP;
+    }
+
+    // Esegue il blocco con ctx come sessione corrente, ripristinando il legame precedente
+    public static void runWith(SessionContext ctx, Runnable body) {
+        SessionContext prev = CURRENT.get();
+        CURRENT.set(ctx);
+        try {
+            body.run();
+        } finally {
+            restore(prev);
+        }
+    }
+
+    public static <T> T callWith(SessionContext ctx, Callable<T> body) throws Exception {
+        SessionContext prev = CURRENT.get();
+        CURRENT.set(ctx);
+        try {
+            return body.call();
+        } finally {
+            restore(prev);
+        }
+    }
+
+    private static void restore(SessionContext prev) {
+        if (prev == null) CURRENT.remove(); else CURRENT.set(prev);
+    }
+}
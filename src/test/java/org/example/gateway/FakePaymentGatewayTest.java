@@ -0,0 +1,56 @@
+package org.example.gateway;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FakePaymentGatewayTest {
+
+    private static final Map<String, String> CARD = Map.of("card_number", "4111111111111111", "expiry", "12/30");
+
+    private static List<Boolean> outcomes(FakePaymentGateway gw, int n) throws Exception {
+        List<ChargeRequest> reqs = new ArrayList<>();
+        for (int i = 0; i < n; i++) reqs.add(new ChargeRequest(1, BigDecimal.TEN, CARD));
+        return gw.chargeAll(reqs).get().stream().map(PaymentResult::success).toList();
+    }
+
+    @Test
+    void sameSeedGivesSameFailurePattern() throws Exception {
+        var cfg = new FakePaymentGateway.Config(1, 0.5, 0, 0, 0, 0.3, 0, 42L);
+        // chiamate sequenziali: l'esito dipende solo da seed e numero della chiamata
+        List<Boolean> a = new ArrayList<>();
+        List<Boolean> b = new ArrayList<>();
+        FakePaymentGateway ga = new FakePaymentGateway(cfg);
+        FakePaymentGateway gb = new FakePaymentGateway(cfg);
+        for (int i = 0; i < 50; i++) {
+            a.add(ga.charge(1, BigDecimal.TEN, CARD).success());
+            b.add(gb.charge(1, BigDecimal.TEN, CARD).success());
+        }
+        assertEquals(a, b);
+        assertTrue(a.contains(false) && a.contains(true));
+    }
+
+    @Test
+    void failEveryRejectsEveryNthCall() throws Exception {
+        var cfg = new FakePaymentGateway.Config(1, 0, 0, 0, 0, 0, 4, 7L);
+        List<Boolean> res = outcomes(new FakePaymentGateway(cfg), 40);
+        assertEquals(10, res.stream().filter(ok -> !ok).count());
+    }
+
+    @Test
+    void rateLimitRejectsBeyondBurst() throws Exception {
+        var cfg = new FakePaymentGateway.Config(1, 0, 0, 5, 0, 0, 0, 1L);
+        List<ChargeRequest> reqs = new ArrayList<>();
+        for (int i = 0; i < 20; i++) reqs.add(new ChargeRequest(1, BigDecimal.ONE, CARD));
+        List<PaymentResult> res = new FakePaymentGateway(cfg).chargeAll(reqs).get();
+
+        long ok = res.stream().filter(PaymentResult::success).count();
+        assertTrue(ok <= 6, "ammesse al massimo ~1 secondo di burst, ottenute " + ok);
+        assertTrue(res.stream().anyMatch(r -> r.message().contains("Troppe richieste")));
+    }
+}
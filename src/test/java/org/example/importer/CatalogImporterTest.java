@@ -0,0 +1,116 @@
+package org.example.importer;
+
+import org.example.dao.CatalogImportDAO;
+import org.example.dao.SellerDAO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogImporterTest {
+
+    private static final int SHOP = 7;
+    private static final List<SellerDAO.ProductOption> PRODUCTS = List.of(
+            new SellerDAO.ProductOption(1, "Scarpa", "BrandX", "Running", "Scarpe"),
+            new SellerDAO.ProductOption(2, "Maglia", "BrandY", "Calcio", "Maglie"));
+
+    @TempDir Path dir;
+
+    // Sink che registra le righe scritte e fallisce al lotto failAt (1-based), se indicato
+    private static final class RecordingSink implements CatalogImporter.ChunkSink {
+        final List<Long> written = new ArrayList<>();
+        final int failAt;
+        int calls;
+
+        RecordingSink(int failAt) {
+            this.failAt = failAt;
+        }
+
+        @Override
+        public List<CatalogImportDAO.RowError> write(List<CatalogImportDAO.Row> rows) throws SQLException {
+            if (rows.isEmpty()) return List.of();
+            if (++calls == failAt) throw new SQLException("connessione persa");
+            for (CatalogImportDAO.Row r : rows) written.add(r.line());
+            return List.of();
+        }
+    }
+
+    private Path csv(int rows) throws IOException {
+        StringBuilder sb = new StringBuilder("id_prodotto;taglia;prezzo;quantita\n");
+        for (int i = 1; i <= rows; i++) sb.append(i % 2 + 1).append(";S").append(i).append(";10,50;").append(i).append('\n');
+        Path file = dir.resolve("catalogo.csv");
+        Files.writeString(file, sb, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    void interruptedImportResumesAfterTheLastCommittedChunk() throws Exception {
+        Path input = csv(10);
+
+        RecordingSink first = new RecordingSink(3);
+        assertThrows(SQLException.class,
+                () -> CatalogImporter.importCatalog(SHOP, input, false, null, PRODUCTS, first, 4));
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L), first.written);
+        assertEquals(8, CatalogImporter.pendingCheckpoint(SHOP, input));
+
+        RecordingSink second = new RecordingSink(0);
+        CatalogImporter.ImportReport report = CatalogImporter.importCatalog(SHOP, input, true, null, PRODUCTS, second, 4);
+
+        assertEquals(List.of(9L, 10L), second.written);
+        assertEquals(8, report.resumedFrom());
+        assertEquals(2, report.processed());
+        assertEquals(2, report.imported());
+        assertNull(report.errorReport());
+        assertFalse(Files.exists(CatalogImporter.checkpointFile(input)));
+    }
+
+    @Test
+    void checkpointIsIgnoredForAnotherShopOrAModifiedFile() throws Exception {
+        Path input = csv(6);
+        assertThrows(SQLException.class,
+                () -> CatalogImporter.importCatalog(SHOP, input, false, null, PRODUCTS, new RecordingSink(2), 3));
+        assertEquals(3, CatalogImporter.pendingCheckpoint(SHOP, input));
+
+        assertEquals(0, CatalogImporter.pendingCheckpoint(SHOP + 1, input));
+
+        Files.setLastModifiedTime(input, FileTime.fromMillis(Files.getLastModifiedTime(input).toMillis() + 5000));
+        assertEquals(0, CatalogImporter.pendingCheckpoint(SHOP, input));
+
+        // senza checkpoint valido si riparte dall'inizio
+        RecordingSink again = new RecordingSink(0);
+        CatalogImporter.ImportReport report = CatalogImporter.importCatalog(SHOP, input, true, null, PRODUCTS, again, 3);
+        assertEquals(0, report.resumedFrom());
+        assertEquals(6, again.written.size());
+    }
+
+    @Test
+    void invalidRowsGoToTheErrorReport() throws Exception {
+        Path input = dir.resolve("misto.csv");
+        Files.writeString(input, "id_prodotto;nome;taglia;prezzo;quantita\n"
+                + "1;;M;12,00;3\n"
+                + "99;;M;12,00;3\n"          // prodotto inesistente
+                + ";Maglia;L;-1;3\n"         // prezzo non positivo
+                + ";maglia;XL;9.99;1\n", StandardCharsets.UTF_8);
+
+        RecordingSink sink = new RecordingSink(0);
+        CatalogImporter.ImportReport report = CatalogImporter.importCatalog(SHOP, input, false, null, PRODUCTS, sink, 100);
+
+        assertEquals(List.of(1L, 4L), sink.written);
+        assertEquals(4, report.processed());
+        assertEquals(2, report.imported());
+        assertEquals(2, report.rejected());
+        List<String> errors = Files.readAllLines(report.errorReport(), StandardCharsets.UTF_8);
+        assertEquals(3, errors.size()); // intestazione + 2 scarti
+        assertTrue(errors.get(1).contains("inesistente"));
+        assertTrue(errors.get(2).contains("positivo"));
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.importer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvRecordReaderTest {
+
+    private static List<RecordReader.RawRow> readAll(String csv) throws IOException {
+        List<RecordReader.RawRow> out = new ArrayList<>();
+        try (CsvRecordReader r = new CsvRecordReader(new StringReader(csv))) {
+            RecordReader.RawRow row;
+            while ((row = r.next()) != null) out.add(row);
+        }
+        return out;
+    }
+
+    @Test
+    void semicolonSeparatorAndLowercaseHeader() throws IOException {
+        List<RecordReader.RawRow> rows = readAll("Nome;Taglia;Prezzo\nScarpa;42;59,90\n");
+
+        assertEquals(1, rows.size());
+        assertEquals(Map.of("nome", "Scarpa", "taglia", "42", "prezzo", "59,90"), rows.get(0).fields());
+        assertEquals(1, rows.get(0).index());
+    }
+
+    @Test
+    void commaSeparatorWhenHeaderHasNoSemicolon() throws IOException {
+        List<RecordReader.RawRow> rows = readAll("nome,taglia\r\nMaglia,M\r\nFelpa,L\r\n");
+
+        assertEquals(2, rows.size());
+        assertEquals("Maglia", rows.get(0).fields().get("nome"));
+        assertEquals("L", rows.get(1).fields().get("taglia"));
+    }
+
+    @Test
+    void quotedFieldsKeepSeparatorsNewlinesAndEscapedQuotes() throws IOException {
+        String csv = "nome;note\n"
+                + "\"Scarpa; da corsa\";\"riga 1\nriga 2\"\n"
+                + "\"Maglia \"\"Pro\"\"\";x\n";
+        List<RecordReader.RawRow> rows = readAll(csv);
+
+        assertEquals(2, rows.size());
+        assertEquals("Scarpa; da corsa", rows.get(0).fields().get("nome"));
+        assertEquals("riga 1\nriga 2", rows.get(0).fields().get("note"));
+        assertEquals("Maglia \"Pro\"", rows.get(1).fields().get("nome"));
+        assertEquals(2, rows.get(1).index()); // l'a capo tra virgolette non conta come record
+    }
+
+    @Test
+    void blankLinesAreSkippedAndDoNotConsumeIndexes() throws IOException {
+        List<RecordReader.RawRow> rows = readAll("nome;taglia\n\nA;S\n\r\n\nB;M");
+
+        assertEquals(2, rows.size());
+        assertEquals(1, rows.get(0).index());
+        assertEquals(2, rows.get(1).index());
+        assertEquals("M", rows.get(1).fields().get("taglia")); // ultimo record senza a capo finale
+    }
+
+    @Test
+    void bomIsIgnoredAndShortRowsLeaveColumnsMissing() throws IOException {
+        List<RecordReader.RawRow> rows = readAll("\uFEFFnome;taglia;prezzo\nA;S\n");
+
+        assertEquals(Map.of("nome", "A", "taglia", "S"), rows.get(0).fields());
+    }
+
+    @Test
+    void unterminatedQuoteIsAnError() {
+        IOException ex = assertThrows(IOException.class, () -> readAll("nome;taglia\n\"aperta;S\n"));
+        assertTrue(ex.getMessage().contains("record 1"));
+    }
+
+    @Test
+    void emptyFileIsAnError() {
+        assertThrows(IOException.class, () -> readAll(""));
+    }
+}
@@ -0,0 +1,92 @@
+package org.example.inventory;
+
+import org.example.models.SkuKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InventoryEngineStressTest {
+
+    private static final int SKUS = 6;
+    private static final int STOCK_PER_SKU = 500;
+    private static final int SHOPPERS = 64;
+    private static final int ORDERS_PER_SHOPPER = 400;
+
+    @Test
+    void neverOversellsUnderContention() throws Exception {
+        InventoryEngine engine = new InventoryEngine();
+        List<SkuKey> skus = new ArrayList<>();
+        for (int i = 0; i < SKUS; i++) {
+            SkuKey k = new SkuKey(100 + i, 1 + (i % 2), (i % 3 == 0) ? null : "M");
+            skus.add(k);
+            engine.seed(k, STOCK_PER_SKU);
+        }
+
+        // quantità vendute con successo per SKU, contate fuori dall'engine
+        AtomicIntegerArray sold = new AtomicIntegerArray(SKUS);
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        try (ExecutorService pool = Executors.newFixedThreadPool(16)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int s = 0; s < SHOPPERS; s++) {
+                final long seed = s;
+                futures.add(pool.submit(() -> {
+                    Random rnd = new Random(seed);
+                    start.await();
+                    for (int o = 0; o < ORDERS_PER_SHOPPER; o++) {
+                        // ordine con 1..3 righe su SKU casuali, in ordine casuale
+                        Map<SkuKey, Integer> need = new LinkedHashMap<>();
+                        int lines = 1 + rnd.nextInt(3);
+                        for (int l = 0; l < lines; l++) {
+                            need.merge(skus.get(rnd.nextInt(SKUS)), 1 + rnd.nextInt(3), Integer::sum);
+                        }
+                        try {
+                            engine.reserve(need);
+                            need.forEach((k, q) -> sold.addAndGet(skus.indexOf(k), q));
+                            // ogni tanto l'ordine viene annullato e lo stock restituito
+                            if (rnd.nextInt(10) == 0) {
+                                engine.release(need);
+                                need.forEach((k, q) -> sold.addAndGet(skus.indexOf(k), -q));
+                            }
+                        } catch (InsufficientStockException e) {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : futures) f.get(60, TimeUnit.SECONDS);
+        }
+
+        // la domanda supera l'offerta: deve esserci stato almeno un rifiuto
+        assertTrue(rejected.get() > 0);
+        for (int i = 0; i < SKUS; i++) {
+            int left = engine.available(skus.get(i));
+            assertTrue(left >= 0, "disponibilità negativa per " + skus.get(i));
+            assertEquals(STOCK_PER_SKU, left + sold.get(i), "venduto + residuo deve tornare allo stock iniziale");
+        }
+    }
+
+    @Test
+    void failedReservationLeavesNothingTaken() {
+        InventoryEngine engine = new InventoryEngine();
+        SkuKey a = new SkuKey(1, 1, "S");
+        SkuKey b = new SkuKey(2, 1, "S");
+        engine.seed(a, 5);
+        engine.seed(b, 1);
+
+        InsufficientStockException ex = assertThrows(InsufficientStockException.class,
+                () -> engine.reserve(Map.of(a, 3, b, 2)));
+
+        assertEquals(b, ex.getKey());
+        assertEquals(5, engine.available(a));
+        assertEquals(1, engine.available(b));
+    }
+}
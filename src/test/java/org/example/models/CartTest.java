@@ -0,0 +1,75 @@
+package org.example.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CartTest {
+
+    private static Product product(long id, int shop, String size, double price) {
+        Product p = new Product();
+        p.setProductId(id);
+        p.setIdShop(shop);
+        p.setSize(size);
+        p.setPrice(price);
+        p.setName("P" + id);
+        return p;
+    }
+
+    @Test
+    void sameSkuIsAggregatedIntoOneLine() {
+        Cart cart = new Cart();
+        Product p = product(1, 10, "M", 19.99);
+
+        cart.add(p, 10);
+        cart.add(p, 2);
+
+        assertEquals(1, cart.getLineCount());
+        assertEquals(12, cart.getUnitCount());
+        assertEquals(12, cart.getQuantity(SkuKey.of(p)));
+        assertEquals(0, new BigDecimal("239.88").compareTo(cart.getTotal()));
+    }
+
+    @Test
+    void totalFollowsIncrementDecrementAndRemove() {
+        Cart cart = new Cart();
+        Product a = product(1, 10, "M", 10.0);
+        Product b = product(2, 10, null, 2.5);
+        cart.add(a, 1);
+        cart.add(b, 2);
+
+        SkuKey ka = SkuKey.of(a);
+        cart.increment(ka);
+        assertEquals(0, new BigDecimal("25.0").compareTo(cart.getTotal()));
+
+        cart.decrement(ka);
+        cart.decrement(ka); // ultimo pezzo: la riga sparisce
+        assertNull(cart.getLine(ka));
+        assertEquals(2, cart.getUnitCount());
+
+        cart.removeLine(SkuKey.of(b));
+        assertTrue(cart.isEmpty());
+        assertEquals(0, BigDecimal.ZERO.compareTo(cart.getTotal()));
+    }
+
+    @Test
+    void listenersReceiveChanges() {
+        Cart cart = new Cart();
+        List<Cart.Change> events = new ArrayList<>();
+        cart.addListener(events::add);
+
+        Product p = product(3, 11, "L", 5.0);
+        cart.add(p, 1);
+        cart.increment(SkuKey.of(p));
+        cart.clear();
+
+        assertEquals(List.of(
+                new Cart.Change(Cart.ChangeType.ADDED, SkuKey.of(p), 1),
+                new Cart.Change(Cart.ChangeType.UPDATED, SkuKey.of(p), 2),
+                new Cart.Change(Cart.ChangeType.CLEARED, null, 0)), events);
+    }
+}
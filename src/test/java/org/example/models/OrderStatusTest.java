@@ -0,0 +1,52 @@
+package org.example.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+
+import static org.example.models.OrderStatus.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderStatusTest {
+
+    @Test
+    void onlyForwardTransitionsAreAllowed() {
+        assertTrue(IN_ELABORAZIONE.canTransitionTo(SPEDITO));
+        assertTrue(IN_ELABORAZIONE.canTransitionTo(ANNULLATO));
+        assertTrue(SPEDITO.canTransitionTo(CONSEGNATO));
+
+        assertFalse(IN_ELABORAZIONE.canTransitionTo(CONSEGNATO)); // prima va spedito
+        assertFalse(IN_ELABORAZIONE.canTransitionTo(IN_ELABORAZIONE));
+        assertFalse(SPEDITO.canTransitionTo(ANNULLATO));
+        assertFalse(SPEDITO.canTransitionTo(IN_ELABORAZIONE));
+    }
+
+    @Test
+    void finalStatesHaveNoExit() {
+        for (OrderStatus next : values()) {
+            assertFalse(CONSEGNATO.canTransitionTo(next), "consegnato -> " + next);
+            assertFalse(ANNULLATO.canTransitionTo(next), "annullato -> " + next);
+        }
+    }
+
+    @Test
+    void allowedFromIsTheInverseOfCanTransitionTo() {
+        assertEquals(EnumSet.of(IN_ELABORAZIONE), allowedFrom(SPEDITO));
+        assertEquals(EnumSet.of(SPEDITO), allowedFrom(CONSEGNATO));
+        assertEquals(EnumSet.of(IN_ELABORAZIONE), allowedFrom(ANNULLATO));
+        assertTrue(allowedFrom(IN_ELABORAZIONE).isEmpty());
+
+        for (OrderStatus target : values()) {
+            for (OrderStatus from : values()) {
+                assertEquals(from.canTransitionTo(target), allowedFrom(target).contains(from), from + " -> " + target);
+            }
+        }
+    }
+
+    @Test
+    void dbRoundTrip() {
+        for (OrderStatus s : values()) assertEquals(s, fromDb(s.toDb()));
+        assertEquals(SPEDITO, fromDb("  Spedito "));
+        assertEquals(IN_ELABORAZIONE, fromDb(null));
+    }
+}
@@ -0,0 +1,84 @@
+package org.example.services;
+
+import org.example.dao.SellerDAO;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductOptionIndexTest {
+
+    private static SellerDAO.ProductOption opt(int id, String name, String brand, String sport, String category) {
+        return new SellerDAO.ProductOption(id, name, brand, sport, category);
+    }
+
+    private static final ProductOptionIndex INDEX = ProductOptionIndex.build(List.of(
+            opt(1, "Scarpa Running Pro", "Nike", "Running", "Scarpe"),
+            opt(2, "Scarpa Trail", "Salomon", "Trail", "Scarpe"),
+            opt(3, "Maglia Running", "Nike", "Running", "Maglie"),
+            opt(4, "Scarpetta Danza", "Repetto", "Danza", "Scarpe"),
+            opt(5, "Pallone", "Adidas", "Calcio", "Accessori"),
+            opt(6, "Scarpa", "Diadora", "Tennis", "Scarpe"),
+            opt(7, "Run Club Tee", "Joma", "Running", "Magliette"),
+            opt(8, "Nike Air", "Nike", "Basket", "Scarpe")));
+
+    private static List<Integer> ids(List<SellerDAO.ProductOption> list) {
+        return list.stream().map(SellerDAO.ProductOption::productId).toList();
+    }
+
+    @Test
+    void emptyQueryListsAlphabetically() {
+        assertEquals(List.of(3, 8, 5, 7, 6), ids(INDEX.search("  ", 5)));
+        assertEquals(ids(INDEX.first(5)), ids(INDEX.search(null, 5)));
+        assertEquals(8, INDEX.size());
+    }
+
+    @Test
+    void everyTokenMustMatchAsAPrefix() {
+        assertEquals(List.of(1), ids(INDEX.search("scar run", 10)));
+        assertEquals(List.of(3, 1), ids(INDEX.search("nike runn", 10)));
+        assertTrue(INDEX.search("scarpa calcio", 10).isEmpty());
+        assertTrue(INDEX.search("zzz", 10).isEmpty());
+    }
+
+    @Test
+    void tokensMatchBrandSportAndCategoryToo() {
+        assertEquals(List.of(5), ids(INDEX.search("adidas", 10)));
+        assertEquals(List.of(5), ids(INDEX.search("accessori", 10)));
+        assertEquals(List.of(2), ids(INDEX.search("salomon scarpa", 10)));
+    }
+
+    @Test
+    void exactNameTokenRanksAbovePrefix() {
+        // "run" è un token del nome di 7 (e ne è l'inizio); in 1 e 3 è solo prefisso di "running"
+        assertEquals(List.of(7, 3, 1), ids(INDEX.search("run", 10)));
+    }
+
+    @Test
+    void nameMatchesRankAboveBrandOrSportOnlyMatches() {
+        assertEquals(List.of(8, 3, 1), ids(INDEX.search("nike", 10)));
+        // 7 ha "running" solo come sport
+        assertEquals(List.of(3, 1, 7), ids(INDEX.search("running", 10)));
+    }
+
+    @Test
+    void tiesAreBrokenByShorterName() {
+        // 8 ha "scarpe" solo come categoria: resta in coda
+        assertEquals(List.of(6, 2, 4, 1, 8), ids(INDEX.search("scarp", 10)));
+        // "scarpetta" non comincia con "scarpa"
+        assertEquals(List.of(6, 2, 1), ids(INDEX.search("scarpa", 10)));
+    }
+
+    @Test
+    void queryIsCaseInsensitive() {
+        assertEquals(ids(INDEX.search("scarpa trail", 10)), ids(INDEX.search("SCARPA Trail", 10)));
+    }
+
+    @Test
+    void limitAndLookupById() {
+        assertEquals(List.of(6, 2), ids(INDEX.search("scarp", 2)));
+        assertEquals("Pallone", INDEX.byId(5).name());
+        assertNull(INDEX.byId(99));
+    }
+}
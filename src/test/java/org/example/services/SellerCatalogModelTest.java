@@ -0,0 +1,96 @@
+package org.example.services;
+
+import org.example.dao.SellerDAO;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SellerCatalogModelTest {
+
+    private static SellerDAO.CatalogRow row(int id, String name, String brand, String category, String size) {
+        return new SellerDAO.CatalogRow(id, name, "Running", brand, category, size, new BigDecimal("10.00"), 5);
+    }
+
+    private static SellerCatalogModel model() {
+        SellerCatalogModel m = new SellerCatalogModel(1);
+        m.replace(List.of(
+                row(1, "Scarpa Trail", "Nike", "Scarpe", "42"),
+                row(1, "Scarpa Trail", "Nike", "Scarpe", "43"),
+                row(2, "Scarpa Strada", "Adidas", "Scarpe", "42"),
+                row(3, "Maglia Tecnica", "Nike", "Maglie", "M"),
+                row(4, "Calzini", null, "Accessori", "U")));
+        return m;
+    }
+
+    private static List<Integer> ids(SellerCatalogModel.View v) {
+        return v.rows().stream().map(SellerDAO.CatalogRow::productId).toList();
+    }
+
+    @Test
+    void noFiltersReturnsEverythingWithAllOptions() {
+        SellerCatalogModel.View v = model().filter(null, null, null);
+
+        assertEquals(5, v.rows().size());
+        assertEquals(List.of("Adidas", "Nike"), v.brands()); // ordinate, senza valori vuoti
+        assertEquals(List.of("Accessori", "Maglie", "Scarpe"), v.categories());
+    }
+
+    @Test
+    void nameSearchIsCaseInsensitiveAndNarrowsTheOptions() {
+        SellerCatalogModel.View v = model().filter("  SCARPA ", null, null);
+
+        assertEquals(List.of(1, 1, 2), ids(v));
+        assertEquals(List.of("Adidas", "Nike"), v.brands());
+        assertEquals(List.of("Scarpe"), v.categories());
+    }
+
+    @Test
+    void brandAndCategoryCombineWithTheName() {
+        SellerCatalogModel m = model();
+
+        assertEquals(List.of(1, 1, 3), ids(m.filter(null, "Nike", null)));
+        assertEquals(List.of(3), ids(m.filter(null, "Nike", "Maglie")));
+        assertEquals(List.of(2), ids(m.filter("scarpa", "Adidas", "Scarpe")));
+        assertTrue(m.filter("maglia", "Adidas", null).rows().isEmpty());
+    }
+
+    @Test
+    void incrementalSearchMatchesAFreshSearch() {
+        SellerCatalogModel m = model();
+        m.filter("s", null, null);
+        m.filter("sc", null, null);
+        List<Integer> narrowed = ids(m.filter("scarpa s", null, null));
+        // ricerca più corta dopo una più lunga: non deve riusare il risultato ristretto
+        List<Integer> widened = ids(m.filter("scarpa", null, null));
+
+        assertEquals(List.of(2), narrowed);
+        assertEquals(List.of(1, 1, 2), widened);
+        assertEquals(narrowed, ids(model().filter("scarpa s", null, null)));
+    }
+
+    @Test
+    void updatesAndDeletesKeepTheIndexesConsistent() {
+        SellerCatalogModel m = model();
+        m.applyUpdate(3, "M", new BigDecimal("7.50"), 0);
+        SellerDAO.CatalogRow updated = m.filter("maglia", null, null).rows().get(0);
+        assertEquals(0, new BigDecimal("7.50").compareTo(updated.price()));
+        assertEquals(0, updated.quantity());
+
+        m.filter("scarpa", null, null);
+        m.applyDelete(1, "42");
+        assertEquals(4, m.size());
+        assertEquals(List.of(1, 2), ids(m.filter("scarpa", null, null)));
+        assertEquals(List.of(1, 3), ids(m.filter(null, "Nike", null)));
+    }
+
+    @Test
+    void updateOfAnUnknownRowInvalidatesTheModel() {
+        SellerCatalogModel m = model();
+        assertTrue(m.isLoaded());
+        m.applyUpdate(99, "M", BigDecimal.ONE, 1);
+        assertFalse(m.isLoaded());
+    }
+}